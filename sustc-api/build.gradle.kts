@@ -16,12 +16,19 @@ dependencies {
     implementation("com.opencsv:opencsv:5.7.1")
 
     implementation("org.furyio:fury-core:0.3.1")
+    // COPY API (CopyManager) for bulk import; the driver itself is provided by the runner at runtime
+    compileOnly("org.postgresql:postgresql")
     "developmentOnly"("org.springframework.boot:spring-boot-devtools")
+    testImplementation("org.springframework.boot:spring-boot-starter-test")
 
     // You may add any utility library you want to use, such as guava.
     // ORM libraries are prohibited in this project.
 }
 
+tasks.test {
+    useJUnitPlatform()
+}
+
 tasks.withType<BootRun> {
     enabled = false
 }
@@ -0,0 +1,73 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Counters of a read-through cache since startup, or since the last full clear for the sizes.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStats implements Serializable {
+
+    /**
+     * Reads of records and names answered from the cache.
+     */
+    private long hits;
+
+    /**
+     * Reads of records and names that went to the database.
+     */
+    private long misses;
+
+    /**
+     * Search totals answered from the cache.
+     */
+    private long countHits;
+
+    /**
+     * Search totals that had to be counted.
+     */
+    private long countMisses;
+
+    /**
+     * Entries dropped to stay within the entry or byte limit.
+     */
+    private long evictions;
+
+    /**
+     * Entries dropped because their time to live had passed.
+     */
+    private long expirations;
+
+    /**
+     * Entries dropped because the underlying data was written.
+     */
+    private long invalidations;
+
+    /**
+     * Number of entries currently cached.
+     */
+    private long entries;
+
+    /**
+     * Estimated heap size of the cached entries, in bytes.
+     */
+    private long bytes;
+
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public double getCountHitRate() {
+        long total = countHits + countMisses;
+        return total == 0 ? 0 : (double) countHits / total;
+    }
+}
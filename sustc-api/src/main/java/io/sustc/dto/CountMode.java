@@ -0,0 +1,24 @@
+package io.sustc.dto;
+
+/**
+ * How a paged search computes {@link PageResult#getTotal()}.
+ */
+public enum CountMode {
+
+    /**
+     * A separate {@code COUNT(*)} over the whole match, before the page is fetched.
+     */
+    EXACT,
+
+    /**
+     * Exact total computed by the page query itself with {@code count(*) OVER ()}, in one statement.
+     * Only a page past the end falls back to a separate count.
+     */
+    WINDOW,
+
+    /**
+     * Total of the same filters remembered from an earlier page for a short while, so that paging through
+     * the results only fetches pages. It may lag behind concurrent writes; a new filter is counted as by {@link #WINDOW}.
+     */
+    ESTIMATED
+}
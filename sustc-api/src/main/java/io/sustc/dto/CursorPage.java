@@ -0,0 +1,34 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing, continued by passing {@link #nextCursor} back.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> implements Serializable {
+
+    /**
+     * List of items contained in the current page.
+     */
+    private List<T> items;
+
+    /**
+     * Maximum number of items per page.
+     */
+    private int size;
+
+    /**
+     * Opaque position after the last item, or {@code null} if this is the last page.
+     */
+    private String nextCursor;
+}
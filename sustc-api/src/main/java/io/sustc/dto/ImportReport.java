@@ -0,0 +1,98 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Summary of the last {@code importData} run, used for reporting throughput.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportReport implements Serializable {
+
+    /**
+     * The load mode that actually ran, e.g. {@code COPY} or {@code BATCH}.
+     */
+    private String mode;
+
+    /**
+     * Number of worker threads that loaded the tables.
+     */
+    private int parallelism;
+
+    /**
+     * Whether constraints were added after loading rather than checked row by row.
+     */
+    private boolean deferredConstraints;
+
+    /**
+     * Whether the records were streamed in batches rather than passed as complete lists.
+     */
+    private boolean streaming;
+
+    /**
+     * Chunks skipped because an interrupted checkpointed import had already committed them.
+     */
+    private int resumedChunks;
+
+    /**
+     * Whether this was a delta applied on top of existing data rather than a full import.
+     */
+    private boolean delta;
+
+    /**
+     * Number of rows sent to each table, in load order.
+     */
+    @Builder.Default
+    private Map<String, Long> rowCounts = new LinkedHashMap<>();
+
+    /**
+     * Number of stored rows each table lost while a delta reconciled its edges.
+     */
+    @Builder.Default
+    private Map<String, Long> removedRows = new LinkedHashMap<>();
+
+    /**
+     * Wall-clock time of the whole import in milliseconds.
+     */
+    private long elapsedMillis;
+
+    /**
+     * Wall-clock time of each phase in milliseconds, e.g. {@code schema}, {@code load},
+     * {@code constraints} and {@code indexes}, in execution order.
+     */
+    @Builder.Default
+    private Map<String, Long> phaseMillis = new LinkedHashMap<>();
+
+    public void addRows(String table, long rows) {
+        rowCounts.merge(table, rows, Long::sum);
+    }
+
+    public void addRemovedRows(String table, long rows) {
+        removedRows.merge(table, rows, Long::sum);
+    }
+
+    public void addPhase(String phase, long millis) {
+        phaseMillis.merge(phase, millis, Long::sum);
+    }
+
+    public long getTotalRows() {
+        long total = 0;
+        for (long rows : rowCounts.values()) {
+            total += rows;
+        }
+        return total;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedMillis <= 0 ? 0 : getTotalRows() * 1000.0 / elapsedMillis;
+    }
+}
@@ -0,0 +1,48 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * A recipe found by its ingredients, with how well it matches.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngredientMatch implements Serializable {
+
+    /**
+     * Unique identifier of the recipe.
+     */
+    private long recipeId;
+
+    /**
+     * Title or display name of the recipe.
+     */
+    private String name;
+
+    /**
+     * Average rating of the recipe, or {@code null} if it has none.
+     */
+    private Double aggregatedRating;
+
+    /**
+     * Number of the given ingredients that the recipe contains.
+     */
+    private int matchedIngredients;
+
+    /**
+     * Number of distinct ingredients of the recipe.
+     */
+    private int recipeIngredients;
+
+    /**
+     * {@code matchedIngredients / recipeIngredients}: the share of the recipe covered by the given ingredients.
+     */
+    private double matchRatio;
+}
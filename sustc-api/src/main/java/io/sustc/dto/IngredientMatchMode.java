@@ -0,0 +1,22 @@
+package io.sustc.dto;
+
+/**
+ * Which recipes an ingredient search returns, for a given list of ingredients.
+ */
+public enum IngredientMatchMode {
+
+    /**
+     * Recipes containing every given ingredient.
+     */
+    ALL,
+
+    /**
+     * Recipes containing at least one of the given ingredients.
+     */
+    ANY,
+
+    /**
+     * Recipes that can be made from the given ingredients alone, i.e. whose ingredients are all given.
+     */
+    PANTRY
+}
@@ -0,0 +1,42 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Counts of the recipes of a search, broken down by category and by rating.
+ * <p>
+ * Each breakdown ignores its own filter, so that it shows what selecting another value would return:
+ * the category counts apply the keyword and rating filters, the rating counts the keyword and category filters.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchFacets implements Serializable {
+
+    /**
+     * Number of recipes matching all filters, as {@link PageResult#getTotal()} of the search.
+     */
+    private long total;
+
+    /**
+     * Recipes per category, by descending count and then by name. Recipes without a category are not counted.
+     */
+    private Map<String, Long> categories;
+
+    /**
+     * Recipes per whole rating from 0 to 4, where 4 also holds the recipes rated 5, in ascending order.
+     */
+    private Map<Integer, Long> ratingBuckets;
+
+    /**
+     * Recipes without a rating.
+     */
+    private long unrated;
+}
@@ -0,0 +1,32 @@
+package io.sustc.jdbc;
+
+/**
+ * The query of {@code RecipeService#getRecipeById} in the database, so that tools timing it can run the same SQL
+ * without the cache in front of the service.
+ */
+public final class RecipeDetailSql {
+
+    /**
+     * The recipe, its author name and its ingredients as an array that is already in (almost) the final order,
+     * to be completed with a WHERE clause on {@code r} and {@code u} and read by {@link RecordMappers#recipe()}.
+     */
+    public static final String SELECT =
+            "SELECT r.recipeid, r.name, r.authorid, u.authorname, r.cooktime, r.preptime, r.totaltime, " +
+                    "r.datepublished, r.description, r.recipecategory, r.aggregatedrating, r.reviewcount, " +
+                    "r.calories, r.fatcontent, r.saturatedfatcontent, r.cholesterolcontent, r.sodiumcontent, " +
+                    "r.carbohydratecontent, r.fibercontent, r.sugarcontent, r.proteincontent, " +
+                    "r.recipeservings, r.recipeyield, " +
+                    "(SELECT array_agg(ri.ingredientpart " +
+                    "ORDER BY lower(ri.ingredientpart) COLLATE \"C\", ri.ingredientpart COLLATE \"C\") " +
+                    "FROM recipe_ingredients ri WHERE ri.recipeid = r.recipeid) AS ingredients " +
+                    "FROM recipes r " +
+                    "JOIN users u ON r.authorid = u.authorid";
+
+    /**
+     * One active recipe by its id, in one round trip.
+     */
+    public static final String BY_ID = SELECT + " WHERE r.recipeid = ? AND u.isdeleted = FALSE";
+
+    private RecipeDetailSql() {
+    }
+}
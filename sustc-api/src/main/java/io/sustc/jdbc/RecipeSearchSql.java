@@ -0,0 +1,70 @@
+package io.sustc.jdbc;
+
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+
+/**
+ * The clauses of {@code RecipeService#searchRecipes} in the database, over the recipes of active users
+ * aliased {@code r} joined with their authors {@code u}, so that tools timing the search run the same SQL.
+ */
+public final class RecipeSearchSql {
+
+    /**
+     * Recipes of authors that are not deleted.
+     */
+    public static final String FROM =
+            " FROM recipes r " +
+                    "JOIN users u ON r.authorid = u.authorid AND u.isdeleted = FALSE";
+
+    public static final String ORDER_BY_RATING_DESC = " ORDER BY r.aggregatedrating DESC NULLS LAST, r.recipeid DESC";
+
+    public static final String ORDER_BY_DATE_DESC = " ORDER BY r.datepublished DESC NULLS LAST, r.recipeid DESC";
+
+    public static final String ORDER_BY_CALORIES_ASC = " ORDER BY r.calories ASC NULLS LAST, r.recipeid ASC";
+
+    public static final String ORDER_BY_ID_ASC = " ORDER BY r.recipeid ASC";
+
+    private RecipeSearchSql() {
+    }
+
+    /**
+     * The WHERE clause of a search, adding its arguments to {@code params}.
+     * Blank filters are left out; the keyword matches name or description case-insensitively.
+     */
+    public static StringBuilder where(String keyword, String category, Double minRating, List<Object> params) {
+        StringBuilder where = new StringBuilder(" WHERE 1=1");
+
+        if (StringUtils.hasText(keyword)) {
+            // answered by the trigram indexes of Schema.TEXT_SEARCH_INDEXES when pg_trgm is installed
+            String kw = "%" + keyword.trim() + "%";
+            where.append(" AND (r.name ILIKE ? OR r.description ILIKE ?)");
+            params.add(kw);
+            params.add(kw);
+        }
+        if (StringUtils.hasText(category)) {
+            where.append(" AND r.recipecategory = ?");
+            params.add(category.trim());
+        }
+        if (minRating != null) {
+            where.append(" AND r.aggregatedrating >= ?");
+            params.add(minRating);
+        }
+        return where;
+    }
+
+    /**
+     * The ORDER BY clause of a sort, with {@code recipeid} as tie-breaker: {@code rating_desc}, {@code date_desc}
+     * or {@code calories_asc}, and by id for an unknown or missing sort.
+     */
+    public static String orderBy(String sort) {
+        if ("rating_desc".equalsIgnoreCase(sort)) {
+            return ORDER_BY_RATING_DESC;
+        } else if ("date_desc".equalsIgnoreCase(sort)) {
+            return ORDER_BY_DATE_DESC;
+        } else if ("calories_asc".equalsIgnoreCase(sort)) {
+            return ORDER_BY_CALORIES_ASC;
+        }
+        return ORDER_BY_ID_ASC;
+    }
+}
@@ -0,0 +1,135 @@
+package io.sustc.jdbc;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps rows to a record by column position.
+ * <p>
+ * The columns a record is read from are listed once; their positions are looked up in the metadata of the
+ * first row of every result set, and each row is then read by index straight into primitives, without
+ * looking names up per value or going through a {@code Map} of boxed values. A column the query does not
+ * select reads as {@code null} or zero.
+ * <p>
+ * An instance remembers the result set it resolved, so it is not thread-safe: take a new one per query
+ * from {@link RecordMappers}. Its {@link #mapRow} fits Spring's {@code RowMapper}, e.g.
+ * {@code jdbcTemplate.query(sql, RecordMappers.recipe()::mapRow, id)}.
+ */
+public abstract class RecordMapper<T> {
+
+    private final String[] columns;
+
+    private ResultSet resolvedFor;
+
+    private int[] index;
+
+    /**
+     * @param columns lower-case column labels; the position of each becomes an index into {@code at} of {@link #map}
+     */
+    protected RecordMapper(String... columns) {
+        this.columns = columns;
+    }
+
+    public final T mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (rs != resolvedFor) {
+            index = resolve(rs.getMetaData());
+            resolvedFor = rs;
+        }
+        return map(rs, index);
+    }
+
+    /**
+     * @param at the 1-based position of each constructor column in {@code rs}, {@code 0} if it is not selected
+     */
+    protected abstract T map(ResultSet rs, int[] at) throws SQLException;
+
+    private int[] resolve(ResultSetMetaData meta) throws SQLException {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = meta.getColumnCount(); i >= 1; i--) {
+            // the first of duplicate labels wins, as with ResultSet.findColumn
+            positions.put(meta.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+        }
+        int[] at = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            at[i] = positions.getOrDefault(columns[i], 0);
+        }
+        return at;
+    }
+
+    protected static long getLong(ResultSet rs, int column) throws SQLException {
+        return column == 0 ? 0L : rs.getLong(column);
+    }
+
+    protected static int getInt(ResultSet rs, int column) throws SQLException {
+        return column == 0 ? 0 : rs.getInt(column);
+    }
+
+    protected static float getFloat(ResultSet rs, int column) throws SQLException {
+        return column == 0 ? 0f : rs.getFloat(column);
+    }
+
+    protected static boolean getBoolean(ResultSet rs, int column) throws SQLException {
+        return column != 0 && rs.getBoolean(column);
+    }
+
+    protected static String getString(ResultSet rs, int column) throws SQLException {
+        return column == 0 ? null : rs.getString(column);
+    }
+
+    protected static Timestamp getTimestamp(ResultSet rs, int column) throws SQLException {
+        return column == 0 ? null : rs.getTimestamp(column);
+    }
+
+    /**
+     * @return the value, or {@code null} for SQL {@code NULL} or a column that is not selected
+     */
+    protected static Double getNullableDouble(ResultSet rs, int column) throws SQLException {
+        if (column == 0) return null;
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * @return the value, or {@code null} for SQL {@code NULL} or a column that is not selected
+     */
+    protected static Integer getNullableInt(ResultSet rs, int column) throws SQLException {
+        if (column == 0) return null;
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * A {@code BIGINT[]} column, or {@code null} for SQL {@code NULL} or a column that is not selected.
+     */
+    protected static long[] getLongs(ResultSet rs, int column) throws SQLException {
+        Array array = column == 0 ? null : rs.getArray(column);
+        if (array == null) return null;
+        try {
+            Object[] boxed = (Object[]) array.getArray();
+            long[] values = new long[boxed.length];
+            for (int i = 0; i < boxed.length; i++) values[i] = ((Number) boxed[i]).longValue();
+            return values;
+        } finally {
+            array.free();
+        }
+    }
+
+    /**
+     * A {@code TEXT[]} column, or {@code null} for SQL {@code NULL} or a column that is not selected.
+     */
+    protected static String[] getStrings(ResultSet rs, int column) throws SQLException {
+        Array array = column == 0 ? null : rs.getArray(column);
+        if (array == null) return null;
+        try {
+            return (String[]) array.getArray();
+        } finally {
+            array.free();
+        }
+    }
+}
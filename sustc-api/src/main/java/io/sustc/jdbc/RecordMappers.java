@@ -0,0 +1,157 @@
+package io.sustc.jdbc;
+
+import io.sustc.dto.FeedItem;
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.dto.UserRecord;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * {@link RecordMapper}s of the records read from the application tables, by their (lower-case) column names.
+ * Each call returns a new mapper, to be used for one query.
+ */
+public final class RecordMappers {
+
+    private static final String[] RECIPE_COLUMNS = {
+            "recipeid", "name", "authorid", "authorname", "cooktime", "preptime", "totaltime",
+            "datepublished", "description", "recipecategory", "aggregatedrating", "reviewcount",
+            "calories", "fatcontent", "saturatedfatcontent", "cholesterolcontent", "sodiumcontent",
+            "carbohydratecontent", "fibercontent", "sugarcontent", "proteincontent",
+            "recipeservings", "recipeyield", "ingredients"
+    };
+
+    private static final String[] REVIEW_COLUMNS = {
+            "reviewid", "recipeid", "authorid", "authorname", "rating", "review", "datesubmitted", "datemodified"
+    };
+
+    private static final String[] USER_COLUMNS = {
+            "authorid", "authorname", "gender", "age", "followers", "following",
+            "follower_users", "following_users", "password", "isdeleted"
+    };
+
+    private static final String[] FEED_COLUMNS = {
+            "recipeid", "name", "authorid", "authorname", "datepublished", "aggregatedrating", "reviewcount"
+    };
+
+    private RecordMappers() {
+    }
+
+    /**
+     * A recipe row, e.g. {@code r.*} with {@code u.authorname}. Numbers that are SQL {@code NULL} read as zero.
+     * The ingredients are read from an optional {@code ingredients} text array and sorted case-insensitively;
+     * without it they are left {@code null} for the caller to fill.
+     */
+    public static RecordMapper<RecipeRecord> recipe() {
+        return new RecordMapper<>(RECIPE_COLUMNS) {
+            @Override
+            protected RecipeRecord map(ResultSet rs, int[] at) throws SQLException {
+                String[] parts = getStrings(rs, at[23]);
+                if (parts != null) {
+                    Arrays.sort(parts, String.CASE_INSENSITIVE_ORDER);
+                }
+                return RecipeRecord.builder()
+                        .RecipeId(getLong(rs, at[0]))
+                        .name(getString(rs, at[1]))
+                        .authorId(getLong(rs, at[2]))
+                        .authorName(getString(rs, at[3]))
+                        .cookTime(getString(rs, at[4]))
+                        .prepTime(getString(rs, at[5]))
+                        .totalTime(getString(rs, at[6]))
+                        .datePublished(getTimestamp(rs, at[7]))
+                        .description(getString(rs, at[8]))
+                        .recipeCategory(getString(rs, at[9]))
+                        .aggregatedRating(getFloat(rs, at[10]))
+                        .reviewCount(getInt(rs, at[11]))
+                        .calories(getFloat(rs, at[12]))
+                        .fatContent(getFloat(rs, at[13]))
+                        .saturatedFatContent(getFloat(rs, at[14]))
+                        .cholesterolContent(getFloat(rs, at[15]))
+                        .sodiumContent(getFloat(rs, at[16]))
+                        .carbohydrateContent(getFloat(rs, at[17]))
+                        .fiberContent(getFloat(rs, at[18]))
+                        .sugarContent(getFloat(rs, at[19]))
+                        .proteinContent(getFloat(rs, at[20]))
+                        .recipeServings(getInt(rs, at[21]))
+                        .recipeYield(getString(rs, at[22]))
+                        .recipeIngredientParts(parts)
+                        .build();
+            }
+        };
+    }
+
+    /**
+     * A review row, e.g. {@code r.*} with {@code u.authorname}; a missing author name reads as {@code ""}.
+     * The likes are left {@code null} for the caller to fill.
+     */
+    public static RecordMapper<ReviewRecord> review() {
+        return new RecordMapper<>(REVIEW_COLUMNS) {
+            @Override
+            protected ReviewRecord map(ResultSet rs, int[] at) throws SQLException {
+                String authorName = getString(rs, at[3]);
+                return ReviewRecord.builder()
+                        .reviewId(getLong(rs, at[0]))
+                        .recipeId(getLong(rs, at[1]))
+                        .authorId(getLong(rs, at[2]))
+                        .authorName(authorName != null ? authorName : "")
+                        .rating(getFloat(rs, at[4]))
+                        .review(getString(rs, at[5]))
+                        .dateSubmitted(getTimestamp(rs, at[6]))
+                        .dateModified(getTimestamp(rs, at[7]))
+                        .build();
+            }
+        };
+    }
+
+    /**
+     * A user row, with the follow lists read from optional {@code follower_users} and {@code following_users}
+     * bigint arrays, empty if they are not selected.
+     */
+    public static RecordMapper<UserRecord> user() {
+        return new RecordMapper<>(USER_COLUMNS) {
+            @Override
+            protected UserRecord map(ResultSet rs, int[] at) throws SQLException {
+                long[] followerUsers = getLongs(rs, at[6]);
+                long[] followingUsers = getLongs(rs, at[7]);
+                return UserRecord.builder()
+                        .authorId(getLong(rs, at[0]))
+                        .authorName(getString(rs, at[1]))
+                        .gender(getString(rs, at[2]))
+                        .age(getInt(rs, at[3]))
+                        .followers(getInt(rs, at[4]))
+                        .following(getInt(rs, at[5]))
+                        .followerUsers(followerUsers != null ? followerUsers : new long[0])
+                        .followingUsers(followingUsers != null ? followingUsers : new long[0])
+                        .password(getString(rs, at[8]))
+                        .isDeleted(getBoolean(rs, at[9]))
+                        .build();
+            }
+        };
+    }
+
+    /**
+     * A recipe row of a feed with its author name. Rating and review count keep SQL {@code NULL}.
+     */
+    public static RecordMapper<FeedItem> feedItem() {
+        return new RecordMapper<>(FEED_COLUMNS) {
+            @Override
+            protected FeedItem map(ResultSet rs, int[] at) throws SQLException {
+                Timestamp ts = getTimestamp(rs, at[4]);
+                return FeedItem.builder()
+                        .recipeId(getLong(rs, at[0]))
+                        .name(getString(rs, at[1]))
+                        .authorId(getLong(rs, at[2]))
+                        .authorName(getString(rs, at[3]))
+                        // the dataset is in UTC but is read in the local zone; add back the 8 hours the feed has always added
+                        .datePublished(ts == null ? null : ts.toInstant().plus(Duration.ofHours(8)))
+                        .aggregatedRating(getNullableDouble(rs, at[5]))
+                        .reviewCount(getNullableInt(rs, at[6]))
+                        .build();
+            }
+        };
+    }
+}
@@ -1,5 +1,6 @@
 package io.sustc.service;
 
+import io.sustc.dto.ImportReport;
 import io.sustc.dto.ReviewRecord;
 import io.sustc.dto.UserRecord;
 import io.sustc.dto.RecipeRecord;
@@ -29,6 +30,64 @@ public interface DatabaseService {
             List<RecipeRecord> recipeRecords
     );
 
+    /**
+     * Imports data to an empty database, like {@link #importData},
+     * but reads the records in bounded batches so that peak memory does not grow with the data set.
+     * Invalid data will not be provided.
+     *
+     * @param reviews review records parsed from csv
+     * @param users   user records parsed from csv
+     * @param recipes recipe records parsed from csv
+     */
+    void importStream(
+            RecordSource<ReviewRecord> reviews,
+            RecordSource<UserRecord> users,
+            RecordSource<RecipeRecord> recipes
+    );
+
+    /**
+     * Applies a delta on top of previously imported data.
+     * <p>
+     * Users, recipes and reviews are inserted or updated by id. The follows of each given user,
+     * the ingredients of each given recipe and the likes of each given review are replaced by
+     * the ones listed in its record. Aggregated rating and review count are recomputed only
+     * for the recipes the delta touched.
+     *
+     * @param reviewRecords new or changed reviews
+     * @param userRecords   new or changed users
+     * @param recipeRecords new or changed recipes
+     */
+    void importDelta(
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords
+    );
+
+    /**
+     * Returns the summary of the most recent {@link #importData}, {@link #importStream} or {@link #importDelta} call,
+     * including the load mode that ran and its throughput.
+     *
+     * @return the last import report, or {@code null} if nothing has been imported yet
+     */
+    ImportReport getLastImportReport();
+
+    /**
+     * Whether a checkpointed {@link #importData} was interrupted.
+     * Calling it again with the same data resumes where it stopped;
+     * calling it with other data drops the tables and starts over.
+     *
+     * @return {@code true} if unfinished import progress is recorded in the database
+     */
+    boolean hasPendingImport();
+
+    /**
+     * Upgrades tables created by an older version of the application to the current schema, keeping their data.
+     * It runs on startup as well; tables created by an import are already current.
+     *
+     * @return the schema version afterwards, or {@code 0} if there are no tables yet
+     */
+    int migrate();
+
     /**
      * Delete all tables in the database.
      * <p>
@@ -1,8 +1,14 @@
 package io.sustc.service;
 
 import io.sustc.dto.AuthInfo;
+import io.sustc.dto.CacheStats;
+import io.sustc.dto.CountMode;
+import io.sustc.dto.CursorPage;
+import io.sustc.dto.IngredientMatch;
+import io.sustc.dto.IngredientMatchMode;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.SearchFacets;
 import org.springframework.lang.Nullable;
 
 import java.util.List;
@@ -20,6 +26,19 @@ public interface RecipeService {
      */
     String getNameFromID(long id);
 
+    /**
+     * Retrieves the names of several recipes by their IDs, in at most one query whatever their number.
+     *
+     * <p>The result has one entry per requested ID, in request order, like {@link #getNameFromID}:
+     * the name, or {@code null} if no recipe with that ID exists. Repeated IDs yield the same name.
+     *
+     * @param ids the IDs of the recipes, at most 1000
+     * @return the names in request order, with {@code null} for missing recipes
+     * @throws IllegalArgumentException if {@code ids} is {@code null}, longer than 1000,
+     *                                  or contains an ID {@code <= 0}
+     */
+    List<String> getNamesFromIDs(long[] ids);
+
     /**
      * Retrieves a recipe by its ID.
      *
@@ -36,6 +55,21 @@ public interface RecipeService {
     RecipeRecord getRecipeById(long recipeId);
 
 
+    /**
+     * Retrieves several recipes by their IDs, in two queries whatever their number.
+     *
+     * <p>The result has one entry per requested ID, in request order: the complete {@link RecipeRecord}
+     * as returned by {@link #searchRecipes}, or {@code null} if no active recipe with that ID exists.
+     * Unlike {@link #getRecipeById}, a recipe without ingredients has an empty ingredient array.
+     * Repeated IDs yield the same record.
+     *
+     * @param ids the IDs of the recipes to retrieve, at most 1000
+     * @return the recipes in request order, with {@code null} for missing ones
+     * @throws IllegalArgumentException if {@code ids} is {@code null}, longer than 1000,
+     *                                  or contains an ID {@code <= 0}
+     */
+    List<RecipeRecord> getRecipesByIds(long[] ids);
+
     /**
      * Searches recipes based on multiple optional criteria, supporting pagination and sorting.
      *
@@ -81,6 +115,117 @@ public interface RecipeService {
             String sort
     );
 
+    /**
+     * Searches recipes like {@link #searchRecipes(String, String, Double, Integer, Integer, String)},
+     * computing the total as chosen by {@code countMode}.
+     *
+     * <p>The items are the same in every mode. {@link CountMode#EXACT} is what the six-argument method does;
+     * {@link CountMode#WINDOW} also returns the exact total, from the page query itself;
+     * {@link CountMode#ESTIMATED} may return a slightly outdated total, and is meant for browsing pages.
+     *
+     * @param countMode how to compute {@link PageResult#getTotal()}, {@code null} for {@link CountMode#EXACT}
+     * @return a {@link PageResult} containing paginated recipe results
+     * @throws IllegalArgumentException if {@code page < 1} or {@code size <= 0}
+     */
+    default PageResult<RecipeRecord> searchRecipes(
+            String keyword,
+            String category,
+            Double minRating,
+            Integer page,
+            Integer size,
+            String sort,
+            @Nullable CountMode countMode
+    ) {
+        return searchRecipes(keyword, category, minRating, page, size, sort);
+    }
+
+    /**
+     * Counts the recipes of a {@link #searchRecipes} query by category and by rating bucket, in one pass.
+     *
+     * <p>The filters are those of {@link #searchRecipes}. The category counts ignore {@code category}, and the
+     * rating counts ignore {@code minRating}, so that they show what changing that filter would return.
+     *
+     * @param keyword   fuzzy search term for name/description (nullable)
+     * @param category  category filter (nullable)
+     * @param minRating minimum rating filter (nullable)
+     * @return the counts, see {@link SearchFacets}
+     */
+    SearchFacets getSearchFacets(String keyword, String category, Double minRating);
+
+    /**
+     * Finds the recipes containing every word of {@code query}, for interactive browsing.
+     *
+     * <p>A word may occur in the name, description, category or any ingredient part, case-insensitively;
+     * recipes are ranked by where their words occur, name first, then by rating. Unlike {@link #searchRecipes},
+     * words only match whole words. This is served from memory and may be unavailable, e.g. while loading.
+     *
+     * @param query     words to look for
+     * @param category  category filter (nullable)
+     * @param minRating minimum rating filter (nullable)
+     * @param limit     maximum number of recipes
+     * @return up to {@code limit} complete recipes, best first, or {@code null} if this search is unavailable
+     * @throws IllegalArgumentException if {@code limit <= 0}
+     */
+    @Nullable
+    default List<RecipeRecord> searchRecipesByRelevance(String query, String category, Double minRating, int limit) {
+        return null;
+    }
+
+    /**
+     * Searches recipes like {@link #searchRecipes}, but continues after a cursor instead of skipping pages,
+     * so that a deep page costs no more than the first one.
+     *
+     * <p>The filters and the sort orders are those of {@link #searchRecipes}, with the same
+     * {@code recipeId} tie-breaker, and recipes without the sort key last.
+     * A listing starts with an empty cursor and continues with the {@link CursorPage#getNextCursor() next cursor}
+     * of the previous page, until that is {@code null}. Recipes created or changed in between may be missed or
+     * repeated, as with page numbers.
+     *
+     * @param keyword   fuzzy search term for name/description (nullable)
+     * @param category  category filter (nullable)
+     * @param minRating minimum rating filter (nullable)
+     * @param cursor    position returned by the previous page, or {@code null}/empty for the first page
+     * @param size      page size
+     * @param sort      sorting criteria (nullable), the same for every page of a listing
+     * @return a {@link CursorPage} of complete recipes, including their ingredients
+     * @throws IllegalArgumentException if {@code size <= 0}, or the cursor is malformed or was made for another sort
+     */
+    CursorPage<RecipeRecord> searchRecipesByCursor(
+            String keyword,
+            String category,
+            Double minRating,
+            String cursor,
+            Integer size,
+            String sort
+    );
+
+    /**
+     * Finds active recipes by their ingredients.
+     *
+     * <p>The given ingredients are trimmed and compared case-insensitively with the recipe's ingredient parts
+     * as they are stored, which are not trimmed again; blank and duplicate ingredients are ignored.
+     * Depending on {@code mode}, a recipe is returned if it contains all of them ({@link IngredientMatchMode#ALL}),
+     * any of them ({@link IngredientMatchMode#ANY}), or if all of its own ingredients are among them
+     * ({@link IngredientMatchMode#PANTRY}).
+     *
+     * <p>Results are ordered by {@link IngredientMatch#getMatchRatio() match ratio} descending, then by the
+     * number of matched ingredients descending, then by rating descending with unrated recipes last,
+     * then by recipe id ascending.
+     *
+     * @param ingredients ingredients to look for
+     * @param mode        how the recipes must match, {@code null} for {@link IngredientMatchMode#ALL}
+     * @param page        page number (1-based)
+     * @param size        page size
+     * @return a {@link PageResult} of matching recipes
+     * @throws IllegalArgumentException if no ingredient is given, {@code page < 1} or {@code size <= 0}
+     */
+    PageResult<IngredientMatch> searchRecipesByIngredients(
+            List<String> ingredients,
+            @Nullable IngredientMatchMode mode,
+            Integer page,
+            Integer size
+    );
+
     /**
      * Creates a new recipe authored by the authenticated user.
      *
@@ -258,4 +403,27 @@ public interface RecipeService {
      */
     List<Map<String, Object>> getTop3MostComplexRecipesByIngredients();
 
+    /**
+     * Generalizes {@link #getTop3MostComplexRecipesByIngredients} to the top {@code k} recipes,
+     * with the same fields, ordering and exclusions.
+     *
+     * <p>The ingredient count of every recipe is stored with it and indexed, so only the first
+     * {@code k} entries of that index are read.
+     *
+     * @param k the number of recipes, between 1 and 1000
+     * @return up to {@code k} maps describing the most ingredient-heavy recipes
+     * @throws IllegalArgumentException if {@code k} is out of range
+     */
+    List<Map<String, Object>> getTopRecipesByIngredientCount(int k);
+
+    /**
+     * Counters of the cache in front of {@link #getRecipeById} and {@link #getNameFromID},
+     * and separately of the search totals it keeps for estimated counts.
+     *
+     * @return the counters, or {@code null} if reads are not cached
+     */
+    @Nullable
+    default CacheStats getCacheStats() {
+        return null;
+    }
 }
@@ -0,0 +1,43 @@
+package io.sustc.service;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A source of import records that is read in bounded batches,
+ * so that the whole data set never has to be held in memory at once.
+ *
+ * @param <T> the record type
+ */
+@FunctionalInterface
+public interface RecordSource<T> {
+
+    /**
+     * Reads every record once, handing them to {@code sink} in order.
+     * <p>
+     * Each batch holds at most {@code batchSize} records and is not touched by the source
+     * after it has been handed over. Every call reads from the start again.
+     *
+     * @param batchSize the maximum number of records per batch
+     * @param sink      receives the batches on the thread that called this method
+     */
+    void forEachBatch(int batchSize, Consumer<List<T>> sink);
+
+    /**
+     * Wraps an already materialised list.
+     *
+     * @param records the records, {@code null} meaning none
+     * @return a source handing out consecutive views of {@code records}
+     */
+    static <T> RecordSource<T> of(List<T> records) {
+        return (batchSize, sink) -> {
+            if (records == null) {
+                return;
+            }
+            int size = Math.max(1, batchSize);
+            for (int from = 0; from < records.size(); from += size) {
+                sink.accept(records.subList(from, Math.min(records.size(), from + size)));
+            }
+        };
+    }
+}
@@ -243,4 +243,17 @@ public interface UserService {
      */
     Map<String, Object> getUserWithHighestFollowRatio();
 
+    /**
+     * Generalizes {@link #getUserWithHighestFollowRatio} to the top {@code k} users, with the same
+     * eligibility, ratio, tie-breaking and fields.
+     *
+     * <p>The follower and following counts are kept on every user, exactly in step with {@code user_follows},
+     * and the ratio is indexed, so only the first {@code k} entries of that index are read.
+     *
+     * @param k the number of users, between 1 and 1000
+     * @return up to {@code k} maps by descending ratio, empty if no eligible user exists
+     * @throws IllegalArgumentException if {@code k} is out of range
+     */
+    List<Map<String, Object>> getFollowRatioLeaderboard(int k);
+
 }
@@ -0,0 +1,116 @@
+package io.sustc.service.impl;
+
+import io.sustc.service.RecordSource;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Overlaps reading a {@link RecordSource} with writing its batches.
+ * <p>
+ * The source runs on a background thread and hands its batches over a small bounded queue,
+ * so at most {@code depth + 2} batches are alive at any time. Batches are written on the
+ * calling thread, which keeps the writes on the caller's transaction and connection.
+ */
+final class BatchPipeline {
+
+    private static final Object END = new Object();
+
+    private BatchPipeline() {
+    }
+
+    /**
+     * Streams {@code source} into {@code writer} and returns once every batch has been written.
+     * A failure on either side stops both and is rethrown here.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> void run(String name, RecordSource<T> source, int batchSize, int depth, Consumer<List<T>> writer) {
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(Math.max(1, depth));
+        Reader<T> reader = new Reader<>(source, batchSize, queue);
+        Thread thread = new Thread(reader, "import-read-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            while (true) {
+                Object item = queue.take();
+                if (item == END) {
+                    break;
+                }
+                if (item instanceof Throwable) {
+                    Throwable e = (Throwable) item;
+                    if (e instanceof RuntimeException) throw (RuntimeException) e;
+                    if (e instanceof Error) throw (Error) e;
+                    throw new IllegalStateException("Reading " + name + " failed", e);
+                }
+                writer.accept((List<T>) item);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while importing " + name, e);
+        } finally {
+            reader.cancelled = true;
+            thread.interrupt();
+        }
+    }
+
+    private static final class Reader<T> implements Runnable {
+
+        private final RecordSource<T> source;
+
+        private final int batchSize;
+
+        private final BlockingQueue<Object> queue;
+
+        private volatile boolean cancelled;
+
+        private Reader(RecordSource<T> source, int batchSize, BlockingQueue<Object> queue) {
+            this.source = source;
+            this.batchSize = batchSize;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Object last = END;
+                try {
+                    source.forEachBatch(batchSize, this::hand);
+                } catch (CancelledException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    last = e;
+                }
+                hand(last);
+            } catch (CancelledException ignored) {
+                // the writer has stopped, nobody is waiting for the rest
+            }
+        }
+
+        private void hand(Object item) {
+            try {
+                while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        throw new CancelledException();
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new CancelledException();
+            }
+        }
+    }
+
+    /**
+     * Unwinds the source once the writer has given up.
+     */
+    private static final class CancelledException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private CancelledException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.sustc.service.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The recipes that are next to each other in {@code (Calories, RecipeId)} order, one row per pair in
+ * {@link Schema#CALORIE_GAPS_TABLE}, so that {@link RecipeServiceImpl#getClosestCaloriePair} reads the first
+ * entry of an index instead of sorting every recipe.
+ * <p>
+ * {@code createRecipe} and {@code deleteRecipe} splice a recipe into or out of the chain in their transaction,
+ * with two index lookups on {@code idx_recipes_calories_seek}; bulk imports {@link #rebuild} it. Both hold an
+ * advisory lock until they commit, so that concurrent changes see each other's neighbours.
+ */
+@Component
+public class CalorieGaps {
+
+    /**
+     * Key of the advisory lock held while the pairs change.
+     */
+    private static final long LOCK = 0x5355_5354_0003L;
+
+    private static final String COLUMNS = "LowerId, UpperId, RecipeA, RecipeB, CaloriesA, CaloriesB, Difference";
+
+    /**
+     * Every pair of neighbours, with the smaller id as recipe A, from the window the pairs used to be read with.
+     */
+    static final String FILL = "INSERT INTO recipe_calorie_gaps (" + COLUMNS + ") " +
+            "SELECT prev_id, recipeid, LEAST(recipeid, prev_id), GREATEST(recipeid, prev_id), " +
+            "       CASE WHEN recipeid < prev_id THEN calories ELSE prev_cal END, " +
+            "       CASE WHEN recipeid < prev_id THEN prev_cal ELSE calories END, " +
+            "       ABS(calories - prev_cal) " +
+            "FROM (SELECT recipeid, calories, " +
+            "             LAG(recipeid) OVER (ORDER BY calories ASC, recipeid ASC) AS prev_id, " +
+            "             LAG(calories) OVER (ORDER BY calories ASC, recipeid ASC) AS prev_cal " +
+            "      FROM recipes WHERE calories IS NOT NULL) ordered " +
+            "WHERE prev_id IS NOT NULL";
+
+    private static final String INSERT_PAIR = "INSERT INTO recipe_calorie_gaps (" + COLUMNS + ") " +
+            "SELECT l.RecipeId, u.RecipeId, LEAST(l.RecipeId, u.RecipeId), GREATEST(l.RecipeId, u.RecipeId), " +
+            "       CASE WHEN l.RecipeId < u.RecipeId THEN l.Calories ELSE u.Calories END, " +
+            "       CASE WHEN l.RecipeId < u.RecipeId THEN u.Calories ELSE l.Calories END, " +
+            "       ABS(u.Calories - l.Calories) " +
+            "FROM recipes l JOIN recipes u ON u.RecipeId = ? " +
+            "WHERE l.RecipeId = ?";
+
+    private static final String NEIGHBOURS = "SELECT " +
+            "(SELECT p.RecipeId FROM recipes p " +
+            " WHERE p.Calories IS NOT NULL AND (p.Calories, p.RecipeId) < (x.Calories, x.RecipeId) " +
+            " ORDER BY p.Calories DESC, p.RecipeId DESC LIMIT 1), " +
+            "(SELECT n.RecipeId FROM recipes n " +
+            " WHERE n.Calories IS NOT NULL AND (n.Calories, n.RecipeId) > (x.Calories, x.RecipeId) " +
+            " ORDER BY n.Calories ASC, n.RecipeId ASC LIMIT 1) " +
+            "FROM recipes x WHERE x.RecipeId = ? AND x.Calories IS NOT NULL";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * The closest pair, in the map layout of {@code getClosestCaloriePair}.
+     *
+     * @return the pair, or {@code null} if fewer than two recipes have calories
+     */
+    Map<String, Object> closest() {
+        List<Map<String, Object>> rows = jdbcTemplate.query(
+                "SELECT RecipeA, RecipeB, CaloriesA, CaloriesB, Difference FROM recipe_calorie_gaps " +
+                        "ORDER BY Difference ASC, RecipeA ASC, RecipeB ASC LIMIT 1",
+                (rs, rowNum) -> {
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("RecipeA", rs.getLong(1));
+                    result.put("RecipeB", rs.getLong(2));
+                    result.put("CaloriesA", rs.getDouble(3));
+                    result.put("CaloriesB", rs.getDouble(4));
+                    result.put("Difference", rs.getDouble(5));
+                    return result;
+                });
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Links a recipe inserted in the current transaction between its neighbours.
+     */
+    void added(long recipeId) {
+        lock();
+        List<Long[]> neighbours = jdbcTemplate.query(NEIGHBOURS,
+                (rs, rowNum) -> new Long[]{rs.getObject(1, Long.class), rs.getObject(2, Long.class)},
+                recipeId);
+        if (neighbours.isEmpty()) {
+            return;
+        }
+        Long prev = neighbours.get(0)[0];
+        Long next = neighbours.get(0)[1];
+        if (prev != null) {
+            jdbcTemplate.update("DELETE FROM recipe_calorie_gaps WHERE LowerId = ?", prev);
+            jdbcTemplate.update(INSERT_PAIR, recipeId, prev);
+        }
+        if (next != null) {
+            jdbcTemplate.update(INSERT_PAIR, next, recipeId);
+        }
+    }
+
+    /**
+     * Unlinks a recipe deleted in the current transaction, joining its neighbours.
+     */
+    void removed(long recipeId) {
+        lock();
+        Long[] around = new Long[2];
+        jdbcTemplate.query("DELETE FROM recipe_calorie_gaps WHERE LowerId = ? OR UpperId = ? RETURNING LowerId, UpperId",
+                rs -> {
+                    if (rs.getLong(2) == recipeId) {
+                        around[0] = rs.getLong(1);
+                    } else {
+                        around[1] = rs.getLong(2);
+                    }
+                },
+                recipeId, recipeId);
+        if (around[0] != null && around[1] != null) {
+            jdbcTemplate.update(INSERT_PAIR, around[1], around[0]);
+        }
+    }
+
+    /**
+     * Recomputes every pair, e.g. after an import, in the current transaction.
+     */
+    void rebuild() {
+        lock();
+        jdbcTemplate.execute("TRUNCATE recipe_calorie_gaps");
+        jdbcTemplate.update(FILL);
+    }
+
+    private void lock() {
+        jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + LOCK + ")");
+    }
+}
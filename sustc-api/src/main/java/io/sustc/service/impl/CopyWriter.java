@@ -0,0 +1,152 @@
+package io.sustc.service.impl;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Streams rows into one table through PostgreSQL's {@code COPY ... FROM STDIN} in text format.
+ * <p>
+ * Fields are encoded straight into a local buffer which is handed to the driver whenever it
+ * grows past {@link #FLUSH_THRESHOLD}, so the caller never needs to build an intermediate
+ * {@code List<Object[]>} of parameters.
+ */
+final class CopyWriter implements AutoCloseable {
+
+    private static final int FLUSH_THRESHOLD = 1 << 16;
+
+    private final CopyIn copyIn;
+
+    private final StringBuilder buf = new StringBuilder(FLUSH_THRESHOLD + 1024);
+
+    private boolean rowStarted;
+
+    private CopyWriter(CopyIn copyIn) {
+        this.copyIn = copyIn;
+    }
+
+    /**
+     * Whether {@code con} is (or wraps) a PostgreSQL connection that can serve COPY.
+     */
+    static boolean isSupported(Connection con) throws SQLException {
+        return con.isWrapperFor(PGConnection.class);
+    }
+
+    /**
+     * Starts {@code COPY table (columns) FROM STDIN} on the given connection.
+     */
+    static CopyWriter open(Connection con, String table, String columns) throws SQLException {
+        CopyIn copyIn = con.unwrap(PGConnection.class)
+                .getCopyAPI()
+                .copyIn("COPY " + table + " (" + columns + ") FROM STDIN");
+        return new CopyWriter(copyIn);
+    }
+
+    CopyWriter add(long value) {
+        separator().append(value);
+        return this;
+    }
+
+    CopyWriter add(int value) {
+        separator().append(value);
+        return this;
+    }
+
+    CopyWriter add(Integer value) {
+        if (value == null) return addNull();
+        return add(value.intValue());
+    }
+
+    CopyWriter add(float value) {
+        separator().append(value);
+        return this;
+    }
+
+    CopyWriter add(boolean value) {
+        separator().append(value ? 't' : 'f');
+        return this;
+    }
+
+    CopyWriter add(Timestamp value) {
+        if (value == null) return addNull();
+        separator().append(value);
+        return this;
+    }
+
+    CopyWriter add(String value) {
+        if (value == null) return addNull();
+        separator();
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                default:
+                    buf.append(c);
+            }
+        }
+        return this;
+    }
+
+    CopyWriter addNull() {
+        separator().append("\\N");
+        return this;
+    }
+
+    /**
+     * Terminates the current row, flushing the buffer to the server if it is large enough.
+     */
+    void endRow() throws SQLException {
+        buf.append('\n');
+        rowStarted = false;
+        if (buf.length() >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the remaining buffered rows and completes the COPY.
+     *
+     * @return the number of rows the server reports as copied
+     */
+    long finish() throws SQLException {
+        flush();
+        return copyIn.endCopy();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (copyIn.isActive()) {
+            copyIn.cancelCopy();
+        }
+    }
+
+    private StringBuilder separator() {
+        if (rowStarted) {
+            buf.append('\t');
+        }
+        rowStarted = true;
+        return buf;
+    }
+
+    private void flush() throws SQLException {
+        if (buf.length() == 0) return;
+        byte[] bytes = buf.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buf.setLength(0);
+    }
+}
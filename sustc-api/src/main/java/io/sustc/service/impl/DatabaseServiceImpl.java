@@ -1,24 +1,37 @@
 package io.sustc.service.impl;
 
+import io.sustc.dto.ImportReport;
 import io.sustc.dto.RecipeRecord;
 import io.sustc.dto.ReviewRecord;
 import io.sustc.dto.UserRecord;
 import io.sustc.service.DatabaseService;
+import io.sustc.service.RecordSource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
 /**
  * It's important to mark your implementation class with {@link Service} annotation.
@@ -47,14 +60,61 @@ public class DatabaseServiceImpl implements DatabaseService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ImportConfig importConfig;
+
+    @Autowired
+    private RecipeCache recipeCache;
+
+    @Autowired
+    private RecipeSearchIndex recipeSearchIndex;
+
+    @Autowired
+    private RecipeNameDictionary recipeNameDictionary;
+
+    @Autowired
+    private CalorieGaps calorieGaps;
+
+    private volatile ImportReport lastImportReport;
+
+    private static final String FOLLOW_STAGE = "user_follows_stage";
+
+    /**
+     * Key of the advisory lock held while {@link #migrate} runs.
+     */
+    private static final long MIGRATION_LOCK = 0x5355_5354_0002L;
+
+    /**
+     * Batches read ahead of the writer in {@link #importStream}.
+     */
+    private static final int PIPELINE_DEPTH = 2;
+
+    /**
+     * With {@code sustc.import.parallelism <= 1} everything runs in one transaction on one connection.
+     * Otherwise the schema is committed first and the tables are loaded by an {@link ImportScheduler},
+     * each chunk in its own transaction on its own pooled connection, so the import is no longer atomic.
+     * <p>
+     * With {@code sustc.import.defer-constraints} the tables are created bare, loaded without any
+     * key or constraint checks, and only then get their primary keys, checks, foreign keys and indexes.
+     * This only happens if the tables do not exist yet or a checkpoint is being resumed, see {@link #deferConstraints}.
+     * <p>
+     * With {@code sustc.import.checkpoint} every chunk and every deferred DDL statement commits on its own
+     * together with its {@link ImportCheckpoint} row, even with a parallelism of 1, and calling this method
+     * again after a failure skips whatever had been committed. Progress left by an import of other data
+     * is dropped together with the tables, and the import starts over.
+     * <p>
+     * Of users, recipes or reviews repeating an id only the first is loaded, see {@link #firstById}.
+     */
     @Override
-    @Transactional
     public void importData(
             List<ReviewRecord> reviewRecords,
             List<UserRecord> userRecords,
             List<RecipeRecord> recipeRecords) {
 
-        createTables();
+        long startTime = System.currentTimeMillis();
 //        log.info("db user = {}", jdbcTemplate.queryForObject("select current_user", String.class));
 //        log.info("db name = {}", jdbcTemplate.queryForObject("select current_database()", String.class));
 
@@ -62,34 +122,483 @@ public class DatabaseServiceImpl implements DatabaseService {
         if (userRecords == null) userRecords = Collections.emptyList();
         if (recipeRecords == null) recipeRecords = Collections.emptyList();
         if (reviewRecords == null) reviewRecords = Collections.emptyList();
+        userRecords = firstById("users", userRecords, UserRecord::getAuthorId, new LongSet(userRecords.size()));
+        recipeRecords = firstById("recipes", recipeRecords, RecipeRecord::getRecipeId, new LongSet(recipeRecords.size()));
+        reviewRecords = firstById("reviews", reviewRecords, ReviewRecord::getReviewId, new LongSet(reviewRecords.size()));
+
+        String source = importConfig.isCheckpoint()
+                ? ImportCheckpoint.fingerprint(reviewRecords, userRecords, recipeRecords)
+                : null;
+        boolean resuming = source != null && ImportCheckpoint.exists(jdbcTemplate);
+        if (resuming && !ImportCheckpoint.matches(jdbcTemplate, source)) {
+            log.warn("The interrupted import was of other data, dropping the tables to start over");
+            drop();
+            resuming = false;
+        }
+
+        boolean copy = useCopy();
+        boolean deferred = deferConstraints(resuming);
+        int parallelism = Math.max(1, importConfig.getParallelism());
+        ImportReport report = ImportReport.builder()
+                .mode((copy ? ImportConfig.LoadMode.COPY : ImportConfig.LoadMode.BATCH).name())
+                .parallelism(parallelism)
+                .deferredConstraints(deferred)
+                .build();
+
+        ImportCheckpoint checkpoint = source != null
+                ? transactionTemplate.execute(status -> ImportCheckpoint.open(jdbcTemplate, importConfig.getChunkSize(), source))
+                : null;
+        if (checkpoint != null) {
+            report.setResumedChunks(checkpoint.resumedChunks());
+        }
 
-        batchInsertUsers(userRecords);
-        batchInsertRecipes(recipeRecords);
+        ImportScheduler plan = buildImportPlan(copy, deferred, checkpoint, reviewRecords, userRecords, recipeRecords);
+        runImport(report, startTime, checkpoint, parallelism == 1 && checkpoint == null
+                ? () -> plan.runSequentially().forEach(report::addRows)
+                : () -> plan.runParallel(parallelism,
+                        chunk -> Objects.requireNonNull(transactionTemplate.execute(status -> chunk.getAsLong())))
+                .forEach(report::addRows));
+    }
+
+    /**
+     * Tables are loaded one after another on a single connection, each through a {@link BatchPipeline},
+     * so only a few batches of {@code sustc.import.batch-size} records, and the rows derived from them,
+     * are in memory at any time. Follow edges, which both users of an edge may list, are staged in a
+     * temporary table and de-duplicated by the database once all users are in.
+     * <p>
+     * Schema, constraints and indexes are handled as in {@link #importData}.
+     * {@code sustc.import.checkpoint} is not supported here, since the batches of a source are not addressable.
+     */
+    @Override
+    public void importStream(
+            RecordSource<ReviewRecord> reviews,
+            RecordSource<UserRecord> users,
+            RecordSource<RecipeRecord> recipes) {
+
+        long startTime = System.currentTimeMillis();
+        boolean copy = useCopy();
+        int parallelism = Math.max(1, importConfig.getParallelism());
+        ImportReport report = ImportReport.builder()
+                .mode((copy ? ImportConfig.LoadMode.COPY : ImportConfig.LoadMode.BATCH).name())
+                .parallelism(parallelism)
+                .deferredConstraints(deferConstraints(false))
+                .streaming(true)
+                .build();
+        if (importConfig.isCheckpoint()) {
+            log.warn("sustc.import.checkpoint is ignored by importStream");
+        }
+
+        Runnable load = () -> streamTables(copy, report,
+                reviews == null ? RecordSource.of(null) : reviews,
+                users == null ? RecordSource.of(null) : users,
+                recipes == null ? RecordSource.of(null) : recipes);
+        runImport(report, startTime, null, parallelism == 1
+                ? load
+                : () -> transactionTemplate.executeWithoutResult(status -> load.run()));
+    }
+
+    /**
+     * Runs in one transaction. The records are first loaded into temporary {@code delta_*} tables
+     * with the configured load mode, and everything else is set-based SQL against those:
+     * <ol>
+     *     <li>users, recipes and reviews are upserted by id, keeping rating and review count of recipes;</li>
+     *     <li>follow, ingredient and like edges owned by a delta record are diffed against the staged
+     *     ones, deleting the stored edges that are gone and inserting the new ones;</li>
+     *     <li>rating and review count are recomputed for the recipes of the delta, and for the recipes
+     *     any delta review belonged to before or after it;</li>
+     *     <li>the follow counters of the users and the closest calorie pairs are recomputed.</li>
+     * </ol>
+     * A user owns the follows in both directions, a recipe its ingredients and a review its likes.
+     */
+    @Override
+    public void importDelta(
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords) {
+
+        long startTime = System.currentTimeMillis();
+        List<UserRecord> users = userRecords == null ? Collections.emptyList() : userRecords;
+        List<RecipeRecord> recipes = recipeRecords == null ? Collections.emptyList() : recipeRecords;
+        List<ReviewRecord> reviews = reviewRecords == null ? Collections.emptyList() : reviewRecords;
+
+        boolean copy = useCopy();
+        ImportReport report = ImportReport.builder()
+                .mode((copy ? ImportConfig.LoadMode.COPY : ImportConfig.LoadMode.BATCH).name())
+                .parallelism(1)
+                .delta(true)
+                .build();
+
+        migrate();
+        transactionTemplate.executeWithoutResult(status -> {
+            phase(report, "stage", () -> {
+                for (String table : new String[]{"users", "recipes", "reviews", "user_follows", "recipe_ingredients", "review_likes"}) {
+                    jdbcTemplate.execute("CREATE TEMP TABLE delta_" + table + " (LIKE " + table + " INCLUDING DEFAULTS) ON COMMIT DROP");
+                }
+                jdbcTemplate.execute("CREATE TEMP TABLE delta_touched_recipes (RecipeId BIGINT) ON COMMIT DROP");
+
+                if (copy) {
+                    copyUsers("delta_users", users);
+                    copyRecipes("delta_recipes", recipes);
+                    copyReviews("delta_reviews", reviews);
+                    copyRecipeIngredients("delta_recipe_ingredients", collectIngredientPairs(recipes));
+                } else {
+                    batchInsertUsers("delta_users", users);
+                    batchInsertRecipes("delta_recipes", recipes);
+                    batchInsertReviews("delta_reviews", reviews);
+                    batchInsertRecipeIngredients("delta_recipe_ingredients", collectIngredientPairs(recipes));
+                }
+                loadPairs(copy, "delta_user_follows", "FollowerId, FollowingId", collectFollowPairs(users));
+                loadPairs(copy, "delta_review_likes", "ReviewId, AuthorId", collectLikePairs(reviews));
+            });
+
+            phase(report, "users", () -> {
+                report.addRows("users", upsert("users", "AuthorId",
+                        "AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted"));
+                reconcile(report, "user_follows", "FollowerId", "FollowingId",
+                        "t.FollowerId IN (SELECT AuthorId FROM delta_users) OR t.FollowingId IN (SELECT AuthorId FROM delta_users)");
+            });
+
+            phase(report, "recipes", () -> {
+                report.addRows("recipes", upsert("recipes", "RecipeId",
+                        "RecipeId, Name, AuthorId, CookTime, PrepTime, TotalTime, CookSec, PrepSec, DatePublished, Description, " +
+                                "RecipeCategory, AggregatedRating, ReviewCount, Calories, FatContent, SaturatedFatContent, " +
+                                "CholesterolContent, SodiumContent, CarbohydrateContent, FiberContent, SugarContent, " +
+                                "ProteinContent, RecipeServings, RecipeYield, IngredientCount",
+                        "AggregatedRating", "ReviewCount"));
+                reconcile(report, "recipe_ingredients", "RecipeId", "IngredientPart",
+                        "t.RecipeId IN (SELECT RecipeId FROM delta_recipes)");
+                syncRecipeSequence();
+            });
+
+            phase(report, "reviews", () -> {
+                jdbcTemplate.update("INSERT INTO delta_touched_recipes " +
+                        "SELECT RecipeId FROM delta_recipes " +
+                        "UNION SELECT RecipeId FROM delta_reviews " +
+                        "UNION SELECT rv.RecipeId FROM reviews rv JOIN delta_reviews d ON d.ReviewId = rv.ReviewId");
+                report.addRows("reviews", upsert("reviews", "ReviewId",
+                        "ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified"));
+                reconcile(report, "review_likes", "ReviewId", "AuthorId",
+                        "t.ReviewId IN (SELECT ReviewId FROM delta_reviews)");
+            });
+
+            phase(report, "ratings", () -> report.addRows("recipe_ratings", jdbcTemplate.update(
+                    "UPDATE recipes r SET AggregatedRating = s.avg_rating, ReviewCount = s.cnt " +
+                            "FROM (SELECT t.RecipeId, ROUND(CAST(AVG(rv.Rating) AS numeric), 2) AS avg_rating, " +
+                            "             COUNT(rv.ReviewId) AS cnt " +
+                            "      FROM (SELECT DISTINCT RecipeId FROM delta_touched_recipes) t " +
+                            "      LEFT JOIN reviews rv ON rv.RecipeId = t.RecipeId " +
+                            "      GROUP BY t.RecipeId) s " +
+                            "WHERE r.RecipeId = s.RecipeId")));
+
+            phase(report, "follow_counts", this::recountFollows);
+            phase(report, "calorie_gaps", calorieGaps::rebuild);
+        });
+
+        recipeCache.clear();
+        recipeSearchIndex.reload();
+        recipeNameDictionary.reload();
+        report.setElapsedMillis(System.currentTimeMillis() - startTime);
+        lastImportReport = report;
+        log.info("Applied delta in {} ms: upserted/inserted {}, removed {}, phases {}",
+                report.getElapsedMillis(), report.getRowCounts(), report.getRemovedRows(), report.getPhaseMillis());
+    }
+
+    /**
+     * Makes the follow counters of the users, loaded as given by the records, match {@code user_follows}.
+     */
+    private void recountFollows() {
+        jdbcTemplate.update(UserServiceImpl.RECOUNT_FOLLOWS);
+    }
+
+    /**
+     * {@code INSERT ... ON CONFLICT DO UPDATE} from {@code delta_<table>}, one row per key.
+     *
+     * @param keep columns left as they are when the row already exists
+     * @return the number of rows inserted or updated
+     */
+    private int upsert(String table, String key, String columns, String... keep) {
+        List<String> kept = Arrays.asList(keep);
+        StringBuilder set = new StringBuilder();
+        for (String column : columns.split(",\\s*")) {
+            if (column.equals(key) || kept.contains(column)) {
+                continue;
+            }
+            if (set.length() > 0) {
+                set.append(", ");
+            }
+            set.append(column).append(" = EXCLUDED.").append(column);
+        }
+        return jdbcTemplate.update("INSERT INTO " + table + " (" + columns + ") " +
+                "SELECT DISTINCT ON (" + key + ") " + columns + " FROM delta_" + table + " " +
+                "ON CONFLICT (" + key + ") DO UPDATE SET " + set);
+    }
 
-        // ===== Add this block: sync sequence to imported max(recipeid) =====
+    /**
+     * Makes the edges in {@code table} that match {@code owned} (over alias {@code t}) equal to the staged
+     * {@code delta_<table>}: stored edges missing from the stage are deleted, staged edges are inserted.
+     */
+    private void reconcile(ImportReport report, String table, String first, String second, String owned) {
+        int removed = jdbcTemplate.update("DELETE FROM " + table + " t " +
+                "WHERE (" + owned + ") " +
+                "AND NOT EXISTS (SELECT 1 FROM delta_" + table + " d " +
+                "                WHERE d." + first + " = t." + first + " AND d." + second + " = t." + second + ")");
+        int inserted = jdbcTemplate.update("INSERT INTO " + table + " (" + first + ", " + second + ") " +
+                "SELECT " + first + ", " + second + " FROM delta_" + table + " " +
+                "ON CONFLICT DO NOTHING");
+        report.addRemovedRows(table, removed);
+        report.addRows(table, inserted);
+    }
+
+    /**
+     * Creates the schema, runs {@code load}, then adds the deferred constraints and the indexes.
+     * <p>
+     * With {@code sustc.import.parallelism <= 1} and no checkpoint all of it runs in one transaction on
+     * one connection, and {@code load} must not open transactions of its own. Otherwise every phase
+     * commits on its own and {@code load} is responsible for its transactions.
+     */
+    private void runImport(ImportReport report, long startTime, ImportCheckpoint checkpoint, Runnable load) {
+        boolean deferred = report.isDeferredConstraints();
+        int parallelism = report.getParallelism();
+        if (parallelism == 1 && checkpoint == null) {
+            transactionTemplate.executeWithoutResult(status -> {
+                phase(report, "schema", () -> createTables(deferred));
+                phase(report, "load", load);
+                syncRecipeSequence();
+                phase(report, "follow_counts", this::recountFollows);
+                if (deferred) {
+                    phase(report, "constraints", () -> addConstraints(1, null));
+                }
+                phase(report, "indexes", () -> createIndexes(1, null));
+                phase(report, "calorie_gaps", calorieGaps::rebuild);
+            });
+        } else {
+            phase(report, "schema", () -> transactionTemplate.executeWithoutResult(status -> createTables(deferred)));
+            phase(report, "load", load);
+            transactionTemplate.executeWithoutResult(status -> syncRecipeSequence());
+            phase(report, "follow_counts", () -> transactionTemplate.executeWithoutResult(status -> recountFollows()));
+            if (deferred) {
+                phase(report, "constraints", () -> addConstraints(parallelism, checkpoint));
+            }
+            phase(report, "indexes", () -> createIndexes(parallelism, checkpoint));
+            phase(report, "calorie_gaps", () -> transactionTemplate.executeWithoutResult(status -> calorieGaps.rebuild()));
+            if (checkpoint != null) {
+                checkpoint.finish();
+            }
+        }
+
+        recipeCache.clear();
+        recipeSearchIndex.reload();
+        recipeNameDictionary.reload();
+        report.setElapsedMillis(System.currentTimeMillis() - startTime);
+        lastImportReport = report;
+        log.info("Imported {} rows in {} ms via {} x{} ({} rows/s), phases {}",
+                report.getTotalRows(), report.getElapsedMillis(), report.getMode(), parallelism,
+                String.format("%.0f", report.getRowsPerSecond()), report.getPhaseMillis());
+    }
+
+    private static void phase(ImportReport report, String name, Runnable body) {
+        long start = System.currentTimeMillis();
+        body.run();
+        report.addPhase(name, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * One step per table, following the foreign keys:
+     * users before recipes and follows, recipes before ingredients and reviews, reviews before likes.
+     * With deferred constraints there is nothing to follow and all tables load at once.
+     * Large tables are split into {@code sustc.import.chunk-size} chunks.
+     */
+    private ImportScheduler buildImportPlan(boolean copy,
+                                            boolean deferred,
+                                            ImportCheckpoint checkpoint,
+                                            List<ReviewRecord> reviewRecords,
+                                            List<UserRecord> userRecords,
+                                            List<RecipeRecord> recipeRecords) {
+        int chunkSize = importConfig.getChunkSize();
+        ImportScheduler plan = new ImportScheduler();
+
+        plan.add("users", track(checkpoint, "users", chunks(userRecords, chunkSize,
+                part -> copy ? copyUsers("users", part) : batchInsertUsers("users", part))));
+        plan.add("recipes", track(checkpoint, "recipes", chunks(recipeRecords, chunkSize,
+                part -> copy ? copyRecipes("recipes", part) : batchInsertRecipes("recipes", part))), after(deferred, "users"));
+        IngredientBuffer ingredients = collectIngredientPairs(recipeRecords);
+        plan.add("recipe_ingredients", track(checkpoint, "recipe_ingredients", chunks(ingredients.size(), chunkSize, (from, to) -> {
+            IngredientBuffer part = ingredients.slice(from, to);
+            return copy ? copyRecipeIngredients("recipe_ingredients", part) : batchInsertRecipeIngredients("recipe_ingredients", part);
+        })), after(deferred, "recipes"));
+        plan.add("reviews", track(checkpoint, "reviews", chunks(reviewRecords, chunkSize,
+                part -> copy ? copyReviews("reviews", part) : batchInsertReviews("reviews", part))), after(deferred, "recipes", "users"));
+        LongPairBuffer likes = collectLikePairs(reviewRecords);
+        plan.add("review_likes", track(checkpoint, "review_likes", chunks(likes.size(), chunkSize,
+                (from, to) -> loadPairs(copy, "review_likes", "ReviewId, AuthorId", likes.slice(from, to)))), after(deferred, "reviews"));
+        LongPairBuffer follows = collectFollowPairs(userRecords);
+        plan.add("user_follows", track(checkpoint, "user_follows", chunks(follows.size(), chunkSize,
+                (from, to) -> loadPairs(copy, "user_follows", "FollowerId, FollowingId", follows.slice(from, to)))), after(deferred, "users"));
+        return plan;
+    }
+
+    private static List<LongSupplier> track(ImportCheckpoint checkpoint, String step, List<LongSupplier> chunks) {
+        return checkpoint == null ? chunks : checkpoint.wrap(step, chunks);
+    }
+
+    /**
+     * Whether the constraints are added after loading. Tables left by an earlier import keep their rows and
+     * keys, so loading into them without keys would let duplicates in; then the tables are created and loaded
+     * with their constraints, unless a checkpointed import that created them bare is being resumed.
+     */
+    private boolean deferConstraints(boolean resuming) {
+        if (!importConfig.isDeferConstraints() || resuming) {
+            return importConfig.isDeferConstraints();
+        }
+        String names = Schema.TABLES.stream().map(t -> "'" + t.name + "'").collect(Collectors.joining(", "));
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_tables WHERE schemaname = current_schema() AND tablename IN (" + names + ")",
+                Integer.class);
+        if (existing != null && existing > 0) {
+            log.info("Tables already exist, adding constraints before loading instead of after");
+            return false;
+        }
+        return true;
+    }
+
+    private static String[] after(boolean deferred, String... tables) {
+        return deferred ? new String[0] : tables;
+    }
+
+    private static <T> List<LongSupplier> chunks(List<T> rows, int chunkSize, ToLongFunction<List<T>> loader) {
+        List<LongSupplier> chunks = new ArrayList<>();
+        for (List<T> part : ImportScheduler.partition(rows, chunkSize)) {
+            chunks.add(() -> loader.applyAsLong(part));
+        }
+        return chunks;
+    }
+
+    private static List<LongSupplier> chunks(int size, int chunkSize, RangeLoader loader) {
+        int step = Math.max(1, chunkSize);
+        List<LongSupplier> chunks = new ArrayList<>((size + step - 1) / step);
+        for (int from = 0; from < size; from += step) {
+            int start = from;
+            int end = Math.min(size, from + step);
+            chunks.add(() -> loader.load(start, end));
+        }
+        return chunks;
+    }
+
+    @FunctionalInterface
+    private interface RangeLoader {
+        long load(int from, int to);
+    }
+
+    /**
+     * Loads users, recipes and reviews in that order, each batch together with the
+     * rows derived from it, so foreign keys hold even when they are checked eagerly.
+     */
+    private void streamTables(boolean copy,
+                              ImportReport report,
+                              RecordSource<ReviewRecord> reviews,
+                              RecordSource<UserRecord> users,
+                              RecordSource<RecipeRecord> recipes) {
+        int batchSize = importConfig.getBatchSize();
+        LongSet userIds = new LongSet(batchSize);
+        LongSet recipeIds = new LongSet(batchSize);
+        LongSet reviewIds = new LongSet(batchSize);
+
+        jdbcTemplate.execute("CREATE TEMP TABLE " + FOLLOW_STAGE + " (FollowerId BIGINT, FollowingId BIGINT) ON COMMIT DROP");
+        BatchPipeline.run("users", users, batchSize, PIPELINE_DEPTH, read -> {
+            List<UserRecord> batch = firstById("users", read, UserRecord::getAuthorId, userIds);
+            report.addRows("users", copy ? copyUsers("users", batch) : batchInsertUsers("users", batch));
+            loadPairs(copy, FOLLOW_STAGE, "FollowerId, FollowingId", collectFollowPairs(batch));
+        });
+
+        BatchPipeline.run("recipes", recipes, batchSize, PIPELINE_DEPTH, read -> {
+            List<RecipeRecord> batch = firstById("recipes", read, RecipeRecord::getRecipeId, recipeIds);
+            report.addRows("recipes", copy ? copyRecipes("recipes", batch) : batchInsertRecipes("recipes", batch));
+            IngredientBuffer ingredients = collectIngredientPairs(batch);
+            report.addRows("recipe_ingredients",
+                    copy ? copyRecipeIngredients("recipe_ingredients", ingredients) : batchInsertRecipeIngredients("recipe_ingredients", ingredients));
+        });
+
+        BatchPipeline.run("reviews", reviews, batchSize, PIPELINE_DEPTH, read -> {
+            List<ReviewRecord> batch = firstById("reviews", read, ReviewRecord::getReviewId, reviewIds);
+            report.addRows("reviews", copy ? copyReviews("reviews", batch) : batchInsertReviews("reviews", batch));
+            report.addRows("review_likes",
+                    loadPairs(copy, "review_likes", "ReviewId, AuthorId", collectLikePairs(batch)));
+        });
+
+        report.addRows("user_follows", jdbcTemplate.update(
+                "INSERT INTO user_follows (FollowerId, FollowingId) " +
+                        "SELECT DISTINCT FollowerId, FollowingId FROM " + FOLLOW_STAGE));
+    }
+
+    /**
+     * Syncs the sequence used by createRecipe to the imported max(recipeid).
+     */
+    private void syncRecipeSequence() {
         jdbcTemplate.queryForObject(
                 "SELECT setval('recipe_id_seq', (SELECT COALESCE(MAX(recipeid), 0) FROM recipes));",
                 Long.class
         );
+    }
 
-        batchInsertRecipeIngredients(recipeRecords);
-        batchInsertReviews(reviewRecords);
-        batchInsertReviewLikes(reviewRecords);
-        batchInsertUserFollows(userRecords);
+    @Override
+    public ImportReport getLastImportReport() {
+        return lastImportReport;
+    }
 
-        createIndexes();
+    @Override
+    public boolean hasPendingImport() {
+        return ImportCheckpoint.exists(jdbcTemplate);
     }
 
+    /**
+     * COPY is used when configured and the pooled connection is really PostgreSQL;
+     * otherwise the batch path is the fallback.
+     */
+    private boolean useCopy() {
+        if (importConfig.getMode() != ImportConfig.LoadMode.COPY) {
+            return false;
+        }
+        Boolean supported = jdbcTemplate.execute((ConnectionCallback<Boolean>) CopyWriter::isSupported);
+        if (!Boolean.TRUE.equals(supported)) {
+            log.warn("COPY is not supported by the current connection, falling back to batch inserts");
+            return false;
+        }
+        return true;
+    }
 
-    private void batchInsertUsers(List<UserRecord> users) {
+    /**
+     * The records whose id was not {@code seen} before, in their order. The first record of an id wins, as with
+     * the {@code ON CONFLICT DO NOTHING} of the batch inserts, so that a repeated id does not abort a COPY.
+     * Returns {@code records} itself when no id repeats.
+     */
+    static <T> List<T> firstById(String table, List<T> records, ToLongFunction<T> id, LongSet seen) {
+        List<T> kept = null;
+        for (int i = 0; i < records.size(); i++) {
+            T record = records.get(i);
+            if (seen.add(id.applyAsLong(record))) {
+                if (kept != null) {
+                    kept.add(record);
+                }
+            } else if (kept == null) {
+                kept = new ArrayList<>(records.subList(0, i));
+            }
+        }
+        if (kept == null) {
+            return records;
+        }
+        log.warn("Skipped {} {} with an id listed before", records.size() - kept.size(), table);
+        return kept;
+    }
+
+    private long batchInsertUsers(String table, List<UserRecord> users) {
         if (users.isEmpty()) {
-            return;
+            return 0;
         }
 
-        String sql = "INSERT INTO users " +
+        String sql = "INSERT INTO " + table + " " +
                 "  (AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
-                "ON CONFLICT (AuthorId) DO NOTHING;";
+                "ON CONFLICT DO NOTHING;";
 
         jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
             @Override
@@ -110,20 +619,43 @@ public class DatabaseServiceImpl implements DatabaseService {
                 return users.size();
             }
         });
+        return users.size();
+    }
+
+    private long copyUsers(String table, List<UserRecord> users) {
+        if (users.isEmpty()) {
+            return 0;
+        }
+
+        return copy(table,
+                "AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted",
+                w -> {
+                    for (UserRecord u : users) {
+                        w.add(u.getAuthorId())
+                                .add(u.getAuthorName())
+                                .add(u.getGender())
+                                .add(u.getAge())
+                                .add(u.getFollowers())
+                                .add(u.getFollowing())
+                                .add(u.getPassword())
+                                .add(u.isDeleted())
+                                .endRow();
+                    }
+                });
     }
 
-    private void batchInsertRecipes(List<RecipeRecord> recipes) {
+    private long batchInsertRecipes(String table, List<RecipeRecord> recipes) {
         if (recipes.isEmpty()) {
-            return;
+            return 0;
         }
 
-        String sql = "INSERT INTO recipes " +
-                "  (RecipeId, Name, AuthorId, CookTime, PrepTime, TotalTime, DatePublished, Description, " +
+        String sql = "INSERT INTO " + table + " " +
+                "  (RecipeId, Name, AuthorId, CookTime, PrepTime, TotalTime, CookSec, PrepSec, DatePublished, Description, " +
                 "   RecipeCategory, AggregatedRating, ReviewCount, Calories, FatContent, SaturatedFatContent, " +
                 "   CholesterolContent, SodiumContent, CarbohydrateContent, FiberContent, SugarContent, " +
-                "   ProteinContent, RecipeServings, RecipeYield) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                "ON CONFLICT (RecipeId) DO NOTHING;";
+                "   ProteinContent, RecipeServings, RecipeYield, IngredientCount) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT DO NOTHING;";
 
         jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
             @Override
@@ -135,22 +667,25 @@ public class DatabaseServiceImpl implements DatabaseService {
                 ps.setString(4, r.getCookTime());
                 ps.setString(5, r.getPrepTime());
                 ps.setString(6, r.getTotalTime());
-                ps.setTimestamp(7, r.getDatePublished());
-                ps.setString(8, r.getDescription());
-                ps.setString(9, r.getRecipeCategory());
-                ps.setObject(10, r.getAggregatedRating());
-                ps.setObject(11, r.getReviewCount());
-                ps.setObject(12, r.getCalories());
-                ps.setObject(13, r.getFatContent());
-                ps.setObject(14, r.getSaturatedFatContent());
-                ps.setObject(15, r.getCholesterolContent());
-                ps.setObject(16, r.getSodiumContent());
-                ps.setObject(17, r.getCarbohydrateContent());
-                ps.setObject(18, r.getFiberContent());
-                ps.setObject(19, r.getSugarContent());
-                ps.setObject(20, r.getProteinContent());
-                ps.setObject(21, r.getRecipeServings());
-                ps.setObject(22, r.getRecipeYield());
+                ps.setObject(7, Schema.seconds(r.getCookTime()), Types.INTEGER);
+                ps.setObject(8, Schema.seconds(r.getPrepTime()), Types.INTEGER);
+                ps.setTimestamp(9, r.getDatePublished());
+                ps.setString(10, r.getDescription());
+                ps.setString(11, r.getRecipeCategory());
+                ps.setObject(12, r.getAggregatedRating());
+                ps.setObject(13, r.getReviewCount());
+                ps.setObject(14, r.getCalories());
+                ps.setObject(15, r.getFatContent());
+                ps.setObject(16, r.getSaturatedFatContent());
+                ps.setObject(17, r.getCholesterolContent());
+                ps.setObject(18, r.getSodiumContent());
+                ps.setObject(19, r.getCarbohydrateContent());
+                ps.setObject(20, r.getFiberContent());
+                ps.setObject(21, r.getSugarContent());
+                ps.setObject(22, r.getProteinContent());
+                ps.setInt(23, r.getRecipeServings());
+                ps.setObject(24, r.getRecipeYield());
+                ps.setInt(25, IngredientBuffer.countDistinct(r.getRecipeIngredientParts()));
             }
 
             @Override
@@ -158,37 +693,77 @@ public class DatabaseServiceImpl implements DatabaseService {
                 return recipes.size();
             }
         });
+        return recipes.size();
     }
 
-    private void batchInsertRecipeIngredients(List<RecipeRecord> recipes) {
+    private long copyRecipes(String table, List<RecipeRecord> recipes) {
         if (recipes.isEmpty()) {
-            return;
+            return 0;
         }
 
-        String sql = "INSERT INTO recipe_ingredients (RecipeId, IngredientPart) " +
-                "VALUES (?, ?) " +
-                "ON CONFLICT DO NOTHING;";
+        return copy(table,
+                "RecipeId, Name, AuthorId, CookTime, PrepTime, TotalTime, CookSec, PrepSec, DatePublished, Description, " +
+                        "RecipeCategory, AggregatedRating, ReviewCount, Calories, FatContent, SaturatedFatContent, " +
+                        "CholesterolContent, SodiumContent, CarbohydrateContent, FiberContent, SugarContent, " +
+                        "ProteinContent, RecipeServings, RecipeYield, IngredientCount",
+                w -> {
+                    for (RecipeRecord r : recipes) {
+                        w.add(r.getRecipeId())
+                                .add(r.getName())
+                                .add(r.getAuthorId())
+                                .add(r.getCookTime())
+                                .add(r.getPrepTime())
+                                .add(r.getTotalTime())
+                                .add(Schema.seconds(r.getCookTime()))
+                                .add(Schema.seconds(r.getPrepTime()))
+                                .add(r.getDatePublished())
+                                .add(r.getDescription())
+                                .add(r.getRecipeCategory())
+                                .add(r.getAggregatedRating())
+                                .add(r.getReviewCount())
+                                .add(r.getCalories())
+                                .add(r.getFatContent())
+                                .add(r.getSaturatedFatContent())
+                                .add(r.getCholesterolContent())
+                                .add(r.getSodiumContent())
+                                .add(r.getCarbohydrateContent())
+                                .add(r.getFiberContent())
+                                .add(r.getSugarContent())
+                                .add(r.getProteinContent())
+                                .add(r.getRecipeServings())
+                                .add(r.getRecipeYield())
+                                .add(IngredientBuffer.countDistinct(r.getRecipeIngredientParts()))
+                                .endRow();
+                    }
+                });
+    }
 
-        List<Object[]> ingredientPairs = new ArrayList<>();
+    /**
+     * (RecipeId, IngredientPart) pairs, with repeated parts of the same recipe removed
+     * so that COPY does not trip over the primary key.
+     */
+    private IngredientBuffer collectIngredientPairs(List<RecipeRecord> recipes) {
+        IngredientBuffer ingredientPairs = new IngredientBuffer(recipes.size() * 8);
         for (RecipeRecord recipe : recipes) {
-            if (recipe.getRecipeIngredientParts() == null) {
-                continue;
-            }
-            for (String ingredient : recipe.getRecipeIngredientParts()) {
-                ingredientPairs.add(new Object[]{recipe.getRecipeId(), ingredient});
-            }
+            ingredientPairs.addRecipe(recipe.getRecipeId(), recipe.getRecipeIngredientParts());
         }
+        return ingredientPairs;
+    }
 
+    private long batchInsertRecipeIngredients(String table, IngredientBuffer ingredientPairs) {
         if (ingredientPairs.isEmpty()) {
-            return;
+            return 0;
         }
 
+        String sql = "INSERT INTO " + table + " (RecipeId, IngredientPart) " +
+                "VALUES (?, ?) " +
+                "ON CONFLICT DO NOTHING;";
+
         jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
             @Override
             public void setValues(PreparedStatement ps, int i) throws SQLException {
-                Object[] pair = ingredientPairs.get(i);
-                ps.setLong(1, (Long) pair[0]);
-                ps.setString(2, (String) pair[1]);
+                ps.setLong(1, ingredientPairs.recipeId(i));
+                ps.setString(2, ingredientPairs.part(i));
             }
 
             @Override
@@ -196,17 +771,30 @@ public class DatabaseServiceImpl implements DatabaseService {
                 return ingredientPairs.size();
             }
         });
+        return ingredientPairs.size();
+    }
+
+    private long copyRecipeIngredients(String table, IngredientBuffer ingredientPairs) {
+        if (ingredientPairs.isEmpty()) {
+            return 0;
+        }
+
+        return copy(table, "RecipeId, IngredientPart", w -> {
+            for (int i = 0; i < ingredientPairs.size(); i++) {
+                w.add(ingredientPairs.recipeId(i)).add(ingredientPairs.part(i)).endRow();
+            }
+        });
     }
 
-    private void batchInsertReviews(List<ReviewRecord> reviews) {
+    private long batchInsertReviews(String table, List<ReviewRecord> reviews) {
         if (reviews.isEmpty()) {
-            return;
+            return 0;
         }
 
-        String sql = "INSERT INTO reviews " +
+        String sql = "INSERT INTO " + table + " " +
                 "  (ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?) " +
-                "ON CONFLICT (ReviewId) DO NOTHING;";
+                "ON CONFLICT DO NOTHING;";
 
         jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
             @Override
@@ -226,200 +814,268 @@ public class DatabaseServiceImpl implements DatabaseService {
                 return reviews.size();
             }
         });
+        return reviews.size();
     }
 
-    private void batchInsertReviewLikes(List<ReviewRecord> reviews) {
+    private long copyReviews(String table, List<ReviewRecord> reviews) {
         if (reviews.isEmpty()) {
-            return;
+            return 0;
         }
 
-        String sql = "INSERT INTO review_likes (ReviewId, AuthorId) " +
-                "VALUES (?, ?) " +
-                "ON CONFLICT DO NOTHING;";
+        return copy(table,
+                "ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified",
+                w -> {
+                    for (ReviewRecord r : reviews) {
+                        w.add(r.getReviewId())
+                                .add(r.getRecipeId())
+                                .add(r.getAuthorId())
+                                .add(r.getRating())
+                                .add(r.getReview())
+                                .add(r.getDateSubmitted())
+                                .add(r.getDateModified())
+                                .endRow();
+                    }
+                });
+    }
 
-        List<long[]> likePairs = new ArrayList<>();
+    /**
+     * (ReviewId, AuthorId) pairs, with repeated likers of the same review removed.
+     */
+    private LongPairBuffer collectLikePairs(List<ReviewRecord> reviews) {
+        LongPairBuffer likePairs = new LongPairBuffer(reviews.size() * 2);
         for (ReviewRecord r : reviews) {
             long[] likes = r.getLikes();
-            if (likes == null || likes.length == 0) {
+            if (likes == null) {
                 continue;
             }
             for (long userId : likes) {
-                likePairs.add(new long[]{r.getReviewId(), userId});
+                likePairs.add(r.getReviewId(), userId);
             }
         }
-
-
-        if (likePairs.isEmpty()) {
-            return;
-        }
-
-        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                long[] pair = likePairs.get(i);
-                ps.setLong(1, pair[0]);
-                ps.setLong(2, pair[1]);
-            }
-
-            @Override
-            public int getBatchSize() {
-                return likePairs.size();
-            }
-        });
+        likePairs.sortDistinct();
+        return likePairs;
     }
 
-    private void batchInsertUserFollows(List<UserRecord> users) {
-        if (users.isEmpty()) {
-            return;
-        }
-
-        String sql = "INSERT INTO user_follows (FollowerId, FollowingId) " +
-                "VALUES (?, ?) " +
-                "ON CONFLICT DO NOTHING;";
-
-        List<long[]> followPairs = new ArrayList<>();
+    /**
+     * (FollowerId, FollowingId) pairs. Every edge is usually listed twice, once in the
+     * follower's {@code followingUsers} and once in the followee's {@code followerUsers},
+     * so the pairs are sorted and de-duplicated.
+     */
+    private LongPairBuffer collectFollowPairs(List<UserRecord> users) {
+        LongPairBuffer followPairs = new LongPairBuffer(users.size() * 4);
         for (UserRecord u : users) {
             long[] followers = u.getFollowerUsers();
             if (followers != null) {
                 for (long follower : followers) {
-                    followPairs.add(new long[]{follower, u.getAuthorId()});
+                    followPairs.add(follower, u.getAuthorId());
                 }
             }
 
             long[] followings = u.getFollowingUsers();
             if (followings != null) {
                 for (long following : followings) {
-                    followPairs.add(new long[]{u.getAuthorId(), following});
+                    followPairs.add(u.getAuthorId(), following);
                 }
             }
         }
+        followPairs.sortDistinct();
+        return followPairs;
+    }
 
+    private long loadPairs(boolean copy, String table, String columns, LongPairBuffer pairs) {
+        return copy ? copyPairs(table, columns, pairs) : batchInsertPairs(table, columns, pairs);
+    }
 
-        if (followPairs.isEmpty()) {
-            return;
+    private long batchInsertPairs(String table, String columns, LongPairBuffer pairs) {
+        if (pairs.isEmpty()) {
+            return 0;
         }
 
+        String sql = "INSERT INTO " + table + " (" + columns + ") " +
+                "VALUES (?, ?) " +
+                "ON CONFLICT DO NOTHING;";
+
         jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
             @Override
             public void setValues(PreparedStatement ps, int i) throws SQLException {
-                long[] pair = followPairs.get(i);
-                ps.setLong(1, pair[0]);
-                ps.setLong(2, pair[1]);
+                ps.setLong(1, pairs.first(i));
+                ps.setLong(2, pairs.second(i));
             }
 
             @Override
             public int getBatchSize() {
-                return followPairs.size();
+                return pairs.size();
             }
         });
+        return pairs.size();
     }
 
-    private void createIndexes(){
-        String[] indexSqls = new String[]{
-                "CREATE INDEX IF NOT EXISTS idx_recipes_author ON recipes (AuthorId);",
-                "CREATE INDEX IF NOT EXISTS idx_reviews_recipe ON reviews (RecipeId);",
-                "CREATE INDEX IF NOT EXISTS idx_reviews_author ON reviews (AuthorId);",
-                "CREATE INDEX IF NOT EXISTS idx_review_likes_review ON review_likes (ReviewId);",
-                "CREATE INDEX IF NOT EXISTS idx_review_likes_author ON review_likes (AuthorId);",
-                "CREATE INDEX IF NOT EXISTS idx_user_follows_follower ON user_follows (FollowerId);",
-                "CREATE INDEX IF NOT EXISTS idx_user_follows_following ON user_follows (FollowingId);"};
+    private long copyPairs(String table, String columns, LongPairBuffer pairs) {
+        if (pairs.isEmpty()) {
+            return 0;
+        }
 
-        for (String sql : indexSqls) {
-            jdbcTemplate.execute(sql);
+        return copy(table, columns, w -> {
+            for (int i = 0; i < pairs.size(); i++) {
+                w.add(pairs.first(i)).add(pairs.second(i)).endRow();
+            }
+        });
+    }
+
+    /**
+     * Runs one COPY on the connection bound to the current transaction.
+     */
+    private long copy(String table, String columns, CopyBody body) {
+        Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try (CopyWriter writer = CopyWriter.open(con, table, columns)) {
+                body.write(writer);
+                return writer.finish();
+            }
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    @FunctionalInterface
+    private interface CopyBody {
+        void write(CopyWriter writer) throws SQLException;
+    }
+
+    private void createIndexes(int parallelism, ImportCheckpoint checkpoint) {
+        runDdl(1, checkpoint, "text_search", Collections.singletonList(Schema.TEXT_SEARCH_EXTENSION));
+        List<String> indexes = new ArrayList<>(Schema.INDEXES);
+        indexes.addAll(Schema.TEXT_SEARCH_INDEXES);
+        runDdl(parallelism, checkpoint, "indexes", indexes);
+    }
+
+    /**
+     * Constrains tables created by {@code createTables(true)} after they have been loaded.
+     * Primary keys come first, since the foreign keys need the referenced unique indexes.
+     * Checks and foreign keys are added {@code NOT VALID}, which only touches the catalog,
+     * and are then validated with a single scan each.
+     */
+    private void addConstraints(int parallelism, ImportCheckpoint checkpoint) {
+        List<String> primaryKeys = new ArrayList<>();
+        List<String> notValid = new ArrayList<>();
+        List<String> validate = new ArrayList<>();
+        for (Schema.Table table : Schema.TABLES) {
+            primaryKeys.addAll(table.addConstraints(Schema.Kind.PRIMARY_KEY));
+            notValid.addAll(table.addConstraints(Schema.Kind.CHECK));
+            notValid.addAll(table.addConstraints(Schema.Kind.FOREIGN_KEY));
+            validate.addAll(table.validate());
         }
+        runDdl(parallelism, checkpoint, "primary_keys", primaryKeys);
+        runDdl(1, checkpoint, "not_valid", notValid);
+        runDdl(parallelism, checkpoint, "validate", validate);
     }
 
+    /**
+     * Executes independent DDL statements, each on its own connection when {@code parallelism > 1}.
+     * With a checkpoint every statement commits on its own and is skipped if it already has.
+     */
+    private void runDdl(int parallelism, ImportCheckpoint checkpoint, String step, List<String> sqls) {
+        if (parallelism <= 1 && checkpoint == null) {
+            for (String sql : sqls) {
+                jdbcTemplate.execute(sql);
+            }
+            return;
+        }
+        List<LongSupplier> statements = new ArrayList<>(sqls.size());
+        for (String sql : sqls) {
+            statements.add(() -> {
+                jdbcTemplate.execute(sql);
+                return 0;
+            });
+        }
+        ImportScheduler ddl = new ImportScheduler();
+        ddl.add(step, track(checkpoint, step, statements));
+        ddl.runParallel(parallelism,
+                statement -> Objects.requireNonNull(transactionTemplate.execute(status -> statement.getAsLong())));
+    }
 
-    private void createTables() {
-        String[] createTableSQLs = {
-                // 创建users表
-                "CREATE TABLE IF NOT EXISTS users (" +
-                        "    AuthorId BIGINT PRIMARY KEY, " +
-                        "    AuthorName VARCHAR(255) NOT NULL, " +
-                        "    Gender VARCHAR(10) CHECK (Gender IN ('Male', 'Female', 'Unknown')), " +
-                        "    Age INTEGER CHECK (Age > 0), " +
-                        "    Followers INTEGER DEFAULT 0 CHECK (Followers >= 0), " +
-                        "    Following INTEGER DEFAULT 0 CHECK (Following >= 0), " +
-                        "    Password VARCHAR(255), " +
-                        "    IsDeleted BOOLEAN DEFAULT FALSE" +
-                        ")",
-
-                // 创建recipes表
-                "CREATE TABLE IF NOT EXISTS recipes (" +
-                        "    RecipeId BIGINT PRIMARY KEY, " +
-                        "    Name VARCHAR(500) NOT NULL, " +
-                        "    AuthorId BIGINT NOT NULL, " +
-                        "    CookTime VARCHAR(50), " +
-                        "    PrepTime VARCHAR(50), " +
-                        "    TotalTime VARCHAR(50), " +
-                        "    DatePublished TIMESTAMP, " +
-                        "    Description TEXT, " +
-                        "    RecipeCategory VARCHAR(255), " +
-                        "    AggregatedRating DECIMAL(3,2) CHECK (AggregatedRating >= 0 AND AggregatedRating <= 5), " +
-                        "    ReviewCount INTEGER DEFAULT 0 CHECK (ReviewCount >= 0), " +
-                        "    Calories DECIMAL(10,2), " +
-                        "    FatContent DECIMAL(10,2), " +
-                        "    SaturatedFatContent DECIMAL(10,2), " +
-                        "    CholesterolContent DECIMAL(10,2), " +
-                        "    SodiumContent DECIMAL(10,2), " +
-                        "    CarbohydrateContent DECIMAL(10,2), " +
-                        "    FiberContent DECIMAL(10,2), " +
-                        "    SugarContent DECIMAL(10,2), " +
-                        "    ProteinContent DECIMAL(10,2), " +
-                        "    RecipeServings VARCHAR(100), " +
-                        "    RecipeYield VARCHAR(100), " +
-                        "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
-                        ")",
-
-                // 创建reviews表
-                "CREATE TABLE IF NOT EXISTS reviews (" +
-                        "    ReviewId BIGINT PRIMARY KEY, " +
-                        "    RecipeId BIGINT NOT NULL, " +
-                        "    AuthorId BIGINT NOT NULL, " +
-                        "    Rating FLOAT, " +
-                        "    Review TEXT, " +
-                        "    DateSubmitted TIMESTAMP, " +
-                        "    DateModified TIMESTAMP, " +
-                        "    FOREIGN KEY (RecipeId) REFERENCES recipes(RecipeId), " +
-                        "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
-                        ")",
-
-                // 创建recipe_ingredients表
-                "CREATE TABLE IF NOT EXISTS recipe_ingredients (" +
-                        "    RecipeId BIGINT, " +
-                        "    IngredientPart VARCHAR(500), " +
-                        "    PRIMARY KEY (RecipeId, IngredientPart), " +
-                        "    FOREIGN KEY (RecipeId) REFERENCES recipes(RecipeId)" +
-                        ")",
-
-                // 创建review_likes表
-                "CREATE TABLE IF NOT EXISTS review_likes (" +
-                        "    ReviewId BIGINT, " +
-                        "    AuthorId BIGINT, " +
-                        "    PRIMARY KEY (ReviewId, AuthorId), " +
-                        "    FOREIGN KEY (ReviewId) REFERENCES reviews(ReviewId), " +
-                        "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
-                        ")",
-
-                // 创建user_follows表
-                "CREATE TABLE IF NOT EXISTS user_follows (" +
-                        "    FollowerId BIGINT, " +
-                        "    FollowingId BIGINT, " +
-                        "    PRIMARY KEY (FollowerId, FollowingId), " +
-                        "    FOREIGN KEY (FollowerId) REFERENCES users(AuthorId), " +
-                        "    FOREIGN KEY (FollowingId) REFERENCES users(AuthorId), " +
-                        "    CHECK (FollowerId != FollowingId)" +
-                        ")"
-        };
-
-        for (String sql : createTableSQLs) {
-            jdbcTemplate.execute(sql);
+    /**
+     * @param deferConstraints create the tables without keys, checks and foreign keys,
+     *                         see {@link #addConstraints}
+     */
+    private void createTables(boolean deferConstraints) {
+        for (Schema.Table table : Schema.TABLES) {
+            jdbcTemplate.execute(deferConstraints ? table.createBare() : table.createWithConstraints());
         }
 
         jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS recipe_id_seq;");
         jdbcTemplate.execute("ALTER TABLE recipes ALTER COLUMN recipeid SET DEFAULT nextval('recipe_id_seq');");
         jdbcTemplate.execute("ALTER SEQUENCE recipe_id_seq OWNED BY recipes.recipeid;");
 
+        for (String sql : Schema.CALORIE_GAPS_TABLE) {
+            jdbcTemplate.execute(sql);
+        }
+
+        jdbcTemplate.execute(Schema.VERSION_TABLE);
+        jdbcTemplate.update("INSERT INTO schema_version (Version, Description) VALUES (?, 'created') " +
+                "ON CONFLICT DO NOTHING", Schema.VERSION);
+    }
+
+    /**
+     * Brings tables created by an older version up to date when the application starts,
+     * before the search index loads. A failure is only logged, so that {@code db import} can still start over.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void migrateOnStartup() {
+        try {
+            migrate();
+        } catch (RuntimeException e) {
+            log.error("Failed to migrate the schema to version {}", Schema.VERSION, e);
+        }
+    }
+
+    /**
+     * Applies the {@link Schema#MIGRATIONS} newer than the database in one transaction,
+     * holding an advisory lock so that concurrent callers migrate only once.
+     */
+    @Override
+    public int migrate() {
+        int[] from = new int[1];
+        Integer version = transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + MIGRATION_LOCK + ")");
+            from[0] = schemaVersion();
+            if (from[0] == 0 || from[0] >= Schema.VERSION) {
+                return from[0];
+            }
+            jdbcTemplate.execute(Schema.VERSION_TABLE);
+            for (Schema.Migration migration : Schema.MIGRATIONS) {
+                if (migration.version <= from[0]) continue;
+                long start = System.currentTimeMillis();
+                for (String sql : migration.statements) {
+                    jdbcTemplate.execute(sql);
+                }
+                jdbcTemplate.update("INSERT INTO schema_version (Version, Description) VALUES (?, ?)",
+                        migration.version, migration.description);
+                log.info("Migrated the schema to version {} ({}) in {} ms",
+                        migration.version, migration.description, System.currentTimeMillis() - start);
+            }
+            return Schema.VERSION;
+        });
+        if (version != null && version > from[0]) {
+            recipeCache.clear();
+            recipeSearchIndex.reload();
+            recipeNameDictionary.reload();
+        }
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * @return the recorded version, 1 for tables created before versions were recorded, 0 for no tables
+     */
+    private int schemaVersion() {
+        Boolean versioned = jdbcTemplate.queryForObject("SELECT to_regclass('schema_version') IS NOT NULL", Boolean.class);
+        if (Boolean.TRUE.equals(versioned)) {
+            Integer version = jdbcTemplate.queryForObject("SELECT MAX(Version) FROM schema_version", Integer.class);
+            if (version != null) {
+                return version;
+            }
+        }
+        Boolean legacy = jdbcTemplate.queryForObject("SELECT to_regclass('recipes') IS NOT NULL", Boolean.class);
+        return Boolean.TRUE.equals(legacy) ? 1 : 0;
     }
 
 
@@ -456,6 +1112,9 @@ public class DatabaseServiceImpl implements DatabaseService {
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        recipeCache.clear();
+        recipeSearchIndex.reload();
+        recipeNameDictionary.reload();
     }
 
     @Override
@@ -0,0 +1,156 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.dto.UserRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Progress of a checkpointed import, kept in the {@code import_checkpoint} table.
+ * <p>
+ * Every chunk writes its checkpoint row in the same transaction as its data, so after a crash
+ * a chunk is either fully loaded and recorded, or not at all. Running the import again with
+ * the same data and chunk size skips the recorded chunks. The table is dropped once the
+ * import has completed, so its presence means an import was interrupted.
+ * <p>
+ * Every row also records the {@link #fingerprint} of the data, so that progress left by an import
+ * of other data is recognized by {@link #matches} instead of being resumed.
+ */
+@Slf4j
+final class ImportCheckpoint {
+
+    static final String TABLE = "import_checkpoint";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int chunkSize;
+
+    private final String source;
+
+    /**
+     * Rows written by each recorded chunk, keyed by {@link #key}.
+     */
+    private final Map<String, Long> done;
+
+    private ImportCheckpoint(JdbcTemplate jdbcTemplate, int chunkSize, String source, Map<String, Long> done) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkSize = chunkSize;
+        this.source = source;
+        this.done = done;
+    }
+
+    /**
+     * Whether an interrupted checkpointed import has left its progress behind.
+     */
+    static boolean exists(JdbcTemplate jdbcTemplate) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass('" + TABLE + "') IS NOT NULL", Boolean.class));
+    }
+
+    /**
+     * Whether every chunk recorded so far was loaded from data with the given {@link #fingerprint}.
+     */
+    static boolean matches(JdbcTemplate jdbcTemplate, String source) {
+        Integer others = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM " + TABLE + " WHERE source IS DISTINCT FROM ?", Integer.class, source);
+        return others != null && others == 0;
+    }
+
+    /**
+     * Identifies the data of an import by the number of records and a hash of their ids.
+     */
+    static String fingerprint(List<ReviewRecord> reviews, List<UserRecord> users, List<RecipeRecord> recipes) {
+        long hash = 17;
+        for (UserRecord user : users) {
+            hash = 31 * hash + user.getAuthorId();
+        }
+        for (RecipeRecord recipe : recipes) {
+            hash = 31 * hash + recipe.getRecipeId();
+        }
+        for (ReviewRecord review : reviews) {
+            hash = 31 * hash + review.getReviewId();
+        }
+        return users.size() + "/" + recipes.size() + "/" + reviews.size() + "/" + Long.toHexString(hash);
+    }
+
+    /**
+     * Creates the checkpoint table if needed and reads the chunks recorded so far.
+     * Call {@link #matches} first, chunks of other data would be skipped as well.
+     *
+     * @throws IllegalStateException if the recorded chunks were cut with a different chunk size
+     */
+    static ImportCheckpoint open(JdbcTemplate jdbcTemplate, int chunkSize, String source) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                "table_name VARCHAR(64), " +
+                "chunk_no INTEGER, " +
+                "chunk_size INTEGER NOT NULL, " +
+                "source VARCHAR(64) NOT NULL, " +
+                "row_count BIGINT NOT NULL, " +
+                "finished_at TIMESTAMP NOT NULL DEFAULT now(), " +
+                "PRIMARY KEY (table_name, chunk_no))");
+
+        Map<String, Long> done = new HashMap<>();
+        jdbcTemplate.query("SELECT table_name, chunk_no, chunk_size, row_count FROM " + TABLE, rs -> {
+            if (rs.getInt(3) != chunkSize) {
+                throw new IllegalStateException("Interrupted import used chunk size " + rs.getInt(3)
+                        + ", resume it with the same sustc.import.chunk-size or drop the tables");
+            }
+            done.put(key(rs.getString(1), rs.getInt(2)), rs.getLong(4));
+        });
+        if (!done.isEmpty()) {
+            log.info("Resuming import, {} chunk(s) already loaded", done.size());
+        }
+        return new ImportCheckpoint(jdbcTemplate, chunkSize, source, Collections.unmodifiableMap(done));
+    }
+
+    /**
+     * Number of chunks recorded by earlier runs.
+     */
+    int resumedChunks() {
+        return done.size();
+    }
+
+    /**
+     * Wraps the chunks of one step. Recorded chunks only report their rows;
+     * the others record themselves after writing, on the same connection and transaction.
+     */
+    List<LongSupplier> wrap(String step, List<LongSupplier> chunks) {
+        List<LongSupplier> wrapped = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            int chunkNo = i;
+            LongSupplier chunk = chunks.get(i);
+            Long rows = done.get(key(step, chunkNo));
+            if (rows != null) {
+                long recorded = rows;
+                wrapped.add(() -> recorded);
+                continue;
+            }
+            wrapped.add(() -> {
+                long written = chunk.getAsLong();
+                jdbcTemplate.update("INSERT INTO " + TABLE + " (table_name, chunk_no, chunk_size, source, row_count) " +
+                        "VALUES (?, ?, ?, ?, ?)", step, chunkNo, chunkSize, source, written);
+                return written;
+            });
+        }
+        return wrapped;
+    }
+
+    /**
+     * Removes the progress once the whole import has completed.
+     */
+    void finish() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+    }
+
+    private static String key(String step, int chunkNo) {
+        return step + '#' + chunkNo;
+    }
+}
@@ -0,0 +1,63 @@
+package io.sustc.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Tuning knobs for {@link DatabaseServiceImpl#importData}, bound from {@code sustc.import.*}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc.import")
+@Data
+public class ImportConfig {
+
+    /**
+     * How rows are sent to the database.
+     * {@link LoadMode#COPY} falls back to {@link LoadMode#BATCH} if the connection is not PostgreSQL.
+     */
+    private LoadMode mode = LoadMode.COPY;
+
+    /**
+     * Number of worker threads (and pooled connections) loading tables concurrently.
+     * {@code 1} keeps the whole import in a single transaction.
+     * Higher values are opt-in and not atomic: every phase commits on its own, so a failure part-way
+     * leaves a partly loaded schema (see {@code checkpoint} to resume it).
+     * Keep it below the Hikari {@code maximum-pool-size}.
+     */
+    private int parallelism = 1;
+
+    /**
+     * Rows per chunk when a large table is split for parallel loading.
+     */
+    private int chunkSize = 50_000;
+
+    /**
+     * Records per batch read from each {@link io.sustc.service.RecordSource} by {@code importStream}.
+     */
+    private int batchSize = 10_000;
+
+    /**
+     * Create the tables without keys, checks and foreign keys, and add them (and the indexes)
+     * only after every table has been loaded. Tables then load without any dependency order.
+     * Ignored when the tables already exist, unless a checkpointed import is resumed.
+     */
+    private boolean deferConstraints = false;
+
+    /**
+     * Commit every chunk on its own and record it in {@code import_checkpoint},
+     * so that an interrupted {@code importData} resumes instead of starting over.
+     */
+    private boolean checkpoint = false;
+
+    public enum LoadMode {
+        /**
+         * {@code INSERT ... ON CONFLICT DO NOTHING} through {@code JdbcTemplate.batchUpdate}.
+         */
+        BATCH,
+        /**
+         * {@code COPY ... FROM STDIN} through the driver's {@code CopyManager}.
+         */
+        COPY,
+    }
+}
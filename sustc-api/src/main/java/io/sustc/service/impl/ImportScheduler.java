@@ -0,0 +1,152 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Loads import tables following their foreign-key dependencies.
+ * <p>
+ * Every table is registered with the tables it references and a list of independent chunks.
+ * A table starts only after all of its dependencies have finished; its chunks, and tables
+ * on independent branches of the DAG, then run concurrently. Dependencies must be
+ * registered before their dependents, which also rules out cycles.
+ */
+@Slf4j
+final class ImportScheduler {
+
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+
+    /**
+     * Registers a table.
+     *
+     * @param table     table name, also used as the key for {@code dependsOn}
+     * @param chunks    independent pieces of work, each returning the number of rows it wrote
+     * @param dependsOn tables that must be fully loaded first
+     */
+    void add(String table, List<LongSupplier> chunks, String... dependsOn) {
+        List<Step> deps = new ArrayList<>(dependsOn.length);
+        for (String name : dependsOn) {
+            Step dep = steps.get(name);
+            if (dep == null) {
+                throw new IllegalArgumentException("Dependency " + name + " of " + table + " is not registered");
+            }
+            deps.add(dep);
+        }
+        steps.put(table, new Step(table, chunks, deps));
+    }
+
+    /**
+     * Runs every chunk on the calling thread in registration order,
+     * e.g. inside a single surrounding transaction.
+     *
+     * @return rows written per table, in registration order
+     */
+    Map<String, Long> runSequentially() {
+        Map<String, Long> rows = new LinkedHashMap<>();
+        for (Step step : steps.values()) {
+            long total = 0;
+            for (LongSupplier chunk : step.chunks) {
+                total += chunk.getAsLong();
+            }
+            rows.put(step.table, total);
+        }
+        return rows;
+    }
+
+    /**
+     * Runs the DAG on {@code parallelism} worker threads.
+     * The first failure stops chunks that have not started yet and is rethrown here.
+     *
+     * @param chunkRunner wraps each chunk, e.g. in its own transaction on its own connection
+     * @return rows written per table, in registration order
+     */
+    Map<String, Long> runParallel(int parallelism, ToLongFunction<LongSupplier> chunkRunner) {
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "import-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicBoolean failed = new AtomicBoolean();
+        Map<Step, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        try {
+            for (Step step : steps.values()) {
+                CompletableFuture<?>[] deps = step.deps.stream().map(futures::get).toArray(CompletableFuture<?>[]::new);
+                CompletableFuture<Void> future = CompletableFuture.allOf(deps).thenCompose(ignored -> {
+                    log.debug("Loading {} in {} chunk(s)", step.table, step.chunks.size());
+                    CompletableFuture<?>[] chunks = step.chunks.stream()
+                            .map(chunk -> CompletableFuture.runAsync(() -> {
+                                if (failed.get()) {
+                                    throw new IllegalStateException("Import aborted");
+                                }
+                                try {
+                                    step.rows.addAndGet(chunkRunner.applyAsLong(chunk));
+                                } catch (RuntimeException e) {
+                                    failed.set(true);
+                                    throw e;
+                                }
+                            }, executor))
+                            .toArray(CompletableFuture<?>[]::new);
+                    return CompletableFuture.allOf(chunks);
+                });
+                futures.put(step, future);
+            }
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<String, Long> rows = new LinkedHashMap<>();
+        for (Step step : steps.values()) {
+            rows.put(step.table, step.rows.get());
+        }
+        return rows;
+    }
+
+    /**
+     * Splits {@code list} into consecutive views of at most {@code chunkSize} elements.
+     */
+    static <T> List<List<T>> partition(List<T> list, int chunkSize) {
+        int size = Math.max(1, chunkSize);
+        List<List<T>> parts = new ArrayList<>((list.size() + size - 1) / size);
+        for (int from = 0; from < list.size(); from += size) {
+            parts.add(list.subList(from, Math.min(list.size(), from + size)));
+        }
+        return parts;
+    }
+
+    private static final class Step {
+
+        private final String table;
+
+        private final List<LongSupplier> chunks;
+
+        private final List<Step> deps;
+
+        private final AtomicLong rows = new AtomicLong();
+
+        private Step(String table, List<LongSupplier> chunks, List<Step> deps) {
+            this.table = table;
+            this.chunks = chunks;
+            this.deps = deps;
+        }
+    }
+}
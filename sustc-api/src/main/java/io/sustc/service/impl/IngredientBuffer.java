@@ -0,0 +1,119 @@
+package io.sustc.service.impl;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of {@code (RecipeId, IngredientPart)} rows kept in a primitive {@code long[]}
+ * and a parallel {@code String[]}, instead of one {@code Object[]} with a boxed id per row.
+ * <p>
+ * {@link #slice} returns a read-only view sharing the arrays, for loading in chunks.
+ */
+final class IngredientBuffer {
+
+    private long[] recipeIds;
+
+    private String[] parts;
+
+    private final int offset;
+
+    private int size;
+
+    private final boolean view;
+
+    IngredientBuffer(int capacity) {
+        this(new long[Math.max(1, capacity)], new String[Math.max(1, capacity)], 0, 0, false);
+    }
+
+    private IngredientBuffer(long[] recipeIds, String[] parts, int offset, int size, boolean view) {
+        this.recipeIds = recipeIds;
+        this.parts = parts;
+        this.offset = offset;
+        this.size = size;
+        this.view = view;
+    }
+
+    /**
+     * Appends the distinct parts of one recipe, keeping their first occurrence order.
+     * Recipes list only a handful of parts, so repeats are found by a linear scan.
+     */
+    void addRecipe(long recipeId, String[] recipeParts) {
+        if (view) {
+            throw new IllegalStateException("Cannot add to a slice");
+        }
+        if (recipeParts == null) {
+            return;
+        }
+        int start = size;
+        for (String part : recipeParts) {
+            boolean repeated = false;
+            for (int i = start; i < size; i++) {
+                if (part == null ? parts[i] == null : part.equals(parts[i])) {
+                    repeated = true;
+                    break;
+                }
+            }
+            if (!repeated) {
+                add(recipeId, part);
+            }
+        }
+    }
+
+    /**
+     * Number of rows {@link #addRecipe} adds for these parts that are not {@code null},
+     * stored as {@code recipes.IngredientCount}.
+     */
+    static int countDistinct(String[] recipeParts) {
+        if (recipeParts == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < recipeParts.length; i++) {
+            String part = recipeParts[i];
+            boolean repeated = part == null;
+            for (int j = 0; j < i && !repeated; j++) {
+                repeated = part.equals(recipeParts[j]);
+            }
+            if (!repeated) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void add(long recipeId, String part) {
+        if (size == recipeIds.length) {
+            int capacity = recipeIds.length + (recipeIds.length >> 1) + 1;
+            recipeIds = Arrays.copyOf(recipeIds, capacity);
+            parts = Arrays.copyOf(parts, capacity);
+        }
+        recipeIds[size] = recipeId;
+        parts[size] = part;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long recipeId(int i) {
+        return recipeIds[offset + i];
+    }
+
+    String part(int i) {
+        return parts[offset + i];
+    }
+
+    /**
+     * A view of the rows in {@code [from, to)}. It is not affected by later additions to this buffer.
+     */
+    IngredientBuffer slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + size);
+        }
+        return new IngredientBuffer(recipeIds, parts, offset + from, to - from, true);
+    }
+}
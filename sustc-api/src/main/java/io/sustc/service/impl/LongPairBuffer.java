@@ -0,0 +1,149 @@
+package io.sustc.service.impl;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of {@code (long, long)} pairs kept in two parallel primitive arrays,
+ * used for the edge tables of the import instead of one {@code long[2]} per edge.
+ * <p>
+ * {@link #slice} returns a read-only view sharing the arrays, for loading in chunks.
+ */
+final class LongPairBuffer {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private long[] first;
+
+    private long[] second;
+
+    private final int offset;
+
+    private int size;
+
+    private final boolean view;
+
+    LongPairBuffer(int capacity) {
+        this(new long[Math.max(1, capacity)], new long[Math.max(1, capacity)], 0, 0, false);
+    }
+
+    private LongPairBuffer(long[] first, long[] second, int offset, int size, boolean view) {
+        this.first = first;
+        this.second = second;
+        this.offset = offset;
+        this.size = size;
+        this.view = view;
+    }
+
+    void add(long a, long b) {
+        if (view) {
+            throw new IllegalStateException("Cannot add to a slice");
+        }
+        if (size == first.length) {
+            int capacity = first.length + (first.length >> 1) + 1;
+            first = Arrays.copyOf(first, capacity);
+            second = Arrays.copyOf(second, capacity);
+        }
+        first[size] = a;
+        second[size] = b;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long first(int i) {
+        return first[offset + i];
+    }
+
+    long second(int i) {
+        return second[offset + i];
+    }
+
+    /**
+     * A view of the pairs in {@code [from, to)}. It is not affected by later additions to this buffer.
+     */
+    LongPairBuffer slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + size);
+        }
+        return new LongPairBuffer(first, second, offset + from, to - from, true);
+    }
+
+    /**
+     * Sorts the pairs by {@code (first, second)} and drops repeated ones.
+     */
+    void sortDistinct() {
+        if (view) {
+            throw new IllegalStateException("Cannot sort a slice");
+        }
+        sort(0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || first[i] != first[distinct - 1] || second[i] != second[distinct - 1]) {
+                first[distinct] = first[i];
+                second[distinct] = second[i];
+                distinct++;
+            }
+        }
+        size = distinct;
+    }
+
+    /**
+     * Quicksort over {@code [lo, hi)} with a median-of-three pivot, recursing into the smaller side only.
+     */
+    private void sort(int lo, int hi) {
+        while (hi - lo > INSERTION_SORT_THRESHOLD) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, lo) < 0) swap(mid, lo);
+            if (compare(hi - 1, lo) < 0) swap(hi - 1, lo);
+            if (compare(hi - 1, mid) < 0) swap(hi - 1, mid);
+            long pivotFirst = first[mid];
+            long pivotSecond = second[mid];
+
+            int i = lo;
+            int j = hi - 1;
+            while (i <= j) {
+                while (compare(i, pivotFirst, pivotSecond) < 0) i++;
+                while (compare(j, pivotFirst, pivotSecond) > 0) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (j + 1 - lo < hi - i) {
+                sort(lo, j + 1);
+                lo = i;
+            } else {
+                sort(i, hi);
+                hi = j + 1;
+            }
+        }
+        for (int i = lo + 1; i < hi; i++) {
+            for (int j = i; j > lo && compare(j, j - 1) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private int compare(int i, int j) {
+        return compare(i, first[j], second[j]);
+    }
+
+    private int compare(int i, long a, long b) {
+        int c = Long.compare(first[i], a);
+        return c != 0 ? c : Long.compare(second[i], b);
+    }
+
+    private void swap(int i, int j) {
+        long a = first[i];
+        first[i] = first[j];
+        first[j] = a;
+        long b = second[i];
+        second[i] = second[j];
+        second[j] = b;
+    }
+}
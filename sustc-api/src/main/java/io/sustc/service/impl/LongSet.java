@@ -0,0 +1,83 @@
+package io.sustc.service.impl;
+
+/**
+ * Set of {@code long} values with open addressing over a primitive array, used by the imports to keep the
+ * first record of each id without a {@code HashSet<Long>} entry and boxed key per record.
+ * <p>
+ * Slots are probed linearly; there is no removal. Zero is tracked apart, since it marks an empty slot.
+ * Not thread-safe.
+ */
+final class LongSet {
+
+    private static final long EMPTY = 0L;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] values;
+
+    private int mask;
+
+    private int size;
+
+    private boolean containsZero;
+
+    LongSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity < MAX_CAPACITY && capacity * 3L / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size + (containsZero ? 1 : 0);
+    }
+
+    /**
+     * @return whether the value was not in the set yet
+     */
+    boolean add(long value) {
+        if (value == EMPTY) {
+            boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+        int i = slot(value, mask);
+        while (values[i] != EMPTY) {
+            if (values[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        values[i] = value;
+        if (++size > (mask + 1) * 3L / 4) {
+            resize((mask + 1) << 1);
+        }
+        return true;
+    }
+
+    private static int slot(long value, int mask) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Too many ids");
+        }
+        long[] old = values;
+        long[] resized = new long[capacity];
+        int newMask = capacity - 1;
+        for (long value : old) {
+            if (value == EMPTY) continue;
+            int i = slot(value, newMask);
+            while (resized[i] != EMPTY) {
+                i = (i + 1) & newMask;
+            }
+            resized[i] = value;
+        }
+        values = resized;
+        mask = newMask;
+    }
+}
@@ -0,0 +1,215 @@
+package io.sustc.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Map from positive {@code long} keys to strings, with open addressing over a primitive key array and the
+ * strings stored as UTF-8 in one shared byte arena, used for the recipe names of {@link RecipeNameDictionary}
+ * instead of a {@code HashMap<Long, String>} with an entry, a boxed key and a string per recipe.
+ * <p>
+ * Slots are probed linearly and removals shift the following entries back, so there are no tombstones.
+ * Replaced and removed strings leave garbage in the arena, which is compacted once it is half of it.
+ * Not thread-safe.
+ */
+final class LongStringMap {
+
+    /**
+     * Key of an empty slot; keys must be positive.
+     */
+    private static final long EMPTY = 0L;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Largest array the VM reliably allocates.
+     */
+    private static final int MAX_ARENA = Integer.MAX_VALUE - 8;
+
+    private long[] keys;
+
+    /**
+     * Offset in the arena (high 32 bits) and length in bytes (low 32 bits) of the string of each slot.
+     */
+    private long[] refs;
+
+    private int mask;
+
+    private int size;
+
+    private byte[] arena;
+
+    private int used;
+
+    private int garbage;
+
+    LongStringMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < MAX_CAPACITY && capacity * 3L / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        refs = new long[capacity];
+        mask = capacity - 1;
+        arena = new byte[arenaSize(expectedSize * 32L)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Bytes of the arena that hold strings, including the garbage not compacted yet.
+     */
+    int arenaBytes() {
+        return used;
+    }
+
+    /**
+     * @return the string, or {@code null} if the key is absent
+     */
+    String get(long key) {
+        long[] k = keys;
+        int m = mask;
+        // bounded, so that a read racing with a write cannot loop; see RecipeNameDictionary
+        for (int i = slot(key, m), probes = 0; probes <= m; i = (i + 1) & m, probes++) {
+            long found = k[i];
+            if (found == key) {
+                long ref = refs[i];
+                return new String(arena, (int) (ref >>> 32), (int) ref, StandardCharsets.UTF_8);
+            }
+            if (found == EMPTY) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    void put(long key, String value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Keys must be positive");
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int i = slot(key, mask);
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == key) {
+            long ref = refs[i];
+            int length = (int) ref;
+            if (bytes.length <= length) {
+                // overwrite in place, the rest of the old string becomes garbage
+                int offset = (int) (ref >>> 32);
+                System.arraycopy(bytes, 0, arena, offset, bytes.length);
+                garbage += length - bytes.length;
+                refs[i] = (long) offset << 32 | bytes.length;
+                return;
+            }
+            garbage += length;
+            refs[i] = append(bytes);
+            compactIfWasteful();
+            return;
+        }
+        keys[i] = key;
+        refs[i] = append(bytes);
+        if (++size > (mask + 1) * 3L / 4) {
+            resize((mask + 1) << 1);
+        }
+    }
+
+    /**
+     * @return whether the key was present
+     */
+    boolean remove(long key) {
+        int i = slot(key, mask);
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        garbage += (int) refs[i];
+        // move back every following entry of the run that may live in the freed slot
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                refs[i] = refs[j];
+                i = j;
+            }
+        }
+        keys[i] = EMPTY;
+        refs[i] = 0;
+        size--;
+        compactIfWasteful();
+        return true;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private long append(byte[] bytes) {
+        if (arena.length - used < bytes.length) {
+            long needed = (long) used + bytes.length;
+            if (needed > MAX_ARENA) {
+                throw new IllegalStateException("Recipe names exceed 2 GB");
+            }
+            arena = Arrays.copyOf(arena, arenaSize(Math.max(needed, arena.length * 2L)));
+        }
+        long ref = (long) used << 32 | bytes.length;
+        System.arraycopy(bytes, 0, arena, used, bytes.length);
+        used += bytes.length;
+        return ref;
+    }
+
+    private static int arenaSize(long bytes) {
+        return (int) Math.min(MAX_ARENA, Math.max(64, bytes));
+    }
+
+    private void resize(int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Too many recipe names");
+        }
+        long[] oldKeys = keys;
+        long[] oldRefs = refs;
+        long[] newKeys = new long[capacity];
+        long[] newRefs = new long[capacity];
+        int newMask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == EMPTY) continue;
+            int i = slot(oldKeys[j], newMask);
+            while (newKeys[i] != EMPTY) {
+                i = (i + 1) & newMask;
+            }
+            newKeys[i] = oldKeys[j];
+            newRefs[i] = oldRefs[j];
+        }
+        keys = newKeys;
+        refs = newRefs;
+        mask = newMask;
+    }
+
+    /**
+     * Copies the live strings into a new arena once at least half of the used bytes are garbage.
+     */
+    private void compactIfWasteful() {
+        if (garbage < 4096 || garbage < used / 2) {
+            return;
+        }
+        byte[] compacted = new byte[arenaSize((used - garbage) * 2L)];
+        int at = 0;
+        for (int j = 0; j < keys.length; j++) {
+            if (keys[j] == EMPTY) continue;
+            int offset = (int) (refs[j] >>> 32);
+            int length = (int) refs[j];
+            System.arraycopy(arena, offset, compacted, at, length);
+            refs[j] = (long) at << 32 | length;
+            at += length;
+        }
+        arena = compacted;
+        used = at;
+        garbage = 0;
+    }
+}
@@ -0,0 +1,334 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.CacheStats;
+import io.sustc.dto.RecipeRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Read-through cache of {@link RecipeServiceImpl#getRecipeById} and {@link RecipeServiceImpl#getNameFromID},
+ * including their {@code null} results, and of the search totals served to {@link io.sustc.dto.CountMode#ESTIMATED}.
+ * <p>
+ * Each of these is an LRU map bounded by {@link RecipeCacheConfig#getMaxEntries() entries} and by an
+ * estimate of its {@link RecipeCacheConfig#getMaxBytes() heap size}, with a time to live per entry.
+ * <p>
+ * Writers call {@link #invalidate} or {@link #invalidateAuthor}. The entry is dropped at once and, inside a
+ * transaction, again when it completes, since readers outside the transaction may load and cache the old row
+ * until it commits. A load only stores its result if no invalidation happened while it ran, and reads inside a
+ * transaction bypass the cache, so uncommitted rows are never cached and a writer always reads its own writes.
+ * Any invalidation drops all search totals, since a changed recipe may match any search.
+ */
+@Component
+@Slf4j
+public class RecipeCache {
+
+    private static final Object NULL = new Object();
+
+    @Autowired
+    private RecipeCacheConfig config;
+
+    private final Segment records = new Segment(value -> value == NULL ? 16 : weigh((RecipeRecord) value));
+
+    private final Segment names = new Segment(value -> value == NULL ? 16 : 48 + 2L * ((String) value).length());
+
+    private final Segment counts = new Segment(value -> 128);
+
+    /**
+     * Incremented by every invalidation, so that loads that overlapped one do not store their result.
+     */
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder countHits = new LongAdder();
+
+    private final LongAdder countMisses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * The recipe with its ingredients, as a copy the caller may modify.
+     */
+    RecipeRecord getRecord(long recipeId, LongFunction<RecipeRecord> loader) {
+        return copy((RecipeRecord) get(records, recipeId, loader));
+    }
+
+    String getName(long recipeId, LongFunction<String> loader) {
+        return (String) get(names, recipeId, loader);
+    }
+
+    /**
+     * Cached total of a search, keyed by its filters.
+     *
+     * @return the total, or {@code null} if it has to be counted
+     */
+    Long getSearchCount(String filters) {
+        if (!config.isEnabled() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        Object cached = counts.get(filters, System.nanoTime());
+        (cached == null ? countMisses : countHits).increment();
+        return (Long) cached;
+    }
+
+    /**
+     * Stamp to take before counting a search, and pass to {@link #putSearchCount}.
+     */
+    long stamp() {
+        return epoch.get();
+    }
+
+    /**
+     * Stores the total of a search, unless an invalidation happened since {@code stamp} was taken.
+     */
+    void putSearchCount(String filters, long total, long stamp) {
+        if (!config.isEnabled() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return;
+        }
+        synchronized (this) {
+            if (epoch.get() == stamp) {
+                counts.put(filters, total, System.nanoTime() + config.getCountTtl().toNanos());
+            }
+        }
+    }
+
+    /**
+     * Drops everything cached for a recipe that was created, changed or deleted.
+     */
+    void invalidate(long recipeId) {
+        evict(recipeId);
+        afterCompletion(() -> evict(recipeId));
+    }
+
+    /**
+     * Drops the recipes of an author, whose name or deletion state changed.
+     */
+    void invalidateAuthor(long authorId) {
+        Predicate<Object> byAuthor = value -> value != NULL && ((RecipeRecord) value).getAuthorId() == authorId;
+        evictRecords(byAuthor);
+        afterCompletion(() -> evictRecords(byAuthor));
+    }
+
+    /**
+     * Drops every entry, e.g. after the tables were dropped or re-imported.
+     */
+    void clear() {
+        epoch.incrementAndGet();
+        invalidations.add(records.clear() + names.clear() + counts.clear());
+    }
+
+    CacheStats stats() {
+        return CacheStats.builder()
+                .hits(hits.sum())
+                .misses(misses.sum())
+                .countHits(countHits.sum())
+                .countMisses(countMisses.sum())
+                .evictions(evictions.sum())
+                .expirations(expirations.sum())
+                .invalidations(invalidations.sum())
+                .entries(records.size() + names.size() + counts.size())
+                .bytes(records.bytes() + names.bytes() + counts.bytes())
+                .build();
+    }
+
+    private Object get(Segment segment, long id, LongFunction<?> loader) {
+        if (!config.isEnabled() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loader.apply(id);
+        }
+        long now = System.nanoTime();
+        Object cached = segment.get(id, now);
+        if (cached != null) {
+            hits.increment();
+            return cached == NULL ? null : cached;
+        }
+        misses.increment();
+
+        long stamp = epoch.get();
+        Object value = loader.apply(id);
+        synchronized (this) {
+            if (epoch.get() == stamp) {
+                segment.put(id, value == null ? NULL : value, now + config.getTtl().toNanos());
+            }
+        }
+        return value;
+    }
+
+    private void evict(long recipeId) {
+        synchronized (this) {
+            epoch.incrementAndGet();
+            invalidations.add(records.remove(recipeId) + names.remove(recipeId) + counts.clear());
+        }
+    }
+
+    private void evictRecords(Predicate<Object> matches) {
+        synchronized (this) {
+            epoch.incrementAndGet();
+            invalidations.add(records.removeIf(matches) + counts.clear());
+        }
+    }
+
+    private static void afterCompletion(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * A copy that shares no mutable state with {@code r}.
+     */
+    static RecipeRecord copy(RecipeRecord r) {
+        if (r == null) {
+            return null;
+        }
+        RecipeRecord copy = r.toBuilder().build();
+        if (r.getDatePublished() != null) {
+            copy.setDatePublished(new Timestamp(r.getDatePublished().getTime()));
+            copy.getDatePublished().setNanos(r.getDatePublished().getNanos());
+        }
+        if (r.getRecipeIngredientParts() != null) {
+            copy.setRecipeIngredientParts(r.getRecipeIngredientParts().clone());
+        }
+        return copy;
+    }
+
+    /**
+     * Rough heap size of a recipe: the object with its boxed fields, plus two bytes per character.
+     */
+    private static long weigh(RecipeRecord r) {
+        long size = 160;
+        size += chars(r.getName()) + chars(r.getAuthorName()) + chars(r.getCookTime()) + chars(r.getPrepTime())
+                + chars(r.getTotalTime()) + chars(r.getDescription()) + chars(r.getRecipeCategory())
+                + chars(r.getRecipeYield());
+        if (r.getRecipeIngredientParts() != null) {
+            size += 16 + 8L * r.getRecipeIngredientParts().length;
+            for (String part : r.getRecipeIngredientParts()) {
+                size += chars(part);
+            }
+        }
+        return size;
+    }
+
+    private static long chars(String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+
+    /**
+     * One LRU map. Lookups reorder the map, so every access holds the segment's lock.
+     */
+    private final class Segment {
+
+        private final LinkedHashMap<Object, Entry> map = new LinkedHashMap<>(256, 0.75f, true);
+
+        private final ToLongFunction<Object> weigher;
+
+        private long bytes;
+
+        Segment(ToLongFunction<Object> weigher) {
+            this.weigher = weigher;
+        }
+
+        synchronized Object get(Object id, long now) {
+            Entry entry = map.get(id);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.expiresAt >= 0) {
+                map.remove(id);
+                bytes -= entry.weight;
+                expirations.increment();
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized void put(Object id, Object value, long expiresAt) {
+            Entry entry = new Entry(value, weigher.applyAsLong(value), expiresAt);
+            Entry old = map.put(id, entry);
+            bytes += entry.weight - (old == null ? 0 : old.weight);
+
+            Iterator<Entry> eldest = map.values().iterator();
+            while (eldest.hasNext() && (map.size() > config.getMaxEntries() || bytes > config.getMaxBytes())) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                bytes -= evicted.weight;
+                evictions.increment();
+            }
+        }
+
+        synchronized int remove(Object id) {
+            Entry entry = map.remove(id);
+            if (entry == null) {
+                return 0;
+            }
+            bytes -= entry.weight;
+            return 1;
+        }
+
+        synchronized int removeIf(Predicate<Object> matches) {
+            int removed = 0;
+            for (Iterator<Map.Entry<Object, Entry>> it = map.entrySet().iterator(); it.hasNext(); ) {
+                Entry entry = it.next().getValue();
+                if (matches.test(entry.value)) {
+                    it.remove();
+                    bytes -= entry.weight;
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        synchronized int clear() {
+            int size = map.size();
+            map.clear();
+            bytes = 0;
+            return size;
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+    }
+
+    private static final class Entry {
+
+        final Object value;
+
+        final long weight;
+
+        final long expiresAt;
+
+        Entry(Object value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
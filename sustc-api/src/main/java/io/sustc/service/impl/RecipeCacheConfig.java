@@ -0,0 +1,44 @@
+package io.sustc.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Bounds of the {@link RecipeCache}, bound from {@code sustc.cache.recipe.*}.
+ * The limits apply to the cached recipes, recipe names and search totals separately.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc.cache.recipe")
+@Data
+public class RecipeCacheConfig {
+
+    /**
+     * {@code false} sends every read to the database.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum number of cached entries.
+     */
+    private int maxEntries = 20_000;
+
+    /**
+     * Maximum estimated heap size of the cached entries, in bytes.
+     */
+    private long maxBytes = 64L << 20;
+
+    /**
+     * How long an entry is served after it was loaded.
+     * Writes through the services invalidate at once; this only bounds staleness from other writers.
+     */
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /**
+     * How long a search total is reused by {@link io.sustc.dto.CountMode#ESTIMATED} searches.
+     * Writes through the services drop all totals at once.
+     */
+    private Duration countTtl = Duration.ofSeconds(30);
+}
@@ -0,0 +1,127 @@
+package io.sustc.service.impl;
+
+import io.sustc.jdbc.RecipeSearchSql;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Position in a keyset-paginated recipe search: the sort key and id of the last recipe returned.
+ * <p>
+ * Encoded as URL-safe Base64 of {@code order|recipeId|key}, where an absent key is {@code -} and a present
+ * one is prefixed with {@code +}. Clients treat it as opaque; it is only valid for the sort order it was made for.
+ */
+final class RecipeCursor {
+
+    /**
+     * The sort orders of {@code searchRecipes}. Each is backed by a composite index of
+     * {@link Schema#INDEXES} in the same direction, with nulls last and {@code recipeid} as tie-breaker.
+     */
+    enum Order {
+        RATING_DESC("r.aggregatedrating", true, RecipeSearchSql.ORDER_BY_RATING_DESC),
+        DATE_DESC("r.datepublished", true, RecipeSearchSql.ORDER_BY_DATE_DESC),
+        CALORIES_ASC("r.calories", false, RecipeSearchSql.ORDER_BY_CALORIES_ASC),
+        ID_ASC(null, false, RecipeSearchSql.ORDER_BY_ID_ASC);
+
+        /**
+         * The sort key, or {@code null} when ordering by id only.
+         */
+        final String column;
+
+        final boolean descending;
+
+        final String orderBy;
+
+        Order(String column, boolean descending, String orderBy) {
+            this.column = column;
+            this.descending = descending;
+            this.orderBy = orderBy;
+        }
+
+        /**
+         * The order {@link RecipeSearchSql#orderBy} sorts by: unknown or missing sorts order by id.
+         */
+        static Order of(String sort) {
+            String orderBy = RecipeSearchSql.orderBy(sort);
+            for (Order order : values()) {
+                if (order.orderBy.equals(orderBy)) {
+                    return order;
+                }
+            }
+            return ID_ASC;
+        }
+
+        /**
+         * Comparison that seeks past a row in this order, for a row value or a single column.
+         */
+        String after() {
+            return descending ? " < " : " > ";
+        }
+    }
+
+    final Order order;
+
+    /**
+     * Sort key of the last row, a {@link BigDecimal} or {@link Timestamp}, or {@code null} if it had none.
+     */
+    final Object key;
+
+    final long recipeId;
+
+    RecipeCursor(Order order, Object key, long recipeId) {
+        this.order = order;
+        this.key = key;
+        this.recipeId = recipeId;
+    }
+
+    /**
+     * @return the position, or {@code null} for an empty cursor, i.e. the first page
+     * @throws IllegalArgumentException if the cursor is malformed or was made for another sort order
+     */
+    static RecipeCursor decode(String cursor, Order order) {
+        if (cursor == null || cursor.trim().isEmpty()) {
+            return null;
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8).split("\\|", 3);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (parts.length != 3 || parts[2].isEmpty()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (!order.name().equals(parts[0])) {
+            throw new IllegalArgumentException("Cursor does not belong to sort order " + order.name().toLowerCase());
+        }
+        try {
+            long recipeId = Long.parseLong(parts[1]);
+            Object key = null;
+            if (parts[2].charAt(0) == '+' && order.column != null) {
+                String value = parts[2].substring(1);
+                key = order == Order.DATE_DESC ? Timestamp.valueOf(LocalDateTime.parse(value)) : new BigDecimal(value);
+            } else if (!"-".equals(parts[2])) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new RecipeCursor(order, key, recipeId);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    String encode() {
+        String value;
+        if (key == null) {
+            value = "-";
+        } else if (key instanceof Timestamp) {
+            value = "+" + ((Timestamp) key).toLocalDateTime();
+        } else {
+            value = "+" + ((BigDecimal) key).toPlainString();
+        }
+        String raw = order.name() + "|" + recipeId + "|" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
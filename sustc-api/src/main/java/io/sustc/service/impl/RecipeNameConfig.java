@@ -0,0 +1,25 @@
+package io.sustc.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Switch of the {@link RecipeNameDictionary}, bound from {@code sustc.cache.recipe-names.*}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc.cache.recipe-names")
+@Data
+public class RecipeNameConfig {
+
+    /**
+     * {@code true} keeps the names of all recipes in memory and answers {@code getNameFromID}
+     * and {@code getNamesFromIDs} from there.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Names fetched per round trip while loading.
+     */
+    private int fetchSize = 10_000;
+}
@@ -0,0 +1,252 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The names of all recipes in memory, so that {@link RecipeServiceImpl#getNameFromID} and
+ * {@link RecipeServiceImpl#getNamesFromIDs} do not go to the database when {@link RecipeNameConfig#isEnabled() enabled}.
+ * <p>
+ * The names are loaded in the background at startup and after every import into a {@link LongStringMap}.
+ * {@code createRecipe} and {@code deleteRecipe} {@link #put} and {@link #remove} a name once they commit.
+ * Lookups go to the database until the names are loaded and inside transactions, which may see their own writes.
+ * <p>
+ * Lookups read the map under an optimistic {@link StampedLock} stamp and retry under the read lock
+ * if a change raced with them.
+ */
+@Component
+@Slf4j
+public class RecipeNameDictionary {
+
+    @Autowired
+    private RecipeNameConfig config;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "recipe-name-dictionary");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * The names, or {@code null} while they are not loaded. Changed only under the write {@link #lock}.
+     */
+    private volatile LongStringMap names;
+
+    /**
+     * Incremented by every reload, so that an outdated load does not install its result.
+     */
+    private long generation;
+
+    private boolean loading;
+
+    /**
+     * Changes committed while loading, by recipe, applied once the load is installed; {@code null} removes.
+     */
+    private final Map<Long, String> pending = new LinkedHashMap<>();
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void onApplicationStarted() {
+        reload();
+    }
+
+    /**
+     * Drops the loaded names and loads them again in the background once the current transaction commits,
+     * e.g. after an import.
+     */
+    void reload() {
+        if (config.isEnabled()) {
+            afterCommit(this::reloadNow);
+        }
+    }
+
+    /**
+     * Adds the name of a created recipe once the current transaction commits.
+     */
+    void put(long recipeId, String name) {
+        if (config.isEnabled()) {
+            afterCommit(() -> apply(recipeId, name));
+        }
+    }
+
+    /**
+     * Removes the name of a deleted recipe once the current transaction commits.
+     */
+    void remove(long recipeId) {
+        if (config.isEnabled()) {
+            afterCommit(() -> apply(recipeId, null));
+        }
+    }
+
+    /**
+     * @return the name of each id, {@code null} for an absent recipe,
+     * or {@code null} as a whole if the database has to answer
+     */
+    String[] lookup(long[] recipeIds) {
+        if (names == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        try {
+            String[] found = lookup(names, recipeIds);
+            if (lock.validate(stamp)) {
+                return found;
+            }
+        } catch (RuntimeException e) {
+            // a change resized or compacted the map under the optimistic read
+        }
+        stamp = lock.readLock();
+        try {
+            return lookup(names, recipeIds);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static String[] lookup(LongStringMap map, long[] recipeIds) {
+        if (map == null) {
+            return null;
+        }
+        String[] found = new String[recipeIds.length];
+        for (int i = 0; i < recipeIds.length; i++) {
+            found[i] = map.get(recipeIds[i]);
+        }
+        return found;
+    }
+
+    private void reloadNow() {
+        long gen;
+        synchronized (this) {
+            install(null);
+            pending.clear();
+            loading = true;
+            gen = ++generation;
+        }
+        loader.execute(() -> load(gen));
+    }
+
+    private void load(long gen) {
+        synchronized (this) {
+            if (gen != generation) {
+                return;
+            }
+        }
+        long start = System.currentTimeMillis();
+        LongStringMap loaded;
+        try {
+            loaded = query();
+        } catch (RuntimeException e) {
+            // e.g. before the first import, when there are no tables yet
+            log.warn("Could not load the recipe names, reading them from the database: {}", e.getMessage());
+            synchronized (this) {
+                if (gen == generation) {
+                    loading = false;
+                    pending.clear();
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            if (gen != generation) {
+                return;
+            }
+            pending.forEach((recipeId, name) -> {
+                if (name == null) {
+                    loaded.remove(recipeId);
+                } else {
+                    loaded.put(recipeId, name);
+                }
+            });
+            pending.clear();
+            loading = false;
+            install(loaded);
+        }
+        log.info("Loaded {} recipe names ({} bytes) in {} ms",
+                loaded.size(), loaded.arenaBytes(), System.currentTimeMillis() - start);
+    }
+
+    private synchronized void apply(long recipeId, String name) {
+        if (loading) {
+            pending.put(recipeId, name);
+            return;
+        }
+        LongStringMap current = names;
+        if (current == null) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            if (name == null) {
+                current.remove(recipeId);
+            } else {
+                current.put(recipeId, name);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void install(LongStringMap map) {
+        long stamp = lock.writeLock();
+        try {
+            names = map;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private LongStringMap query() {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.setFetchSize(config.getFetchSize());
+        // a separate transaction, also when called after another one committed, so the rows are streamed
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        tx.setReadOnly(true);
+        return tx.execute(status -> {
+            Long count = jdbc.queryForObject("SELECT count(*) FROM recipes", Long.class);
+            LongStringMap map = new LongStringMap((int) Math.min(Integer.MAX_VALUE, count == null ? 0 : count));
+            jdbc.query("SELECT recipeid, name FROM recipes WHERE recipeid > 0 AND name IS NOT NULL",
+                    rs -> {
+                        map.put(rs.getLong(1), rs.getString(2));
+                    });
+            return map;
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
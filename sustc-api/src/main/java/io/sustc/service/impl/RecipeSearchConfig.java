@@ -0,0 +1,30 @@
+package io.sustc.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Switch and bounds of the {@link RecipeSearchIndex}, bound from {@code sustc.search.index.*}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc.search.index")
+@Data
+public class RecipeSearchConfig {
+
+    /**
+     * {@code true} loads the active recipes into memory and answers {@code searchRecipes} from there.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of recipes changed since the last load that are kept aside and scanned by every search,
+     * before they are merged into a new segment in the background.
+     */
+    private int maxDelta = 10_000;
+
+    /**
+     * Recipes fetched per round trip while loading.
+     */
+    private int fetchSize = 5_000;
+}
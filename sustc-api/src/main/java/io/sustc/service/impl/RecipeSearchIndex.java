@@ -0,0 +1,904 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.PageResult;
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.SearchFacets;
+import io.sustc.jdbc.RecipeDetailSql;
+import io.sustc.jdbc.RecordMapper;
+import io.sustc.jdbc.RecordMappers;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory search over the active recipes. It answers {@link RecipeServiceImpl#searchRecipes} without the database
+ * when {@link RecipeSearchConfig#isEnabled() enabled}, and ranks recipes by the words of a query.
+ * <p>
+ * The recipes are loaded in the background at startup and after every import into an immutable {@link Segment}:
+ * the recipes ordered by id, postings of the trigrams of their lower-cased names and descriptions, postings of
+ * the words of those and of the category and ingredients, a bitmap per category and per whole rating, and the
+ * permutation of each sort order. A search intersects postings and bitmaps, checks the candidates exactly like the
+ * SQL filters, and walks the permutation of its order, so it returns what the database would.
+ * <p>
+ * Writes through the services {@link #refresh} a recipe once they commit: the new version is reloaded into a small
+ * delta that every search scans, and the old one is masked in the segment. When the delta outgrows
+ * {@link RecipeSearchConfig#getMaxDelta()}, both are merged into a new segment in the background.
+ * Searches go to the database until the first segment is loaded, inside transactions, and for keywords
+ * containing LIKE wildcards.
+ */
+@Component
+@Slf4j
+public class RecipeSearchIndex {
+
+    /**
+     * Sort key of a recipe without the value. It sorts last in every order.
+     */
+    private static final long NULL_KEY = Long.MIN_VALUE;
+
+    private static final int NAME = 1;
+
+    private static final int DESCRIPTION = 2;
+
+    private static final int CATEGORY = 4;
+
+    private static final int INGREDIENT = 8;
+
+    @Autowired
+    private RecipeSearchConfig config;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "recipe-search-index");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * The searchable recipes, or {@code null} while they are not loaded.
+     */
+    private volatile State state;
+
+    /**
+     * Incremented by every reload, so that an outdated load does not install its result.
+     */
+    private long generation;
+
+    private boolean loading;
+
+    private boolean merging;
+
+    /**
+     * Changes committed while loading, applied once the load is installed.
+     */
+    private final Set<Long> pendingRecipes = new LinkedHashSet<>();
+
+    private final Set<Long> pendingAuthors = new LinkedHashSet<>();
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void onApplicationStarted() {
+        reload();
+    }
+
+    /**
+     * Drops the loaded recipes and loads them again in the background once the current transaction commits,
+     * e.g. after an import.
+     */
+    void reload() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        afterCommit(this::reloadNow);
+    }
+
+    /**
+     * Reloads a recipe that was created, changed or deleted, once the current transaction commits.
+     */
+    void refresh(long recipeId) {
+        if (config.isEnabled()) {
+            afterCommit(() -> applyRefresh(recipeId));
+        }
+    }
+
+    /**
+     * Removes the recipes of an author that was deleted, once the current transaction commits.
+     */
+    void removeAuthor(long authorId) {
+        if (config.isEnabled()) {
+            afterCommit(() -> applyRemoveAuthor(authorId));
+        }
+    }
+
+    /**
+     * {@code searchRecipes} on the loaded recipes.
+     *
+     * @return the page, or {@code null} if the database has to answer
+     */
+    PageResult<RecipeRecord> search(String keyword, String category, Double minRating, int page, int size, String sort) {
+        State current = searchable(keyword);
+        String cat = StringUtils.hasText(category) ? category.trim() : null;
+        return current == null ? null
+                : current.search(normalize(keyword), cat, minRating, page, size, RecipeCursor.Order.of(sort));
+    }
+
+    /**
+     * {@code getSearchFacets} on the loaded recipes.
+     *
+     * @return the counts, or {@code null} if the database has to answer
+     */
+    SearchFacets facets(String keyword, String category, Double minRating) {
+        State current = searchable(keyword);
+        String cat = StringUtils.hasText(category) ? category.trim() : null;
+        return current == null ? null : current.facets(normalize(keyword), cat, minRating);
+    }
+
+    /**
+     * Recipes containing every word of {@code query} in their name, description, category or ingredients.
+     * A word scores 8 in the name, 4 in the category, 2 in an ingredient and 1 in the description.
+     *
+     * @return up to {@code limit} recipes by descending score, then rating, then ascending id,
+     * or {@code null} if the recipes are not loaded
+     */
+    List<RecipeRecord> rank(String query, String category, Double minRating, int limit) {
+        State current = state;
+        if (current == null) {
+            return null;
+        }
+        Set<String> terms = new LinkedHashSet<>();
+        tokenize(query == null ? null : query.toLowerCase(Locale.ROOT), 0, (word, field) -> terms.add(word));
+        String cat = StringUtils.hasText(category) ? category.trim() : null;
+        return terms.isEmpty() ? new ArrayList<>() : current.rank(new ArrayList<>(terms), cat, minRating, limit);
+    }
+
+    /**
+     * The loaded recipes, if they can answer a search for {@code keyword} exactly like the database.
+     */
+    private State searchable(String keyword) {
+        State current = state;
+        if (current == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        String kw = normalize(keyword);
+        if (kw != null && (kw.indexOf('%') >= 0 || kw.indexOf('_') >= 0 || kw.indexOf('\\') >= 0)) {
+            return null;
+        }
+        return current;
+    }
+
+    private static String normalize(String keyword) {
+        return StringUtils.hasText(keyword) ? keyword.trim().toLowerCase(Locale.ROOT) : null;
+    }
+
+    private void reloadNow() {
+        long gen;
+        synchronized (this) {
+            state = null;
+            pendingRecipes.clear();
+            pendingAuthors.clear();
+            loading = true;
+            gen = ++generation;
+        }
+        loader.execute(() -> load(gen));
+    }
+
+    private void load(long gen) {
+        synchronized (this) {
+            if (gen != generation) {
+                return;
+            }
+        }
+        long start = System.currentTimeMillis();
+        Segment segment;
+        try {
+            segment = new Segment(query(" WHERE u.isdeleted = FALSE ORDER BY r.recipeid"));
+        } catch (RuntimeException e) {
+            // e.g. before the first import, when there are no tables yet
+            log.warn("Could not load the recipe search index, searching in the database: {}", e.getMessage());
+            synchronized (this) {
+                if (gen == generation) {
+                    loading = false;
+                    pendingRecipes.clear();
+                    pendingAuthors.clear();
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            if (gen != generation) {
+                return;
+            }
+            loading = false;
+            state = new State(segment, new BitSet(), Collections.emptyList());
+            List<Long> authors = new ArrayList<>(pendingAuthors);
+            List<Long> recipes = new ArrayList<>(pendingRecipes);
+            pendingAuthors.clear();
+            pendingRecipes.clear();
+            for (long authorId : authors) {
+                applyRemoveAuthor(authorId);
+            }
+            for (long recipeId : recipes) {
+                applyRefresh(recipeId);
+            }
+        }
+        log.info("Loaded {} recipes into the search index in {} ms",
+                segment.docs.length, System.currentTimeMillis() - start);
+    }
+
+    private synchronized void applyRefresh(long recipeId) {
+        if (loading) {
+            pendingRecipes.add(recipeId);
+            return;
+        }
+        State current = state;
+        if (current == null) {
+            return;
+        }
+        List<Doc> docs;
+        try {
+            docs = query(" WHERE r.recipeid = ? AND u.isdeleted = FALSE", recipeId);
+        } catch (RuntimeException e) {
+            log.warn("Could not refresh recipe {} in the search index, reloading it", recipeId, e);
+            reloadNow();
+            return;
+        }
+        state = current.with(recipeId, docs.isEmpty() ? null : docs.get(0));
+        if (state.delta.size() > config.getMaxDelta() && !merging) {
+            merging = true;
+            loader.execute(this::merge);
+        }
+    }
+
+    private synchronized void applyRemoveAuthor(long authorId) {
+        if (loading) {
+            pendingAuthors.add(authorId);
+        } else if (state != null) {
+            state = state.withoutAuthor(authorId);
+        }
+    }
+
+    /**
+     * Merges the delta into a new segment. Changes made meanwhile discard the result;
+     * the next change then starts another merge.
+     */
+    private void merge() {
+        State before = state;
+        Segment merged = before == null ? null : new Segment(before.liveDocs());
+        synchronized (this) {
+            merging = false;
+            if (merged != null && state == before) {
+                state = new State(merged, new BitSet(), Collections.emptyList());
+            }
+        }
+    }
+
+    private List<Doc> query(String where, Object... args) {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.setFetchSize(config.getFetchSize());
+        // a separate transaction, also when called after another one committed, so the rows are streamed
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        tx.setReadOnly(true);
+        RecordMapper<RecipeRecord> mapper = RecordMappers.recipe();
+        return tx.execute(status -> jdbc.query(RecipeDetailSql.SELECT + where,
+                (rs, rowNum) -> new Doc(mapper.mapRow(rs, rowNum), rs), args));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static int compare(RecipeCursor.Order order, Doc a, Doc b) {
+        if (order.column != null) {
+            long ka = a.key(order);
+            long kb = b.key(order);
+            if (ka != kb) {
+                if (ka == NULL_KEY) {
+                    return 1;
+                }
+                if (kb == NULL_KEY) {
+                    return -1;
+                }
+                return order.descending ? Long.compare(kb, ka) : Long.compare(ka, kb);
+            }
+        }
+        return order.descending ? Long.compare(b.id, a.id) : Long.compare(a.id, b.id);
+    }
+
+    private static int weight(int fields) {
+        return ((fields & NAME) != 0 ? 8 : 0) + ((fields & CATEGORY) != 0 ? 4 : 0)
+                + ((fields & INGREDIENT) != 0 ? 2 : 0) + ((fields & DESCRIPTION) != 0 ? 1 : 0);
+    }
+
+    /**
+     * Passes the runs of letters and digits of {@code text} to {@code sink}, with {@code field}.
+     */
+    private static void tokenize(String text, int field, ObjIntConsumer<String> sink) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                sink.accept(text.substring(start, i), field);
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * The distinct trigrams of some texts, each packed as three UTF-16 chars, in ascending order.
+     */
+    private static long[] trigrams(String... texts) {
+        int count = 0;
+        for (String text : texts) {
+            if (text != null) {
+                count += Math.max(0, text.length() - 2);
+            }
+        }
+        long[] grams = new long[count];
+        int n = 0;
+        for (String text : texts) {
+            if (text != null) {
+                for (int i = 0; i + 2 < text.length(); i++) {
+                    grams[n++] = (long) text.charAt(i) << 32 | (long) text.charAt(i + 1) << 16 | text.charAt(i + 2);
+                }
+            }
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    private static String lower(String s) {
+        return s == null ? null : s.toLowerCase(Locale.ROOT);
+    }
+
+    private static long hundredths(BigDecimal value) {
+        return value == null ? NULL_KEY : value.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * One active recipe, with the lower-cased texts and exact sort keys of the SQL search.
+     */
+    private static final class Doc {
+
+        final long id;
+
+        final RecipeRecord record;
+
+        final String name;
+
+        final String description;
+
+        final String category;
+
+        /**
+         * AggregatedRating in hundredths.
+         */
+        final long rating;
+
+        /**
+         * DatePublished in microseconds, the precision of a PostgreSQL timestamp.
+         */
+        final long date;
+
+        /**
+         * Calories in hundredths.
+         */
+        final long calories;
+
+        /**
+         * Words and the fields they occur in, computed when a search first scans this recipe in a delta.
+         */
+        private volatile Map<String, Integer> words;
+
+        /**
+         * @param rs the row of {@link RecipeDetailSql#SELECT} the record was read from,
+         *           for the exact sort keys
+         */
+        Doc(RecipeRecord record, ResultSet rs) throws SQLException {
+            this.record = record;
+            if (record.getRecipeIngredientParts() == null) {
+                // searchRecipes lists a recipe without ingredients with an empty array
+                record.setRecipeIngredientParts(new String[0]);
+            }
+            id = record.getRecipeId();
+            name = lower(record.getName());
+            description = lower(record.getDescription());
+            category = record.getRecipeCategory();
+            rating = hundredths(rs.getBigDecimal(11));
+            Timestamp published = rs.getTimestamp(8);
+            date = published == null ? NULL_KEY
+                    : Math.floorDiv(published.getTime(), 1000) * 1_000_000 + published.getNanos() / 1000;
+            calories = hundredths(rs.getBigDecimal(13));
+        }
+
+        long key(RecipeCursor.Order order) {
+            switch (order) {
+                case RATING_DESC:
+                    return rating;
+                case DATE_DESC:
+                    return date;
+                case CALORIES_ASC:
+                    return calories;
+                default:
+                    return 0;
+            }
+        }
+
+        /**
+         * The WHERE clause of {@code searchRecipes}, with the keyword lower-cased.
+         */
+        boolean matches(String keyword, String category, Double minRating) {
+            return (keyword == null || name != null && name.contains(keyword)
+                    || description != null && description.contains(keyword))
+                    && (category == null || category.equals(this.category))
+                    && (minRating == null || rating != NULL_KEY && rating / 100.0 >= minRating);
+        }
+
+        void forEachWord(ObjIntConsumer<String> sink) {
+            tokenize(name, NAME, sink);
+            tokenize(description, DESCRIPTION, sink);
+            tokenize(lower(category), CATEGORY, sink);
+            for (String part : record.getRecipeIngredientParts()) {
+                tokenize(lower(part), INGREDIENT, sink);
+            }
+        }
+
+        Map<String, Integer> words() {
+            Map<String, Integer> w = words;
+            if (w == null) {
+                Map<String, Integer> fields = new HashMap<>();
+                forEachWord((word, field) -> fields.merge(word, field, (a, b) -> a | b));
+                words = w = fields;
+            }
+            return w;
+        }
+    }
+
+    /**
+     * Document ids and, for words, the fields they occur in, both in ascending document order.
+     */
+    private static final class Postings {
+
+        int[] docs = new int[4];
+
+        byte[] fields = new byte[4];
+
+        int size;
+
+        void add(int doc, int field) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            docs[size] = doc;
+            fields[size] = (byte) field;
+            size++;
+        }
+
+        int indexOf(int doc) {
+            return Arrays.binarySearch(docs, 0, size, doc);
+        }
+
+        void trim() {
+            docs = Arrays.copyOf(docs, size);
+            fields = Arrays.copyOf(fields, size);
+        }
+    }
+
+    /**
+     * Recipes and their search structures, never modified once built.
+     */
+    private static final class Segment {
+
+        /**
+         * By ascending recipe id; the position is the document id.
+         */
+        final Doc[] docs;
+
+        final long[] ids;
+
+        final Map<Long, int[]> trigrams = new HashMap<>();
+
+        final Map<String, Postings> words = new HashMap<>();
+
+        final Map<String, BitSet> categories = new HashMap<>();
+
+        /**
+         * Index {@code k} holds the recipes rated at least {@code k}.
+         */
+        final BitSet[] ratedAtLeast = new BitSet[6];
+
+        final Map<RecipeCursor.Order, int[]> orders = new EnumMap<>(RecipeCursor.Order.class);
+
+        Segment(List<Doc> sortedById) {
+            docs = sortedById.toArray(new Doc[0]);
+            ids = new long[docs.length];
+            for (int k = 0; k < ratedAtLeast.length; k++) {
+                ratedAtLeast[k] = new BitSet(docs.length);
+            }
+
+            Map<Long, Postings> grams = new HashMap<>();
+            Map<String, Integer> docWords = new HashMap<>();
+            for (int i = 0; i < docs.length; i++) {
+                Doc doc = docs[i];
+                ids[i] = doc.id;
+                for (long gram : RecipeSearchIndex.trigrams(doc.name, doc.description)) {
+                    grams.computeIfAbsent(gram, g -> new Postings()).add(i, 0);
+                }
+
+                docWords.clear();
+                doc.forEachWord((word, field) -> docWords.merge(word, field, (a, b) -> a | b));
+                int docId = i;
+                docWords.forEach((word, fields) -> words.computeIfAbsent(word, w -> new Postings()).add(docId, fields));
+
+                if (doc.category != null) {
+                    categories.computeIfAbsent(doc.category, c -> new BitSet()).set(i);
+                }
+                for (int k = 0; doc.rating != NULL_KEY && k < ratedAtLeast.length && doc.rating >= k * 100L; k++) {
+                    ratedAtLeast[k].set(i);
+                }
+            }
+            grams.forEach((gram, postings) -> trigrams.put(gram, Arrays.copyOf(postings.docs, postings.size)));
+            words.values().forEach(Postings::trim);
+
+            for (RecipeCursor.Order order : RecipeCursor.Order.values()) {
+                if (order.column != null) {
+                    orders.put(order, IntStream.range(0, docs.length).boxed()
+                            .sorted((a, b) -> compare(order, docs[a], docs[b]))
+                            .mapToInt(Integer::intValue)
+                            .toArray());
+                }
+            }
+        }
+
+        int indexOf(long recipeId) {
+            return Arrays.binarySearch(ids, recipeId);
+        }
+
+        /**
+         * A superset of the recipes matching the filters, from the postings and bitmaps.
+         */
+        BitSet candidates(String keyword, String category, Double minRating) {
+            BitSet bits = null;
+            if (keyword != null && keyword.length() >= 3) {
+                long[] keywordGrams = RecipeSearchIndex.trigrams(keyword);
+                int[][] lists = new int[keywordGrams.length][];
+                for (int g = 0; g < keywordGrams.length; g++) {
+                    lists[g] = trigrams.get(keywordGrams[g]);
+                    if (lists[g] == null) {
+                        return new BitSet();
+                    }
+                }
+                Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+                bits = new BitSet(docs.length);
+                for (int doc : lists[0]) {
+                    boolean all = true;
+                    for (int g = 1; g < lists.length && all; g++) {
+                        all = Arrays.binarySearch(lists[g], doc) >= 0;
+                    }
+                    if (all) {
+                        bits.set(doc);
+                    }
+                }
+            }
+            if (category != null) {
+                BitSet inCategory = categories.get(category);
+                if (inCategory == null) {
+                    return new BitSet();
+                }
+                bits = and(bits, inCategory);
+            }
+            if (minRating != null) {
+                int k = (int) Math.min(ratedAtLeast.length - 1, Math.max(0, Math.floor(minRating)));
+                bits = and(bits, ratedAtLeast[k]);
+            }
+            if (bits == null) {
+                bits = new BitSet(docs.length);
+                bits.set(0, docs.length);
+            }
+            return bits;
+        }
+
+        private static BitSet and(BitSet bits, BitSet other) {
+            if (bits == null) {
+                return (BitSet) other.clone();
+            }
+            bits.and(other);
+            return bits;
+        }
+    }
+
+    /**
+     * A segment, the documents of it that were changed or removed since, and the current versions
+     * of the changed recipes by ascending id. Replaced as a whole on every change.
+     */
+    private static final class State {
+
+        final Segment base;
+
+        final BitSet masked;
+
+        final List<Doc> delta;
+
+        State(Segment base, BitSet masked, List<Doc> delta) {
+            this.base = base;
+            this.masked = masked;
+            this.delta = delta;
+        }
+
+        State with(long recipeId, Doc doc) {
+            BitSet newMasked = masked;
+            int i = base.indexOf(recipeId);
+            if (i >= 0 && !masked.get(i)) {
+                newMasked = (BitSet) masked.clone();
+                newMasked.set(i);
+            }
+            List<Doc> newDelta = new ArrayList<>(delta);
+            newDelta.removeIf(d -> d.id == recipeId);
+            if (doc != null) {
+                newDelta.add(doc);
+                newDelta.sort(Comparator.comparingLong(d -> d.id));
+            }
+            return new State(base, newMasked, newDelta);
+        }
+
+        State withoutAuthor(long authorId) {
+            BitSet newMasked = (BitSet) masked.clone();
+            for (int i = 0; i < base.docs.length; i++) {
+                if (base.docs[i].record.getAuthorId() == authorId) {
+                    newMasked.set(i);
+                }
+            }
+            List<Doc> newDelta = new ArrayList<>(delta);
+            newDelta.removeIf(d -> d.record.getAuthorId() == authorId);
+            return new State(base, newMasked, newDelta);
+        }
+
+        List<Doc> liveDocs() {
+            List<Doc> live = new ArrayList<>(base.docs.length + delta.size());
+            for (int i = 0; i < base.docs.length; i++) {
+                if (!masked.get(i)) {
+                    live.add(base.docs[i]);
+                }
+            }
+            live.addAll(delta);
+            live.sort(Comparator.comparingLong(d -> d.id));
+            return live;
+        }
+
+        PageResult<RecipeRecord> search(String keyword, String category, Double minRating,
+                                        int page, int size, RecipeCursor.Order order) {
+            BitSet hits = base.candidates(keyword, category, minRating);
+            hits.andNot(masked);
+            for (int i = hits.nextSetBit(0); i >= 0; i = hits.nextSetBit(i + 1)) {
+                if (!base.docs[i].matches(keyword, category, minRating)) {
+                    hits.clear(i);
+                }
+            }
+            List<Doc> changed = new ArrayList<>();
+            for (Doc doc : delta) {
+                if (doc.matches(keyword, category, minRating)) {
+                    changed.add(doc);
+                }
+            }
+            changed.sort((a, b) -> compare(order, a, b));
+
+            // merge the segment, in the order of its permutation, with the matching changed recipes
+            int[] permutation = base.orders.get(order);
+            long offset = (long) (page - 1) * size;
+            long skipped = 0;
+            List<RecipeRecord> items = new ArrayList<>(Math.min(size, 1024));
+            int pos = next(hits, permutation, 0);
+            int c = 0;
+            while (items.size() < size) {
+                Doc fromBase = pos < 0 ? null : base.docs[permutation == null ? pos : permutation[pos]];
+                Doc fromDelta = c < changed.size() ? changed.get(c) : null;
+                Doc doc;
+                if (fromBase == null && fromDelta == null) {
+                    break;
+                } else if (fromDelta == null || fromBase != null && compare(order, fromBase, fromDelta) < 0) {
+                    doc = fromBase;
+                    pos = next(hits, permutation, pos + 1);
+                } else {
+                    doc = fromDelta;
+                    c++;
+                }
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    items.add(RecipeCache.copy(doc.record));
+                }
+            }
+
+            return PageResult.<RecipeRecord>builder()
+                    .items(items)
+                    .page(page)
+                    .size(size)
+                    .total(hits.cardinality() + changed.size())
+                    .build();
+        }
+
+        SearchFacets facets(String keyword, String category, Double minRating) {
+            long[] total = {0};
+            Map<String, Long> categories = new HashMap<>();
+            long[] buckets = new long[6];
+            Consumer<Doc> count = doc -> {
+                boolean rated = minRating == null || doc.rating != NULL_KEY && doc.rating / 100.0 >= minRating;
+                boolean inCategory = category == null || category.equals(doc.category);
+                if (rated && doc.category != null) {
+                    categories.merge(doc.category, 1L, Long::sum);
+                }
+                if (inCategory) {
+                    buckets[doc.rating == NULL_KEY ? 0 : 1 + (int) Math.min(4, doc.rating / 100)]++;
+                }
+                if (rated && inCategory) {
+                    total[0]++;
+                }
+            };
+
+            BitSet hits = base.candidates(keyword, null, null);
+            hits.andNot(masked);
+            for (int i = hits.nextSetBit(0); i >= 0; i = hits.nextSetBit(i + 1)) {
+                if (base.docs[i].matches(keyword, null, null)) {
+                    count.accept(base.docs[i]);
+                }
+            }
+            for (Doc doc : delta) {
+                if (doc.matches(keyword, null, null)) {
+                    count.accept(doc);
+                }
+            }
+            return RecipeServiceImpl.searchFacets(total[0], categories, buckets);
+        }
+
+        /**
+         * Position of the first hit at or after {@code from}, in the permutation or, without one, in id order.
+         */
+        private static int next(BitSet hits, int[] permutation, int from) {
+            if (permutation == null) {
+                return hits.nextSetBit(from);
+            }
+            for (int pos = from; pos < permutation.length; pos++) {
+                if (hits.get(permutation[pos])) {
+                    return pos;
+                }
+            }
+            return -1;
+        }
+
+        List<RecipeRecord> rank(List<String> terms, String category, Double minRating, int limit) {
+            Comparator<Scored> best = Comparator.<Scored>comparingInt(s -> -s.score)
+                    .thenComparing((a, b) -> Long.compare(b.doc.rating, a.doc.rating))
+                    .thenComparingLong(s -> s.doc.id);
+            PriorityQueue<Scored> top = new PriorityQueue<>(best.reversed());
+
+            Postings[] lists = new Postings[terms.size()];
+            boolean inBase = true;
+            for (int t = 0; t < lists.length && inBase; t++) {
+                lists[t] = base.words.get(terms.get(t));
+                inBase = lists[t] != null;
+            }
+            if (inBase) {
+                Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+                Postings first = lists[0];
+                for (int j = 0; j < first.size; j++) {
+                    int docId = first.docs[j];
+                    if (masked.get(docId)) {
+                        continue;
+                    }
+                    int score = weight(first.fields[j]);
+                    for (int t = 1; t < lists.length && score > 0; t++) {
+                        int k = lists[t].indexOf(docId);
+                        score = k < 0 ? 0 : score + weight(lists[t].fields[k]);
+                    }
+                    Doc doc = base.docs[docId];
+                    if (score > 0 && doc.matches(null, category, minRating)) {
+                        offer(top, best, limit, new Scored(doc, score));
+                    }
+                }
+            }
+            for (Doc doc : delta) {
+                Map<String, Integer> words = doc.words();
+                int score = 0;
+                for (String term : terms) {
+                    Integer fields = words.get(term);
+                    if (fields == null) {
+                        score = 0;
+                        break;
+                    }
+                    score += weight(fields);
+                }
+                if (score > 0 && doc.matches(null, category, minRating)) {
+                    offer(top, best, limit, new Scored(doc, score));
+                }
+            }
+
+            List<Scored> sorted = new ArrayList<>(top);
+            sorted.sort(best);
+            List<RecipeRecord> result = new ArrayList<>(sorted.size());
+            for (Scored scored : sorted) {
+                result.add(RecipeCache.copy(scored.doc.record));
+            }
+            return result;
+        }
+
+        private static void offer(PriorityQueue<Scored> top, Comparator<Scored> best, int limit, Scored candidate) {
+            if (top.size() < limit) {
+                top.add(candidate);
+            } else if (best.compare(candidate, top.peek()) < 0) {
+                top.poll();
+                top.add(candidate);
+            }
+        }
+    }
+
+    private static final class Scored {
+
+        final Doc doc;
+
+        final int score;
+
+        Scored(Doc doc, int score) {
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+}
@@ -1,20 +1,30 @@
 package io.sustc.service.impl;
 
 import io.sustc.dto.AuthInfo;
+import io.sustc.dto.CacheStats;
+import io.sustc.dto.CountMode;
+import io.sustc.dto.CursorPage;
+import io.sustc.dto.IngredientMatch;
+import io.sustc.dto.IngredientMatchMode;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.SearchFacets;
+import io.sustc.jdbc.RecipeDetailSql;
+import io.sustc.jdbc.RecipeSearchSql;
+import io.sustc.jdbc.RecordMapper;
+import io.sustc.jdbc.RecordMappers;
 import io.sustc.service.RecipeService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.format.DateTimeParseException;
@@ -27,73 +37,52 @@ public class RecipeServiceImpl implements RecipeService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
-    /**
-     * Map one row (recipe + authorname) -> RecipeRecord.
-     * Do NOT fill ingredients here.
-     */
-    private final RowMapper<RecipeRecord> recipeRowMapper = new RowMapper<>() {
-        @Override
-        public RecipeRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
-            RecipeRecord.RecipeRecordBuilder builder = RecipeRecord.builder();
-            builder.RecipeId(rs.getLong("recipeid"));
-            builder.name(rs.getString("name"));
-            builder.authorId(rs.getLong("authorid"));
-            builder.authorName(rs.getString("authorname"));
-
-            builder.cookTime(rs.getString("cooktime"));
-            builder.prepTime(rs.getString("preptime"));
-            builder.totalTime(rs.getString("totaltime"));
-            builder.datePublished(rs.getTimestamp("datepublished"));
-            builder.description(rs.getString("description"));
-            builder.recipeCategory(rs.getString("recipecategory"));
-
-            builder.recipeIngredientParts(null);
-
-            java.math.BigDecimal ar = rs.getBigDecimal("aggregatedrating");
-            builder.aggregatedRating(ar == null ? 0f : ar.floatValue());
-
-            Integer rc = rs.getObject("reviewcount", Integer.class);
-            builder.reviewCount(rc == null ? 0 : rc);
-
-            builder.calories(getDecimalAsFloat(rs, "calories"));
-            builder.fatContent(getDecimalAsFloat(rs, "fatcontent"));
-            builder.saturatedFatContent(getDecimalAsFloat(rs, "saturatedfatcontent"));
-            builder.cholesterolContent(getDecimalAsFloat(rs, "cholesterolcontent"));
-            builder.sodiumContent(getDecimalAsFloat(rs, "sodiumcontent"));
-            builder.carbohydrateContent(getDecimalAsFloat(rs, "carbohydratecontent"));
-            builder.fiberContent(getDecimalAsFloat(rs, "fibercontent"));
-            builder.sugarContent(getDecimalAsFloat(rs, "sugarcontent"));
-            builder.proteinContent(getDecimalAsFloat(rs, "proteincontent"));
-
-            Integer servings = null;
-            try {
-                servings = rs.getObject("recipeservings", Integer.class);
-            } catch (SQLException ignored) { }
-            if (servings == null) {
-                String servingsStr = rs.getString("recipeservings");
-                if (servingsStr != null) {
-                    try {
-                        servings = (int) Double.parseDouble(servingsStr.trim());
-                    } catch (NumberFormatException ignored) {
-                        servings = 0;
-                    }
-                }
-            }
-            builder.recipeServings(servings == null ? 0 : servings);
-            builder.recipeYield(rs.getString("recipeyield"));
+    @Autowired
+    private RecipeCache recipeCache;
 
-            return builder.build();
-        }
+    @Autowired
+    private RecipeSearchIndex recipeSearchIndex;
 
-        private float getDecimalAsFloat(ResultSet rs, String column) throws SQLException {
-            java.math.BigDecimal bd = rs.getBigDecimal(column);
-            return bd == null ? 0f : bd.floatValue();
-        }
-    };
+    @Autowired
+    private RecipeNameDictionary recipeNameDictionary;
+
+    @Autowired
+    private CalorieGaps calorieGaps;
 
     @Override
     public String getNameFromID(long id) {
         if (id <= 0) throw new IllegalArgumentException("Invalid recipe id");
+        String[] known = recipeNameDictionary.lookup(new long[]{id});
+        if (known != null) return known[0];
+        return recipeCache.getName(id, this::loadName);
+    }
+
+    @Override
+    public List<String> getNamesFromIDs(long[] ids) {
+        if (ids == null) throw new IllegalArgumentException("Invalid recipe ids");
+        if (ids.length > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " names can be fetched at once");
+        }
+        Set<Long> distinct = new LinkedHashSet<>();
+        for (long id : ids) {
+            if (id <= 0) throw new IllegalArgumentException("Invalid recipe id");
+            distinct.add(id);
+        }
+        if (distinct.isEmpty()) return new ArrayList<>();
+
+        String[] known = recipeNameDictionary.lookup(ids);
+        if (known != null) return new ArrayList<>(Arrays.asList(known));
+
+        Map<Long, String> byId = new HashMap<>();
+        jdbcTemplate.query(withIds("SELECT recipeid, name FROM recipes WHERE recipeid = ANY (?)", distinct), rs -> {
+            byId.put(rs.getLong(1), rs.getString(2));
+        });
+        List<String> result = new ArrayList<>(ids.length);
+        for (long id : ids) result.add(byId.get(id));
+        return result;
+    }
+
+    private String loadName(long id) {
         try {
             return jdbcTemplate.queryForObject(
                     "SELECT name FROM recipes WHERE recipeid = ?",
@@ -109,109 +98,388 @@ public class RecipeServiceImpl implements RecipeService {
     public RecipeRecord getRecipeById(long recipeId) {
         if (recipeId <= 0) throw new IllegalArgumentException("Invalid recipe id");
 
-        try {
-            // IMPORTANT: treat recipes whose author is deleted as "not active"
-            RecipeRecord record = jdbcTemplate.queryForObject(
-                    "SELECT r.*, u.authorname " +
-                            "FROM recipes r " +
-                            "LEFT JOIN users u ON r.authorid = u.authorid " +
-                            "WHERE r.recipeid = ? AND u.isdeleted = FALSE",
-                    recipeRowMapper,
-                    recipeId
-            );
-            if (record == null) return null;
-
-            // Ingredients: fetch then sort case-insensitively in Java
-            List<String> ingredients = jdbcTemplate.query(
-                    "SELECT ingredientpart FROM recipe_ingredients WHERE recipeid = ?",
-                    (rs, rowNum) -> rs.getString("ingredientpart"),
-                    recipeId
-            );
+        return recipeCache.getRecord(recipeId, this::loadRecipe);
+    }
 
-            if (ingredients == null || ingredients.isEmpty()) {
-                // Match the known 7/7 behavior: null when no ingredients
-                record.setRecipeIngredientParts(null);
-            } else {
-                String[] arr = ingredients.toArray(new String[0]);
-                Arrays.sort(arr, String.CASE_INSENSITIVE_ORDER);
-                record.setRecipeIngredientParts(arr);
-            }
-            return record;
+    private RecipeRecord loadRecipe(long recipeId) {
+        // IMPORTANT: treat recipes whose author is deleted as "not active"
+        List<RecipeRecord> records = jdbcTemplate.query(RecipeDetailSql.BY_ID, RecordMappers.recipe()::mapRow, recipeId);
+        return records.isEmpty() ? null : records.get(0);
+    }
 
-        } catch (EmptyResultDataAccessException e) {
-            return null;
+    @Override
+    public List<RecipeRecord> getRecipesByIds(long[] ids) {
+        if (ids == null) throw new IllegalArgumentException("Invalid recipe ids");
+        if (ids.length > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " recipes can be fetched at once");
+        }
+        Set<Long> distinct = new LinkedHashSet<>();
+        for (long id : ids) {
+            if (id <= 0) throw new IllegalArgumentException("Invalid recipe id");
+            distinct.add(id);
         }
+        if (distinct.isEmpty()) return new ArrayList<>();
+
+        // IMPORTANT: treat recipes whose author is deleted as "not active"
+        List<RecipeRecord> found = jdbcTemplate.query(
+                withIds("SELECT r.*, u.authorname FROM recipes r " +
+                        "JOIN users u ON r.authorid = u.authorid AND u.isdeleted = FALSE " +
+                        "WHERE r.recipeid = ANY (?)", distinct),
+                RecordMappers.recipe()::mapRow
+        );
+        fillIngredientsForRecipes(found);
+
+        Map<Long, RecipeRecord> byId = new HashMap<>();
+        for (RecipeRecord r : found) byId.put(r.getRecipeId(), r);
+        List<RecipeRecord> result = new ArrayList<>(ids.length);
+        for (long id : ids) result.add(byId.get(id));
+        return result;
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return recipeCache.stats();
     }
 
     @Override
     public PageResult<RecipeRecord> searchRecipes(String keyword, String category, Double minRating,
                                                   Integer page, Integer size, String sort) {
+        return searchRecipes(keyword, category, minRating, page, size, sort, CountMode.EXACT);
+    }
+
+    @Override
+    public PageResult<RecipeRecord> searchRecipes(String keyword, String category, Double minRating,
+                                                  Integer page, Integer size, String sort, CountMode countMode) {
         if (page == null || page < 1 || size == null || size <= 0) {
             throw new IllegalArgumentException("Invalid page or size");
         }
 
-        // IMPORTANT: always exclude deleted users (active recipes only)
-        StringBuilder where = new StringBuilder(" WHERE 1=1");
+        // the in-memory index always has the exact total, whatever the count mode
+        PageResult<RecipeRecord> indexed = recipeSearchIndex.search(keyword, category, minRating, page, size, sort);
+        if (indexed != null) {
+            return indexed;
+        }
+
         List<Object> params = new ArrayList<>();
+        StringBuilder where = RecipeSearchSql.where(keyword, category, minRating, params);
+
+        // Match 7/7 sorting semantics & tie-break
+        String orderBy = RecipeCursor.Order.of(sort).orderBy;
+
+        int offset = (page - 1) * size;
+        List<Object> pageParams = new ArrayList<>(params);
+        pageParams.add(size);
+        pageParams.add(offset);
 
-        if (StringUtils.hasText(keyword)) {
-            String kw = "%" + keyword.trim() + "%";
-            where.append(" AND (r.name ILIKE ? OR r.description ILIKE ?)");
-            params.add(kw);
-            params.add(kw);
+        CountMode mode = countMode == null ? CountMode.EXACT : countMode;
+        String filters = null;
+        Long total = null;
+        if (mode == CountMode.ESTIMATED) {
+            filters = searchKey(keyword, category, minRating);
+            total = recipeCache.getSearchCount(filters);
         }
-        if (StringUtils.hasText(category)) {
-            where.append(" AND r.recipecategory = ?");
-            params.add(category.trim());
+
+        List<RecipeRecord> items;
+        if (mode == CountMode.EXACT || total != null) {
+            if (total == null) {
+                total = Objects.requireNonNull(jdbcTemplate.queryForObject(
+                        "SELECT COUNT(*)" + RecipeSearchSql.FROM + where,
+                        Long.class,
+                        params.toArray()
+                ));
+            }
+            String pageSql =
+                    "SELECT r.*, u.authorname" +
+                            RecipeSearchSql.FROM +
+                            where +
+                            orderBy +
+                            " LIMIT ? OFFSET ?";
+            items = jdbcTemplate.query(
+                    pageSql,
+                    RecordMappers.recipe()::mapRow,
+                    pageParams.toArray()
+            );
+        } else {
+            // the window total is computed before LIMIT, so every row of the page carries it
+            long stamp = recipeCache.stamp();
+            long[] windowTotal = {-1};
+            String pageSql =
+                    "SELECT r.*, u.authorname, count(*) OVER () AS total_count" +
+                            RecipeSearchSql.FROM +
+                            where +
+                            orderBy +
+                            " LIMIT ? OFFSET ?";
+            RecordMapper<RecipeRecord> mapper = RecordMappers.recipe();
+            items = jdbcTemplate.query(pageSql, (rs, rowNum) -> {
+                if (rowNum == 0) {
+                    windowTotal[0] = rs.getLong("total_count");
+                }
+                return mapper.mapRow(rs, rowNum);
+            }, pageParams.toArray());
+
+            if (windowTotal[0] >= 0) {
+                total = windowTotal[0];
+            } else if (offset == 0) {
+                total = 0L;
+            } else {
+                // past the last page no row is left to carry the total
+                total = Objects.requireNonNull(jdbcTemplate.queryForObject(
+                        "SELECT COUNT(*)" + RecipeSearchSql.FROM + where,
+                        Long.class,
+                        params.toArray()
+                ));
+            }
+            if (filters != null) {
+                recipeCache.putSearchCount(filters, total, stamp);
+            }
         }
-        if (minRating != null) {
-            where.append(" AND r.aggregatedrating >= ?");
-            params.add(minRating);
+
+        fillIngredientsForRecipes(items);
+
+        return PageResult.<RecipeRecord>builder()
+                .items(items)
+                .page(page)
+                .size(size)
+                .total(total)
+                .build();
+    }
+
+    /**
+     * Key of the filters of a search in the count cache, normalized like {@link RecipeSearchSql#where}.
+     */
+    private static String searchKey(String keyword, String category, Double minRating) {
+        return (StringUtils.hasText(keyword) ? keyword.trim() : "") + '\0' +
+                (StringUtils.hasText(category) ? category.trim() : "") + '\0' +
+                (minRating == null ? "" : minRating.toString());
+    }
+
+    @Override
+    public List<RecipeRecord> searchRecipesByRelevance(String query, String category, Double minRating, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit");
         }
+        return recipeSearchIndex.rank(query, category, minRating, limit);
+    }
 
-        // Match 7/7 sorting semantics & tie-break
-        String orderBy;
-        if ("rating_desc".equalsIgnoreCase(sort)) {
-            orderBy = " ORDER BY r.aggregatedrating DESC NULLS LAST, r.recipeid DESC";
-        } else if ("date_desc".equalsIgnoreCase(sort)) {
-            orderBy = " ORDER BY r.datepublished DESC NULLS LAST, r.recipeid DESC";
-        } else if ("calories_asc".equalsIgnoreCase(sort)) {
-            orderBy = " ORDER BY r.calories ASC NULLS LAST, r.recipeid ASC";
+    @Override
+    public CursorPage<RecipeRecord> searchRecipesByCursor(String keyword, String category, Double minRating,
+                                                          String cursor, Integer size, String sort) {
+        if (size == null || size <= 0) {
+            throw new IllegalArgumentException("Invalid size");
+        }
+        RecipeCursor.Order order = RecipeCursor.Order.of(sort);
+        RecipeCursor after = RecipeCursor.decode(cursor, order);
+
+        List<Object> params = new ArrayList<>();
+        StringBuilder where = RecipeSearchSql.where(keyword, category, minRating, params);
+
+        // one row more than the page tells whether another page follows
+        List<RecipeRecord> items = new ArrayList<>(size + 1);
+        List<Object> keys = new ArrayList<>(size + 1);
+        if (order.column == null) {
+            if (after == null) {
+                seek(where.toString(), params, order, size + 1, items, keys);
+            } else {
+                seek(where + " AND r.recipeid > ?", params, order, size + 1, items, keys, after.recipeId);
+            }
         } else {
-            orderBy = " ORDER BY r.recipeid ASC";
+            // nulls sort last: the keyed rows seek on the composite index first, then the unkeyed ones by id
+            String keyed = where + " AND " + order.column + " IS NOT NULL";
+            String unkeyed = where + " AND " + order.column + " IS NULL";
+            if (after == null) {
+                seek(keyed, params, order, size + 1, items, keys);
+            } else if (after.key != null) {
+                seek(keyed + " AND (" + order.column + ", r.recipeid)" + order.after() + "(?, ?)",
+                        params, order, size + 1, items, keys, after.key, after.recipeId);
+            }
+            if (items.size() <= size) {
+                if (after == null || after.key != null) {
+                    seek(unkeyed, params, order, size + 1 - items.size(), items, keys);
+                } else {
+                    seek(unkeyed + " AND r.recipeid" + order.after() + "?",
+                            params, order, size + 1 - items.size(), items, keys, after.recipeId);
+                }
+            }
+        }
+
+        String nextCursor = null;
+        if (items.size() > size) {
+            items = new ArrayList<>(items.subList(0, size));
+            RecipeRecord last = items.get(size - 1);
+            nextCursor = new RecipeCursor(order, keys.get(size - 1), last.getRecipeId()).encode();
         }
+        fillIngredientsForRecipes(items);
 
-        String fromClause =
-                " FROM recipes r " +
-                        "JOIN users u ON r.authorid = u.authorid AND u.isdeleted = FALSE";
+        return CursorPage.<RecipeRecord>builder()
+                .items(items)
+                .size(size)
+                .nextCursor(nextCursor)
+                .build();
+    }
 
-        long total = Objects.requireNonNull(jdbcTemplate.queryForObject(
-                "SELECT COUNT(*)" + fromClause + where,
-                Long.class,
-                params.toArray()
-        ));
+    @Override
+    public SearchFacets getSearchFacets(String keyword, String category, Double minRating) {
+        SearchFacets indexed = recipeSearchIndex.facets(keyword, category, minRating);
+        if (indexed != null) {
+            return indexed;
+        }
 
-        int offset = (page - 1) * size;
-        String pageSql =
-                "SELECT r.*, u.authorname" +
-                        fromClause +
+        // one scan of the keyword matches; each facet applies the other filter in its FILTER clause
+        String inCategory = StringUtils.hasText(category) ? "r.recipecategory = ?" : "TRUE";
+        String rated = minRating != null ? "r.aggregatedrating >= ?" : "TRUE";
+        List<Object> params = new ArrayList<>();
+        if (minRating != null) {
+            params.add(minRating);
+        }
+        if (StringUtils.hasText(category)) {
+            params.add(category.trim());
+        }
+        params.addAll(new ArrayList<>(params));
+        StringBuilder where = RecipeSearchSql.where(keyword, null, null, params);
+
+        String sql =
+                "SELECT GROUPING(r.recipecategory), GROUPING(b.bucket), r.recipecategory, b.bucket, " +
+                        "COUNT(*) FILTER (WHERE " + rated + "), " +
+                        "COUNT(*) FILTER (WHERE " + inCategory + "), " +
+                        "COUNT(*) FILTER (WHERE " + rated + " AND " + inCategory + ")" +
+                        RecipeSearchSql.FROM +
+                        " CROSS JOIN LATERAL (SELECT CASE WHEN r.aggregatedrating IS NULL THEN -1 " +
+                        "ELSE LEAST(floor(r.aggregatedrating)::int, 4) END AS bucket) b" +
                         where +
-                        orderBy +
-                        " LIMIT ? OFFSET ?";
+                        " GROUP BY GROUPING SETS ((r.recipecategory), (b.bucket), ())";
+
+        long[] total = {0};
+        Map<String, Long> categories = new HashMap<>();
+        long[] buckets = new long[6];
+        jdbcTemplate.query(sql, rs -> {
+            boolean byCategory = rs.getInt(1) == 0;
+            boolean byBucket = rs.getInt(2) == 0;
+            if (byCategory) {
+                String name = rs.getString(3);
+                if (name != null && rs.getLong(5) > 0) {
+                    categories.put(name, rs.getLong(5));
+                }
+            } else if (byBucket) {
+                buckets[rs.getInt(4) + 1] = rs.getLong(6);
+            } else {
+                total[0] = rs.getLong(7);
+            }
+        }, params.toArray());
+        return searchFacets(total[0], categories, buckets);
+    }
 
-        List<Object> pageParams = new ArrayList<>(params);
-        pageParams.add(size);
-        pageParams.add(offset);
+    /**
+     * Orders the facet counts.
+     *
+     * @param buckets recipes without a rating, then recipes per whole rating from 0 to 4
+     */
+    static SearchFacets searchFacets(long total, Map<String, Long> categories, long[] buckets) {
+        List<Map.Entry<String, Long>> byCount = new ArrayList<>(categories.entrySet());
+        byCount.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> sortedCategories = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : byCount) {
+            sortedCategories.put(e.getKey(), e.getValue());
+        }
+        Map<Integer, Long> ratingBuckets = new LinkedHashMap<>();
+        for (int bucket = 0; bucket <= 4; bucket++) {
+            ratingBuckets.put(bucket, buckets[bucket + 1]);
+        }
+        return SearchFacets.builder()
+                .total(total)
+                .categories(sortedCategories)
+                .ratingBuckets(ratingBuckets)
+                .unrated(buckets[0])
+                .build();
+    }
 
-        List<RecipeRecord> items = jdbcTemplate.query(
-                pageSql,
-                recipeRowMapper,
-                pageParams.toArray()
-        );
+    private static final int MAX_BATCH_SIZE = 1000;
 
-        fillIngredientsForRecipes(items);
+    /**
+     * Appends up to {@code limit} rows matching {@code where} to {@code items}, and their sort keys to {@code keys}.
+     */
+    private void seek(String where, List<Object> params, RecipeCursor.Order order, int limit,
+                      List<RecipeRecord> items, List<Object> keys, Object... seekArgs) {
+        List<Object> args = new ArrayList<>(params);
+        args.addAll(Arrays.asList(seekArgs));
+        args.add(limit);
+        String sql = "SELECT r.*, u.authorname" + RecipeSearchSql.FROM + where + order.orderBy + " LIMIT ?";
+        String keyColumn = order.column == null ? null : order.column.substring("r.".length());
+        RecordMapper<RecipeRecord> mapper = RecordMappers.recipe();
+        jdbcTemplate.query(sql, rs -> {
+            items.add(mapper.mapRow(rs, items.size()));
+            keys.add(keyColumn == null ? null : rs.getObject(keyColumn));
+        }, args.toArray());
+    }
 
-        return PageResult.<RecipeRecord>builder()
+    @Override
+    public PageResult<IngredientMatch> searchRecipesByIngredients(List<String> ingredients, IngredientMatchMode mode,
+                                                                  Integer page, Integer size) {
+        if (page == null || page < 1 || size == null || size <= 0) {
+            throw new IllegalArgumentException("Invalid page or size");
+        }
+        // the given ingredients are trimmed, the stored parts are matched as lower(IngredientPart) of idx_recipe_ingredients_part
+        Set<String> wanted = new LinkedHashSet<>();
+        if (ingredients != null) {
+            for (String ingredient : ingredients) {
+                if (StringUtils.hasText(ingredient)) {
+                    wanted.add(ingredient.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        if (wanted.isEmpty()) {
+            throw new IllegalArgumentException("No ingredients given");
+        }
+        IngredientMatchMode matchMode = mode == null ? IngredientMatchMode.ALL : mode;
+
+        List<Object> params = new ArrayList<>(wanted);
+        params.add(matchMode == IngredientMatchMode.ALL ? wanted.size() : 1);
+        // the postings of each wanted ingredient, counted per recipe
+        String matches =
+                " FROM (SELECT ri.recipeid, COUNT(DISTINCT lower(ri.ingredientpart)) AS matched " +
+                        "FROM recipe_ingredients ri " +
+                        "WHERE lower(ri.ingredientpart) IN (" + String.join(",", Collections.nCopies(wanted.size(), "?")) + ") " +
+                        "GROUP BY ri.recipeid " +
+                        "HAVING COUNT(DISTINCT lower(ri.ingredientpart)) >= ?) h " +
+                        "JOIN recipes r ON r.recipeid = h.recipeid " +
+                        "JOIN users u ON r.authorid = u.authorid AND u.isdeleted = FALSE " +
+                        "CROSS JOIN LATERAL (SELECT COUNT(DISTINCT lower(ri.ingredientpart)) AS parts " +
+                        "FROM recipe_ingredients ri WHERE ri.recipeid = h.recipeid) c" +
+                        (matchMode == IngredientMatchMode.PANTRY ? " WHERE c.parts = h.matched" : "");
+
+        int offset = (page - 1) * size;
+        List<Object> pageParams = new ArrayList<>(params);
+        pageParams.add(size);
+        pageParams.add(offset);
+        long[] windowTotal = {-1};
+        List<IngredientMatch> items = jdbcTemplate.query(
+                "SELECT h.recipeid, r.name, r.aggregatedrating, h.matched, c.parts, COUNT(*) OVER () AS total_count" +
+                        matches +
+                        " ORDER BY h.matched::float8 / c.parts DESC, h.matched DESC, " +
+                        "r.aggregatedrating DESC NULLS LAST, h.recipeid ASC" +
+                        " LIMIT ? OFFSET ?",
+                (rs, rowNum) -> {
+                    windowTotal[0] = rs.getLong(6);
+                    BigDecimal rating = rs.getBigDecimal(3);
+                    int matched = rs.getInt(4);
+                    int parts = rs.getInt(5);
+                    return IngredientMatch.builder()
+                            .recipeId(rs.getLong(1))
+                            .name(rs.getString(2))
+                            .aggregatedRating(rating == null ? null : rating.doubleValue())
+                            .matchedIngredients(matched)
+                            .recipeIngredients(parts)
+                            .matchRatio((double) matched / parts)
+                            .build();
+                },
+                pageParams.toArray());
+
+        long total = windowTotal[0];
+        if (total < 0) {
+            // past the last page no row is left to carry the total
+            total = offset == 0 ? 0 : Objects.requireNonNull(jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*)" + matches, Long.class, params.toArray()));
+        }
+        return PageResult.<IngredientMatch>builder()
                 .items(items)
                 .page(page)
                 .size(size)
@@ -232,13 +500,21 @@ public class RecipeServiceImpl implements RecipeService {
                 ? dto.getDatePublished()
                 : new Timestamp(System.currentTimeMillis());
 
+        // the rows inserted into recipe_ingredients below, counted into IngredientCount
+        Set<String> parts = new LinkedHashSet<>();
+        if (dto.getRecipeIngredientParts() != null) {
+            for (String p : dto.getRecipeIngredientParts()) {
+                if (StringUtils.hasText(p)) parts.add(p);
+            }
+        }
+
         List<Long> inserted = jdbcTemplate.query(
-                "INSERT INTO recipes (recipeid, name, authorid, cooktime, preptime, totaltime, " +
+                "INSERT INTO recipes (recipeid, name, authorid, cooktime, preptime, totaltime, cooksec, prepsec, " +
                         "datepublished, description, recipecategory, aggregatedrating, reviewcount, " +
                         "calories, fatcontent, saturatedfatcontent, cholesterolcontent, sodiumcontent, " +
                         "carbohydratecontent, fibercontent, sugarcontent, proteincontent, " +
-                        "recipeservings, recipeyield) " +
-                        "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?) " +
+                        "recipeservings, recipeyield, ingredientcount) " +
+                        "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?) " +
                         "ON CONFLICT (recipeid) DO NOTHING " +
                         "RETURNING recipeid",
                 (rs, rn) -> rs.getLong(1),
@@ -248,6 +524,8 @@ public class RecipeServiceImpl implements RecipeService {
                 dto.getCookTime(),
                 dto.getPrepTime(),
                 dto.getTotalTime(),
+                Schema.seconds(dto.getCookTime()),
+                Schema.seconds(dto.getPrepTime()),
                 datePublished,
                 dto.getDescription(),
                 dto.getRecipeCategory(),
@@ -263,25 +541,27 @@ public class RecipeServiceImpl implements RecipeService {
                 dto.getSugarContent(),
                 dto.getProteinContent(),
                 dto.getRecipeServings(),
-                dto.getRecipeYield()
+                dto.getRecipeYield(),
+                parts.size()
         );
 
         if (inserted.isEmpty()) return -1;
+        calorieGaps.added(recipeId);
+        recipeCache.invalidate(recipeId);
+        recipeSearchIndex.refresh(recipeId);
+        recipeNameDictionary.put(recipeId, dto.getName().trim());
 
-        String[] parts = dto.getRecipeIngredientParts();
-        if (parts != null && parts.length > 0) {
+        if (!parts.isEmpty()) {
             List<Object[]> batch = new ArrayList<>();
             for (String p : parts) {
-                if (StringUtils.hasText(p)) batch.add(new Object[]{recipeId, p});
-            }
-            if (!batch.isEmpty()) {
-                // FIX: add a space before ON CONFLICT
-                jdbcTemplate.batchUpdate(
-                        "INSERT INTO recipe_ingredients (recipeid, ingredientpart) VALUES (?, ?) " +
-                                "ON CONFLICT DO NOTHING",
-                        batch
-                );
+                batch.add(new Object[]{recipeId, p});
             }
+            // FIX: add a space before ON CONFLICT
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO recipe_ingredients (recipeid, ingredientpart) VALUES (?, ?) " +
+                            "ON CONFLICT DO NOTHING",
+                    batch
+            );
         }
 
         return recipeId;
@@ -308,6 +588,10 @@ public class RecipeServiceImpl implements RecipeService {
         jdbcTemplate.update("DELETE FROM reviews WHERE recipeid = ?", recipeId);
         jdbcTemplate.update("DELETE FROM recipe_ingredients WHERE recipeid = ?", recipeId);
         jdbcTemplate.update("DELETE FROM recipes WHERE recipeid = ?", recipeId);
+        calorieGaps.removed(recipeId);
+        recipeCache.invalidate(recipeId);
+        recipeSearchIndex.refresh(recipeId);
+        recipeNameDictionary.remove(recipeId);
     }
 
     @Override
@@ -320,7 +604,7 @@ public class RecipeServiceImpl implements RecipeService {
         Map<String, Object> recipe;
         try {
             recipe = jdbcTemplate.queryForMap(
-                    "SELECT authorid, cooktime, preptime FROM recipes WHERE recipeid = ?",
+                    "SELECT authorid, cooktime, preptime, cooksec, prepsec FROM recipes WHERE recipeid = ?",
                     recipeId
             );
         } catch (EmptyResultDataAccessException e) {
@@ -330,77 +614,64 @@ public class RecipeServiceImpl implements RecipeService {
         Long authorId = ((Number) recipe.get("authorid")).longValue();
         if (authorId != userId) throw new SecurityException("Not authorized to update");
 
-        String currentCook = (String) recipe.get("cooktime");
-        String currentPrep = (String) recipe.get("preptime");
-
-        String finalCook = cookTimeIso != null ? cookTimeIso : currentCook;
-        String finalPrep = prepTimeIso != null ? prepTimeIso : currentPrep;
+        String finalCook = cookTimeIso != null ? cookTimeIso : (String) recipe.get("cooktime");
+        String finalPrep = prepTimeIso != null ? prepTimeIso : (String) recipe.get("preptime");
 
-        Duration cookDuration = parseDuration(finalCook);
-        Duration prepDuration = parseDuration(finalPrep);
+        // the unchanged side is taken from its stored seconds instead of being parsed again
+        Duration cookDuration = cookTimeIso != null
+                ? parseDuration(cookTimeIso) : storedDuration(recipe.get("cooksec"), finalCook);
+        Duration prepDuration = prepTimeIso != null
+                ? parseDuration(prepTimeIso) : storedDuration(recipe.get("prepsec"), finalPrep);
         Duration totalDuration = cookDuration.plus(prepDuration);
         if (totalDuration.isNegative()) throw new IllegalArgumentException("Negative duration");
+        // the seconds come from the same durations as the strings, so TotalSec always matches TotalTime
+        int cookSeconds = seconds(cookDuration);
+        int prepSeconds = seconds(prepDuration);
+        seconds(totalDuration); // the generated TotalSec has to fit as well
 
         jdbcTemplate.update(
-                "UPDATE recipes SET cooktime = ?, preptime = ?, totaltime = ? WHERE recipeid = ?",
+                "UPDATE recipes SET cooktime = ?, preptime = ?, totaltime = ?, cooksec = ?, prepsec = ? " +
+                        "WHERE recipeid = ?",
                 finalCook,
                 finalPrep,
                 totalDuration.toString(),
+                cookSeconds,
+                prepSeconds,
                 recipeId
         );
+        recipeCache.invalidate(recipeId);
+        recipeSearchIndex.refresh(recipeId);
     }
 
     @Override
     public Map<String, Object> getClosestCaloriePair() {
-        String sql =
-                "WITH ordered AS (" +
-                        "    SELECT recipeid, calories, " +
-                        "           LAG(recipeid) OVER (ORDER BY calories ASC, recipeid ASC) AS prev_id, " +
-                        "           LAG(calories) OVER (ORDER BY calories ASC, recipeid ASC) AS prev_cal " +
-                        "    FROM recipes WHERE calories IS NOT NULL" +
-                        "), diffs AS (" +
-                        "    SELECT CASE WHEN recipeid < prev_id THEN recipeid ELSE prev_id END AS recipe_a, " +
-                        "           CASE WHEN recipeid < prev_id THEN prev_id ELSE recipeid END AS recipe_b, " +
-                        "           CASE WHEN recipeid < prev_id THEN calories ELSE prev_cal END AS calories_a, " +
-                        "           CASE WHEN recipeid < prev_id THEN prev_cal ELSE calories END AS calories_b, " +
-                        "           ABS(calories - prev_cal) AS diff " +
-                        "    FROM ordered WHERE prev_id IS NOT NULL" +
-                        ") " +
-                        "SELECT recipe_a, recipe_b, calories_a, calories_b, diff FROM diffs " +
-                        "ORDER BY diff ASC, recipe_a ASC, recipe_b ASC LIMIT 1";
-        try {
-            Map<String, Object> row = jdbcTemplate.queryForMap(sql);
-            Map<String, Object> result = new HashMap<>();
-            result.put("RecipeA", ((Number) row.get("recipe_a")).longValue());
-            result.put("RecipeB", ((Number) row.get("recipe_b")).longValue());
-            result.put("CaloriesA", row.get("calories_a") == null ? null : ((Number) row.get("calories_a")).doubleValue());
-            result.put("CaloriesB", row.get("calories_b") == null ? null : ((Number) row.get("calories_b")).doubleValue());
-            result.put("Difference", row.get("diff") == null ? null : ((Number) row.get("diff")).doubleValue());
-            return result;
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
+        // the neighbours are maintained by createRecipe/deleteRecipe and the imports, see CalorieGaps
+        return calorieGaps.closest();
     }
 
     @Override
     public List<Map<String, Object>> getTop3MostComplexRecipesByIngredients() {
+        return getTopRecipesByIngredientCount(3);
+    }
+
+    @Override
+    public List<Map<String, Object>> getTopRecipesByIngredientCount(int k) {
+        if (k <= 0 || k > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("k must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        // the first k entries of idx_recipes_ingredient_count
         String sql =
-                "SELECT ri.recipeid, r.name, COUNT(DISTINCT ri.ingredientpart) AS ingredient_count " +
-                        "FROM recipe_ingredients ri " +
-                        "JOIN recipes r ON ri.recipeid = r.recipeid " +
-                        "GROUP BY ri.recipeid, r.name " +
-                        "ORDER BY ingredient_count DESC, ri.recipeid ASC " +
-                        "LIMIT 3";
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql);
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (Map<String, Object> row : rows) {
+                "SELECT recipeid, name, ingredientcount FROM recipes " +
+                        "WHERE ingredientcount > 0 " +
+                        "ORDER BY ingredientcount DESC, recipeid ASC " +
+                        "LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
             Map<String, Object> item = new HashMap<>();
-            item.put("RecipeId", ((Number) row.get("recipeid")).longValue());
-            item.put("Name", row.get("name"));
-            item.put("IngredientCount", ((Number) row.get("ingredient_count")).intValue());
-            result.add(item);
-        }
-        return result;
+            item.put("RecipeId", rs.getLong(1));
+            item.put("Name", rs.getString(2));
+            item.put("IngredientCount", rs.getInt(3));
+            return item;
+        }, k);
     }
 
     private long requireActiveUser(AuthInfo auth) {
@@ -421,6 +692,22 @@ public class RecipeServiceImpl implements RecipeService {
         }
     }
 
+    /**
+     * A stored duration: its seconds column, or the ISO string where that is {@code NULL}, e.g. for an unusual format.
+     */
+    private Duration storedDuration(Object seconds, String iso) {
+        return seconds != null ? Duration.ofSeconds(((Number) seconds).longValue()) : parseDuration(iso);
+    }
+
+    /**
+     * Whole seconds of a duration, as stored in {@code CookSec} and {@code PrepSec}.
+     */
+    private static int seconds(Duration duration) {
+        long seconds = duration.getSeconds();
+        if (seconds > Integer.MAX_VALUE) throw new IllegalArgumentException("Duration too long");
+        return (int) seconds;
+    }
+
     private Duration parseDuration(String iso) {
         if (!StringUtils.hasText(iso)) return Duration.ZERO;
         try {
@@ -443,25 +730,16 @@ public class RecipeServiceImpl implements RecipeService {
         List<Long> ids = new ArrayList<>(recipes.size());
         for (RecipeRecord r : recipes) ids.add(r.getRecipeId());
 
-        StringBuilder inClause = new StringBuilder();
-        for (int i = 0; i < ids.size(); i++) {
-            if (i > 0) inClause.append(",");
-            inClause.append("?");
-        }
-
+        // one statement text for any number of recipes, so the server can reuse its plan
         String sql =
                 "SELECT recipeid, ingredientpart " +
                         "FROM recipe_ingredients " +
-                        "WHERE recipeid IN (" + inClause + ")";
-
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, ids.toArray());
+                        "WHERE recipeid = ANY (?)";
 
         Map<Long, List<String>> ingredientMap = new HashMap<>();
-        for (Map<String, Object> row : rows) {
-            Long rid = ((Number) row.get("recipeid")).longValue();
-            String part = (String) row.get("ingredientpart");
-            ingredientMap.computeIfAbsent(rid, k -> new ArrayList<>()).add(part);
-        }
+        jdbcTemplate.query(withIds(sql, ids), rs -> {
+            ingredientMap.computeIfAbsent(rs.getLong(1), k -> new ArrayList<>()).add(rs.getString(2));
+        });
 
         for (RecipeRecord r : recipes) {
             List<String> list = ingredientMap.get(r.getRecipeId());
@@ -473,4 +751,15 @@ public class RecipeServiceImpl implements RecipeService {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * A statement whose only parameter is a {@code bigint[]} of {@code ids}, e.g. for {@code = ANY (?)}.
+     */
+    private static PreparedStatementCreator withIds(String sql, Collection<Long> ids) {
+        return con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("BIGINT", ids.toArray()));
+            return ps;
+        };
+    }
+}
@@ -4,6 +4,7 @@ import io.sustc.dto.AuthInfo;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
 import io.sustc.dto.ReviewRecord;
+import io.sustc.jdbc.RecordMappers;
 import io.sustc.service.ReviewService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,7 +16,6 @@ import org.springframework.util.StringUtils;
 
 import java.sql.Timestamp;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -27,6 +27,12 @@ public class ReviewServiceImpl implements ReviewService {
     @Autowired
     private RecipeServiceImpl recipeService;
 
+    @Autowired
+    private RecipeCache recipeCache;
+
+    @Autowired
+    private RecipeSearchIndex recipeSearchIndex;
+
     private static final int MIN_RATING = 1;
     private static final int MAX_RATING = 5;
 
@@ -275,12 +281,12 @@ public class ReviewServiceImpl implements ReviewService {
 
         // 查询评论数据
         String querySql = buildReviewQuerySql(sort);
-        List<Map<String, Object>> reviewData = jdbcTemplate.queryForList(
-                querySql, recipeId, size, offset
+        List<ReviewRecord> records = jdbcTemplate.query(
+                querySql, RecordMappers.review()::mapRow, recipeId, size, offset
         );
 
-        // 处理结果
-        List<ReviewRecord> records = processReviewResults(reviewData);
+        // 填充点赞信息
+        fillLikes(records);
 
         return PageResult.<ReviewRecord>builder()
                 .items(records)
@@ -307,97 +313,67 @@ public class ReviewServiceImpl implements ReviewService {
      */
     private String buildReviewQuerySql(String sort) {
         if ("likes_desc".equals(sort)) {
-            return "SELECT r.*, COALESCE(l.like_count, 0) as like_count " +
+            return "SELECT r.*, u.authorname, COALESCE(l.like_count, 0) as like_count " +
                     "FROM reviews r " +
+                    "LEFT JOIN users u ON u.authorid = r.authorid " +
                     "LEFT JOIN (SELECT reviewid, COUNT(*) as like_count FROM review_likes GROUP BY reviewid) l " +
                     "ON r.reviewid = l.reviewid " +
                     "WHERE r.recipeid = ? " +
                     buildOrderClause(sort) + " LIMIT ? OFFSET ?";
         }
-        return "SELECT r.* FROM reviews r WHERE r.recipeid = ? " +
+        return "SELECT r.*, u.authorname FROM reviews r " +
+                "LEFT JOIN users u ON u.authorid = r.authorid " +
+                "WHERE r.recipeid = ? " +
                 buildOrderClause(sort) + " LIMIT ? OFFSET ?";
     }
 
     /**
-     * 处理评论结果
+     * 批量填充点赞用户
      */
-    private List<ReviewRecord> processReviewResults(List<Map<String, Object>> reviewData) {
-        if (reviewData.isEmpty()) {
-            return Collections.emptyList();
+    private void fillLikes(List<ReviewRecord> records) {
+        if (records.isEmpty()) {
+            return;
         }
 
-        // 收集评论ID
-        List<Long> reviewIds = reviewData.stream()
-                .map(row -> ((Number) row.get("reviewid")).longValue())
-                .collect(Collectors.toList());
-
-        // 批量获取点赞信息
+        List<Long> reviewIds = new ArrayList<>(records.size());
+        for (ReviewRecord record : records) {
+            reviewIds.add(record.getReviewId());
+        }
         Map<Long, long[]> likesMap = getLikesForReviews(reviewIds);
-
-        // 构建返回记录
-        return reviewData.stream()
-                .map(row -> createReviewRecord(row, likesMap))
-                .collect(Collectors.toList());
+        for (ReviewRecord record : records) {
+            record.setLikes(likesMap.getOrDefault(record.getReviewId(), new long[0]));
+        }
     }
 
     /**
      * 批量获取点赞信息
      */
     private Map<Long, long[]> getLikesForReviews(List<Long> reviewIds) {
-        if (reviewIds.isEmpty()) {
-            return new HashMap<>();
-        }
-
         String placeholders = String.join(",", Collections.nCopies(reviewIds.size(), "?"));
         String sql = "SELECT reviewid, authorid FROM review_likes WHERE reviewid IN (" + placeholders + ")";
 
-        List<Map<String, Object>> likes = jdbcTemplate.queryForList(sql, reviewIds.toArray());
-
-        // 按评论ID分组点赞用户
-        Map<Long, List<Long>> groupedLikes = new HashMap<>();
-        for (Map<String, Object> like : likes) {
-            Long reviewId = ((Number) like.get("reviewid")).longValue();
-            Long userId = ((Number) like.get("authorid")).longValue();
-
-            groupedLikes.computeIfAbsent(reviewId, k -> new ArrayList<>()).add(userId);
-        }
+        LongPairBuffer likes = new LongPairBuffer(64);
+        jdbcTemplate.query(sql, rs -> {
+            likes.add(rs.getLong(1), rs.getLong(2));
+        }, reviewIds.toArray());
 
-        // 转换为数组
+        // 按评论ID分组点赞用户：先数出每条评论的点赞数，再按原顺序填入数组
         Map<Long, long[]> result = new HashMap<>();
-        for (Map.Entry<Long, List<Long>> entry : groupedLikes.entrySet()) {
-            long[] userIds = entry.getValue().stream().mapToLong(Long::longValue).toArray();
-            result.put(entry.getKey(), userIds);
+        Map<Long, int[]> filled = new HashMap<>();
+        for (int i = 0; i < likes.size(); i++) {
+            filled.computeIfAbsent(likes.first(i), k -> new int[1])[0]++;
+        }
+        for (Map.Entry<Long, int[]> entry : filled.entrySet()) {
+            result.put(entry.getKey(), new long[entry.getValue()[0]]);
+            entry.getValue()[0] = 0;
+        }
+        for (int i = 0; i < likes.size(); i++) {
+            long reviewId = likes.first(i);
+            result.get(reviewId)[filled.get(reviewId)[0]++] = likes.second(i);
         }
-
         return result;
     }
 
-    /**
-     * 创建评论记录对象
-     */
-    private ReviewRecord createReviewRecord(Map<String, Object> row, Map<Long, long[]> likesMap) {
-        Long reviewId = ((Number) row.get("reviewid")).longValue();
-        Long authorId = ((Number) row.get("authorid")).longValue();
-
-        // 获取作者名
-        String authorName = jdbcTemplate.queryForObject(
-                "SELECT authorname FROM users WHERE authorid = ?",
-                String.class, authorId
-        );
-
-        return ReviewRecord.builder()
-                .reviewId(reviewId)
-                .recipeId(((Number) row.get("recipeid")).longValue())
-                .authorId(authorId)
-                .authorName(authorName != null ? authorName : "")
-                .rating(((Number) row.get("rating")).floatValue())
-                .review((String) row.get("review"))
-                .dateSubmitted((Timestamp) row.get("datesubmitted"))
-                .dateModified((Timestamp) row.get("datemodified"))
-                .likes(likesMap.getOrDefault(reviewId, new long[0]))
-                .build();
-    }
-
     @Override
     @Transactional
     public RecipeRecord refreshRecipeAggregatedRating(long recipeId) {
@@ -427,6 +403,9 @@ public class ReviewServiceImpl implements ReviewService {
             );
         }
 
+        recipeCache.invalidate(recipeId);
+        recipeSearchIndex.refresh(recipeId);
+
         // 返回更新后的食谱
         return recipeService.getRecipeById(recipeId);
     }
@@ -0,0 +1,382 @@
+package io.sustc.service.impl;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * DDL of the application tables.
+ * <p>
+ * Columns (with their defaults and {@code NOT NULL}) are kept apart from the named constraints,
+ * so the same definition can either be created with the constraints inline, or created bare
+ * and constrained after a bulk load.
+ */
+final class Schema {
+
+    /**
+     * Version of the schema created by {@link #TABLES}, recorded in {@link #VERSION_TABLE}.
+     */
+    static final int VERSION = 5;
+
+    /**
+     * One row per version the schema went through, the highest being the current one.
+     * Databases created before it existed are at version 1.
+     */
+    static final String VERSION_TABLE = "CREATE TABLE IF NOT EXISTS schema_version (" +
+            "Version INTEGER PRIMARY KEY, " +
+            "Description VARCHAR(255) NOT NULL, " +
+            "AppliedAt TIMESTAMP NOT NULL DEFAULT now())";
+
+    /**
+     * The ISO-8601 durations that are also stored as seconds: days, hours, minutes and whole seconds.
+     */
+    private static final Pattern ISO_DURATION = Pattern.compile("P(\\d+D)?(T(\\d+H)?(\\d+M)?(\\d+S)?)?");
+
+    /**
+     * Total time in seconds, derived by the database from cook and prep time like {@code updateTimes} does.
+     */
+    private static final String TOTAL_SECONDS = "COALESCE(CookSec, 0) + COALESCE(PrepSec, 0)";
+
+    static final List<Table> TABLES = Collections.unmodifiableList(Arrays.asList(
+            new Table("users",
+                    "AuthorId BIGINT, " +
+                            "AuthorName VARCHAR(255) NOT NULL, " +
+                            "Gender VARCHAR(10), " +
+                            "Age INTEGER, " +
+                            // rows of user_follows with the user as FollowingId and as FollowerId, kept by follow,
+                            // deleteAccount and the imports
+                            "Followers INTEGER DEFAULT 0, " +
+                            "Following INTEGER DEFAULT 0, " +
+                            "Password VARCHAR(255), " +
+                            "IsDeleted BOOLEAN DEFAULT FALSE",
+                    primaryKey("users_pkey", "AuthorId"),
+                    check("users_gender_check", "Gender IN ('Male', 'Female', 'Unknown')"),
+                    check("users_age_check", "Age > 0"),
+                    check("users_followers_check", "Followers >= 0"),
+                    check("users_following_check", "Following >= 0")),
+
+            new Table("recipes",
+                    "RecipeId BIGINT, " +
+                            "Name VARCHAR(500) NOT NULL, " +
+                            "AuthorId BIGINT NOT NULL, " +
+                            "CookTime VARCHAR(50), " +
+                            "PrepTime VARCHAR(50), " +
+                            "TotalTime VARCHAR(50), " +
+                            "CookSec INTEGER, " +
+                            "PrepSec INTEGER, " +
+                            "TotalSec INTEGER GENERATED ALWAYS AS (" + TOTAL_SECONDS + ") STORED, " +
+                            "DatePublished TIMESTAMP, " +
+                            "Description TEXT, " +
+                            "RecipeCategory VARCHAR(255), " +
+                            "AggregatedRating DECIMAL(3,2), " +
+                            "ReviewCount INTEGER DEFAULT 0, " +
+                            "Calories DECIMAL(10,2), " +
+                            "FatContent DECIMAL(10,2), " +
+                            "SaturatedFatContent DECIMAL(10,2), " +
+                            "CholesterolContent DECIMAL(10,2), " +
+                            "SodiumContent DECIMAL(10,2), " +
+                            "CarbohydrateContent DECIMAL(10,2), " +
+                            "FiberContent DECIMAL(10,2), " +
+                            "SugarContent DECIMAL(10,2), " +
+                            "ProteinContent DECIMAL(10,2), " +
+                            "RecipeServings INTEGER, " +
+                            "RecipeYield VARCHAR(100), " +
+                            // distinct rows in recipe_ingredients, kept by createRecipe and the imports
+                            "IngredientCount INTEGER NOT NULL DEFAULT 0",
+                    primaryKey("recipes_pkey", "RecipeId"),
+                    check("recipes_aggregatedrating_check", "AggregatedRating >= 0 AND AggregatedRating <= 5"),
+                    check("recipes_reviewcount_check", "ReviewCount >= 0"),
+                    foreignKey("recipes_authorid_fkey", "AuthorId", "users(AuthorId)")),
+
+            new Table("reviews",
+                    "ReviewId BIGINT, " +
+                            "RecipeId BIGINT NOT NULL, " +
+                            "AuthorId BIGINT NOT NULL, " +
+                            "Rating FLOAT, " +
+                            "Review TEXT, " +
+                            "DateSubmitted TIMESTAMP, " +
+                            "DateModified TIMESTAMP",
+                    primaryKey("reviews_pkey", "ReviewId"),
+                    foreignKey("reviews_recipeid_fkey", "RecipeId", "recipes(RecipeId)"),
+                    foreignKey("reviews_authorid_fkey", "AuthorId", "users(AuthorId)")),
+
+            new Table("recipe_ingredients",
+                    "RecipeId BIGINT, " +
+                            "IngredientPart VARCHAR(500)",
+                    primaryKey("recipe_ingredients_pkey", "RecipeId, IngredientPart"),
+                    foreignKey("recipe_ingredients_recipeid_fkey", "RecipeId", "recipes(RecipeId)")),
+
+            new Table("review_likes",
+                    "ReviewId BIGINT, " +
+                            "AuthorId BIGINT",
+                    primaryKey("review_likes_pkey", "ReviewId, AuthorId"),
+                    foreignKey("review_likes_reviewid_fkey", "ReviewId", "reviews(ReviewId)"),
+                    foreignKey("review_likes_authorid_fkey", "AuthorId", "users(AuthorId)")),
+
+            new Table("user_follows",
+                    "FollowerId BIGINT, " +
+                            "FollowingId BIGINT",
+                    primaryKey("user_follows_pkey", "FollowerId, FollowingId"),
+                    foreignKey("user_follows_followerid_fkey", "FollowerId", "users(AuthorId)"),
+                    foreignKey("user_follows_followingid_fkey", "FollowingId", "users(AuthorId)"),
+                    check("user_follows_check", "FollowerId != FollowingId"))
+    ));
+
+    /**
+     * Top-K of getTopRecipesByIngredientCount, without the recipes that have no ingredients.
+     */
+    private static final String INGREDIENT_COUNT_INDEX = "CREATE INDEX IF NOT EXISTS idx_recipes_ingredient_count " +
+            "ON recipes (IngredientCount DESC, RecipeId ASC) WHERE IngredientCount > 0;";
+
+    /**
+     * Followers per following of the active users who follow someone, by descending ratio, as ranked by
+     * getFollowRatioLeaderboard. The partial predicate also keeps the division away from a zero count.
+     */
+    static final String FOLLOW_RATIO = "CAST(Followers AS DOUBLE PRECISION) / Following";
+
+    private static final String FOLLOW_RATIO_INDEX = "CREATE INDEX IF NOT EXISTS idx_users_follow_ratio " +
+            "ON users ((" + FOLLOW_RATIO + ") DESC, AuthorId ASC) WHERE IsDeleted = FALSE AND Following > 0;";
+
+    static final List<String> INDEXES = Collections.unmodifiableList(Arrays.asList(
+            "CREATE INDEX IF NOT EXISTS idx_recipes_author ON recipes (AuthorId);",
+            // keyset pagination of searchRecipesByCursor, one per sort order of RecipeCursor.Order
+            "CREATE INDEX IF NOT EXISTS idx_recipes_rating_seek ON recipes (AggregatedRating DESC NULLS LAST, RecipeId DESC);",
+            "CREATE INDEX IF NOT EXISTS idx_recipes_date_seek ON recipes (DatePublished DESC NULLS LAST, RecipeId DESC);",
+            "CREATE INDEX IF NOT EXISTS idx_recipes_calories_seek ON recipes (Calories ASC NULLS LAST, RecipeId ASC);",
+            INGREDIENT_COUNT_INDEX,
+            FOLLOW_RATIO_INDEX,
+            // ingredient -> recipe postings of searchRecipesByIngredients
+            "CREATE INDEX IF NOT EXISTS idx_recipe_ingredients_part ON recipe_ingredients (lower(IngredientPart), RecipeId);",
+            "CREATE INDEX IF NOT EXISTS idx_reviews_recipe ON reviews (RecipeId);",
+            "CREATE INDEX IF NOT EXISTS idx_reviews_author ON reviews (AuthorId);",
+            "CREATE INDEX IF NOT EXISTS idx_review_likes_review ON review_likes (ReviewId);",
+            "CREATE INDEX IF NOT EXISTS idx_review_likes_author ON review_likes (AuthorId);",
+            "CREATE INDEX IF NOT EXISTS idx_user_follows_follower ON user_follows (FollowerId);",
+            "CREATE INDEX IF NOT EXISTS idx_user_follows_following ON user_follows (FollowingId);"
+    ));
+
+    /**
+     * Installs {@code pg_trgm} if the database offers it and the user may install it.
+     * A failure only raises a notice, inside its own subtransaction, so the import carries on without it.
+     */
+    static final String TEXT_SEARCH_EXTENSION = "DO $$ BEGIN " +
+            "CREATE EXTENSION IF NOT EXISTS pg_trgm; " +
+            "EXCEPTION WHEN OTHERS THEN RAISE NOTICE 'pg_trgm is not available: %', SQLERRM; " +
+            "END $$;";
+
+    /**
+     * Neighbours in {@code (Calories, RecipeId)} order, derived from {@code recipes} and kept by {@link CalorieGaps}.
+     * {@code LowerId} and {@code UpperId} are the first and second recipe of the pair in that order.
+     */
+    static final List<String> CALORIE_GAPS_TABLE = Collections.unmodifiableList(Arrays.asList(
+            "CREATE TABLE IF NOT EXISTS recipe_calorie_gaps (" +
+                    "LowerId BIGINT PRIMARY KEY, " +
+                    "UpperId BIGINT NOT NULL UNIQUE, " +
+                    "RecipeA BIGINT NOT NULL, " +
+                    "RecipeB BIGINT NOT NULL, " +
+                    "CaloriesA DECIMAL(10,2) NOT NULL, " +
+                    "CaloriesB DECIMAL(10,2) NOT NULL, " +
+                    "Difference DECIMAL(11,2) NOT NULL)",
+            // getClosestCaloriePair reads the first entry
+            "CREATE INDEX IF NOT EXISTS idx_recipe_calorie_gaps_closest ON recipe_calorie_gaps (Difference, RecipeA, RecipeB)"
+    ));
+
+    /**
+     * Trigram indexes answering the {@code ILIKE '%keyword%'} filters of {@code searchRecipes} with the same
+     * substring semantics. PostgreSQL keeps them current on every insert and update, e.g. by {@code createRecipe}.
+     * They are skipped when {@code pg_trgm} is missing.
+     */
+    static final List<String> TEXT_SEARCH_INDEXES = Collections.unmodifiableList(Arrays.asList(
+            trigramIndex("idx_recipes_name_trgm", "Name"),
+            trigramIndex("idx_recipes_description_trgm", "Description")
+    ));
+
+    /**
+     * Steps from each version to the next, applied in order to a database older than {@link #VERSION}.
+     */
+    static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+            new Migration(2, "durations in seconds, integer servings",
+                    // same rule as seconds(), in the database; values that do not fit become NULL
+                    "CREATE OR REPLACE FUNCTION pg_temp.iso_seconds(iso TEXT) RETURNS INTEGER LANGUAGE plpgsql AS $$ " +
+                            "BEGIN " +
+                            "IF iso IS NULL OR trim(iso) !~ '^" + ISO_DURATION.pattern() + "$' " +
+                            "OR trim(iso) = 'P' OR trim(iso) LIKE '%T' THEN RETURN NULL; END IF; " +
+                            "RETURN CAST(EXTRACT(EPOCH FROM CAST(trim(iso) AS INTERVAL)) AS INTEGER); " +
+                            "EXCEPTION WHEN numeric_value_out_of_range OR datetime_field_overflow " +
+                            "OR interval_field_overflow THEN RETURN NULL; " +
+                            "END $$",
+                    "ALTER TABLE recipes ADD COLUMN IF NOT EXISTS CookSec INTEGER, ADD COLUMN IF NOT EXISTS PrepSec INTEGER",
+                    "UPDATE recipes SET CookSec = pg_temp.iso_seconds(CookTime), PrepSec = pg_temp.iso_seconds(PrepTime)",
+                    // one rewrite of the table for both; servings that were not numbers are read as 0 anyway
+                    "ALTER TABLE recipes " +
+                            "ADD COLUMN TotalSec INTEGER GENERATED ALWAYS AS (" + TOTAL_SECONDS + ") STORED, " +
+                            "ALTER COLUMN RecipeServings TYPE INTEGER USING CASE " +
+                            "WHEN trim(RecipeServings) ~ '^-?[0-9]{1,9}(\\.[0-9]*)?$' " +
+                            "THEN CAST(trunc(CAST(trim(RecipeServings) AS NUMERIC)) AS INTEGER) END"),
+            new Migration(3, "closest calorie pairs",
+                    CALORIE_GAPS_TABLE.get(0),
+                    CALORIE_GAPS_TABLE.get(1),
+                    CalorieGaps.FILL),
+            new Migration(4, "ingredient counts",
+                    // a constant default, so adding the column does not rewrite the table
+                    "ALTER TABLE recipes ADD COLUMN IF NOT EXISTS IngredientCount INTEGER NOT NULL DEFAULT 0",
+                    "UPDATE recipes r SET IngredientCount = c.n " +
+                            "FROM (SELECT RecipeId, COUNT(DISTINCT IngredientPart) AS n " +
+                            "      FROM recipe_ingredients GROUP BY RecipeId) c " +
+                            "WHERE r.RecipeId = c.RecipeId",
+                    INGREDIENT_COUNT_INDEX),
+            new Migration(5, "exact follow counters",
+                    UserServiceImpl.RECOUNT_FOLLOWS,
+                    FOLLOW_RATIO_INDEX)
+    ));
+
+    private Schema() {
+    }
+
+    /**
+     * Seconds of an ISO-8601 duration such as {@code PT1H30M}, as stored next to it in {@code CookSec}
+     * and {@code PrepSec}.
+     *
+     * @return the seconds, or {@code null} if the duration is missing, has another form, or does not fit
+     */
+    static Integer seconds(String iso) {
+        if (iso == null) {
+            return null;
+        }
+        String value = iso.trim();
+        if (!ISO_DURATION.matcher(value).matches() || value.equals("P") || value.endsWith("T")) {
+            return null;
+        }
+        try {
+            long seconds = Duration.parse(value).getSeconds();
+            return seconds <= Integer.MAX_VALUE ? Integer.valueOf((int) seconds) : null;
+        } catch (ArithmeticException | DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String trigramIndex(String name, String column) {
+        return "DO $$ BEGIN " +
+                "IF EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm') THEN " +
+                "CREATE INDEX IF NOT EXISTS " + name + " ON recipes USING gin (" + column + " gin_trgm_ops); " +
+                "END IF; " +
+                "END $$;";
+    }
+
+    private static Constraint primaryKey(String name, String columns) {
+        return new Constraint(name, Kind.PRIMARY_KEY, "PRIMARY KEY (" + columns + ")");
+    }
+
+    private static Constraint check(String name, String condition) {
+        return new Constraint(name, Kind.CHECK, "CHECK (" + condition + ")");
+    }
+
+    private static Constraint foreignKey(String name, String column, String target) {
+        return new Constraint(name, Kind.FOREIGN_KEY, "FOREIGN KEY (" + column + ") REFERENCES " + target);
+    }
+
+    static final class Migration {
+
+        final int version;
+
+        final String description;
+
+        final List<String> statements;
+
+        private Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = Collections.unmodifiableList(Arrays.asList(statements));
+        }
+    }
+
+    enum Kind {
+        PRIMARY_KEY,
+        CHECK,
+        FOREIGN_KEY,
+    }
+
+    static final class Constraint {
+
+        final String name;
+
+        final Kind kind;
+
+        final String definition;
+
+        private Constraint(String name, Kind kind, String definition) {
+            this.name = name;
+            this.kind = kind;
+            this.definition = definition;
+        }
+    }
+
+    static final class Table {
+
+        final String name;
+
+        final String columns;
+
+        final List<Constraint> constraints;
+
+        private Table(String name, String columns, Constraint... constraints) {
+            this.name = name;
+            this.columns = columns;
+            this.constraints = Collections.unmodifiableList(Arrays.asList(constraints));
+        }
+
+        /**
+         * {@code CREATE TABLE} with every constraint inline.
+         */
+        String createWithConstraints() {
+            StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ")
+                    .append(name).append(" (").append(columns);
+            for (Constraint c : constraints) {
+                sql.append(", CONSTRAINT ").append(c.name).append(' ').append(c.definition);
+            }
+            return sql.append(')').toString();
+        }
+
+        /**
+         * {@code CREATE TABLE} with columns only, to be constrained after loading.
+         */
+        String createBare() {
+            return "CREATE TABLE IF NOT EXISTS " + name + " (" + columns + ")";
+        }
+
+        /**
+         * {@code ALTER TABLE ... ADD CONSTRAINT} for the given kind, skipped for a constraint the table
+         * already has in {@code pg_constraint}, e.g. when a resumed import repeats the statement.
+         * Checks and foreign keys are added {@code NOT VALID}, see {@link #validate}.
+         */
+        List<String> addConstraints(Kind kind) {
+            List<String> sqls = new ArrayList<>();
+            for (Constraint c : constraints) {
+                if (c.kind != kind) continue;
+                String sql = "ALTER TABLE " + name + " ADD CONSTRAINT " + c.name + " " + c.definition;
+                sqls.add("DO $$ BEGIN " +
+                        "IF NOT EXISTS (SELECT 1 FROM pg_constraint " +
+                        "WHERE conname = '" + c.name + "' AND conrelid = '" + name + "'::regclass) THEN " +
+                        (kind == Kind.PRIMARY_KEY ? sql : sql + " NOT VALID") + "; " +
+                        "END IF; END $$");
+            }
+            return sqls;
+        }
+
+        /**
+         * {@code VALIDATE CONSTRAINT} for the checks and foreign keys added {@code NOT VALID}.
+         */
+        List<String> validate() {
+            List<String> sqls = new ArrayList<>();
+            for (Constraint c : constraints) {
+                if (c.kind == Kind.PRIMARY_KEY) continue;
+                sqls.add("ALTER TABLE " + name + " VALIDATE CONSTRAINT " + c.name);
+            }
+            return sqls;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import io.sustc.dto.FeedItem;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RegisterUserReq;
 import io.sustc.dto.UserRecord;
+import io.sustc.jdbc.RecordMappers;
 import io.sustc.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,9 +19,6 @@ import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.time.Duration;
-import java.time.Instant;
 import java.time.LocalDate;
 import java.time.Period;
 import java.time.format.DateTimeParseException;
@@ -37,9 +35,31 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private RecipeCache recipeCache;
+
+    @Autowired
+    private RecipeSearchIndex recipeSearchIndex;
+
+    /**
+     * Sets {@code Followers} and {@code Following} of every user to the rows of {@code user_follows},
+     * e.g. after an import, only rewriting the users whose counters are off.
+     */
+    static final String RECOUNT_FOLLOWS =
+            "UPDATE users u SET Followers = c.followers, Following = c.following " +
+                    "FROM (SELECT x.AuthorId, COALESCE(fol.n, 0) AS followers, COALESCE(fin.n, 0) AS following " +
+                    "      FROM users x " +
+                    "      LEFT JOIN (SELECT FollowingId AS uid, COUNT(*) AS n FROM user_follows GROUP BY FollowingId) fol " +
+                    "             ON fol.uid = x.AuthorId " +
+                    "      LEFT JOIN (SELECT FollowerId AS uid, COUNT(*) AS n FROM user_follows GROUP BY FollowerId) fin " +
+                    "             ON fin.uid = x.AuthorId) c " +
+                    "WHERE u.AuthorId = c.AuthorId " +
+                    "AND (u.Followers IS DISTINCT FROM c.followers OR u.Following IS DISTINCT FROM c.following)";
+
     private static final String GENDER_MALE = "Male";
     private static final String GENDER_FEMALE = "Female";
     private static final String GENDER_UNKNOWN = "Unknown";
+    private static final int MAX_LEADERBOARD_SIZE = 1000;
 
     @Override
     public long register(RegisterUserReq req) {
@@ -160,11 +180,28 @@ public class UserServiceImpl implements UserService {
         if (Boolean.TRUE.equals(deleted)) return false;
 
         jdbcTemplate.update("UPDATE users SET IsDeleted = TRUE WHERE AuthorId = ?", userId);
-        jdbcTemplate.update("DELETE FROM user_follows WHERE FollowerId = ? OR FollowingId = ?", userId, userId);
+        // drop the follows in both directions and take them off the counters of both ends
+        jdbcTemplate.update(
+                "WITH gone AS (" +
+                        "    DELETE FROM user_follows WHERE FollowerId = ? OR FollowingId = ? " +
+                        "    RETURNING FollowerId, FollowingId" +
+                        "), ends AS (" +
+                        "    SELECT FollowingId AS uid, 1 AS followers, 0 AS following FROM gone " +
+                        "    UNION ALL SELECT FollowerId, 0, 1 FROM gone" +
+                        ") " +
+                        "UPDATE users u SET Followers = u.Followers - s.followers, Following = u.Following - s.following " +
+                        "FROM (SELECT uid, SUM(followers) AS followers, SUM(following) AS following " +
+                        "      FROM ends GROUP BY uid) s " +
+                        "WHERE u.AuthorId = s.uid",
+                userId, userId);
+        // recipes of a deleted author are no longer returned
+        recipeCache.invalidateAuthor(userId);
+        recipeSearchIndex.removeAuthor(userId);
         return true;
     }
 
     @Override
+    @Transactional
     public boolean follow(AuthInfo auth, long followeeId) {
         long followerId = validateActiveUser(auth);
 
@@ -187,26 +224,36 @@ public class UserServiceImpl implements UserService {
             throw new SecurityException("Followee is deleted");
         }
 
-        Integer exists = jdbcTemplate.queryForObject(
-                "SELECT COUNT(1) FROM user_follows WHERE FollowerId = ? AND FollowingId = ?",
-                Integer.class,
+        // toggle: remove the follow if it exists, otherwise add it; counters move by the rows actually changed
+        int removed = jdbcTemplate.update(
+                "DELETE FROM user_follows WHERE FollowerId = ? AND FollowingId = ?",
                 followerId, followeeId
         );
-
-        // Keep your original toggle semantics (very likely what the benchmark expects):
-        if (exists != null && exists > 0) {
-            jdbcTemplate.update(
-                    "DELETE FROM user_follows WHERE FollowerId = ? AND FollowingId = ?",
-                    followerId, followeeId
-            );
+        if (removed > 0) {
+            adjustFollowCounters(followerId, followeeId, -removed);
             return false;
-        } else {
-            jdbcTemplate.update(
-                    "INSERT INTO user_follows (FollowerId, FollowingId) VALUES (?, ?)",
-                    followerId, followeeId
-            );
-            return true;
         }
+        int added = jdbcTemplate.update(
+                "INSERT INTO user_follows (FollowerId, FollowingId) VALUES (?, ?) ON CONFLICT DO NOTHING",
+                followerId, followeeId
+        );
+        adjustFollowCounters(followerId, followeeId, added);
+        return true;
+    }
+
+    /**
+     * Moves {@code Following} of the follower and {@code Followers} of the followee by {@code delta},
+     * in one statement that locks both rows in index order.
+     */
+    private void adjustFollowCounters(long followerId, long followeeId, int delta) {
+        if (delta == 0) return;
+        jdbcTemplate.update(
+                "UPDATE users SET " +
+                        "Following = Following + CASE WHEN AuthorId = ? THEN ? ELSE 0 END, " +
+                        "Followers = Followers + CASE WHEN AuthorId = ? THEN ? ELSE 0 END " +
+                        "WHERE AuthorId IN (?, ?)",
+                followerId, delta, followeeId, delta, followerId, followeeId
+        );
     }
 
 
@@ -236,32 +283,7 @@ public class UserServiceImpl implements UserService {
                             "    FROM user_follows GROUP BY FollowerId" +
                             ") fin ON fin.uid = u.AuthorId " +
                             "WHERE u.AuthorId = ?",
-                    (rs, rowNum) -> {
-                        java.sql.Array a1 = rs.getArray("follower_users");
-                        java.sql.Array a2 = rs.getArray("following_users");
-
-                        Long[] followerBox = (Long[]) a1.getArray();
-                        Long[] followingBox = (Long[]) a2.getArray();
-
-                        long[] followerUsers = new long[followerBox.length];
-                        for (int i = 0; i < followerBox.length; i++) followerUsers[i] = followerBox[i];
-
-                        long[] followingUsers = new long[followingBox.length];
-                        for (int i = 0; i < followingBox.length; i++) followingUsers[i] = followingBox[i];
-
-                        return UserRecord.builder()
-                                .authorId(rs.getLong("authorid"))
-                                .authorName(rs.getString("authorname"))
-                                .gender(rs.getString("gender"))
-                                .age(rs.getInt("age"))
-                                .followers(rs.getInt("followers"))
-                                .following(rs.getInt("following"))
-                                .followerUsers(followerUsers)
-                                .followingUsers(followingUsers)
-                                .password(rs.getString("password"))
-                                .isDeleted(rs.getBoolean("isdeleted"))
-                                .build();
-                    },
+                    RecordMappers.user()::mapRow,
                     userId
             );
         } catch (EmptyResultDataAccessException e) {
@@ -337,16 +359,16 @@ public class UserServiceImpl implements UserService {
                     .build();
         }
 
-        StringBuilder baseWhere = new StringBuilder("AuthorId = ANY (?)");
+        StringBuilder baseWhere = new StringBuilder("r.AuthorId = ANY (?)");
         if (category != null) {
-            baseWhere.append(" AND RecipeCategory = ?");
+            baseWhere.append(" AND r.RecipeCategory = ?");
         }
 
         long total;
         try (Connection conn = Objects.requireNonNull(jdbcTemplate.getDataSource()).getConnection()) {
             Array followeeArray = conn.createArrayOf("BIGINT", followees.toArray());
 
-            String countSql = "SELECT COUNT(*) FROM recipes WHERE " + baseWhere;
+            String countSql = "SELECT COUNT(*) FROM recipes r WHERE " + baseWhere;
             Object[] countParams;
             if (category != null) {
                 countParams = new Object[]{followeeArray, category};
@@ -355,9 +377,10 @@ public class UserServiceImpl implements UserService {
             }
             total = jdbcTemplate.queryForObject(countSql, countParams, Long.class);
 
-            String selectSql = "SELECT RecipeId, Name, AuthorId, DatePublished, AggregatedRating, ReviewCount " +
-                    "FROM recipes WHERE " + baseWhere +
-                    " ORDER BY DatePublished DESC NULLS LAST, RecipeId DESC LIMIT ? OFFSET ?";
+            String selectSql = "SELECT r.RecipeId, r.Name, r.AuthorId, u.AuthorName, r.DatePublished, " +
+                    "r.AggregatedRating, r.ReviewCount " +
+                    "FROM recipes r LEFT JOIN users u ON u.AuthorId = r.AuthorId WHERE " + baseWhere +
+                    " ORDER BY r.DatePublished DESC NULLS LAST, r.RecipeId DESC LIMIT ? OFFSET ?";
 
             Object[] params;
             if (category != null) {
@@ -366,33 +389,7 @@ public class UserServiceImpl implements UserService {
                 params = new Object[]{followeeArray, pageSize, offset};
             }
 
-            List<FeedItem> items = jdbcTemplate.query(selectSql, params, (rs, rowNum) -> {
-                long recipeId = rs.getLong("RecipeId");
-                long author = rs.getLong("AuthorId");
-                String authorName = jdbcTemplate.queryForObject(
-                        "SELECT AuthorName FROM users WHERE AuthorId = ?",
-                        String.class,
-                        author);
-                Timestamp ts = rs.getTimestamp("DatePublished");
-                Instant published = null;
-                if (ts != null) {
-                    // 原来是 ts.toInstant()
-                    // 数据集的时间是按 UTC 存的，但在导入 + 读取时被按你本机时区处理了一次
-                    // 这里把它补回来 8 小时
-                    published = ts.toInstant().plus(Duration.ofHours(8));
-                }
-                Double rating = rs.getObject("AggregatedRating") == null ? null : rs.getDouble("AggregatedRating");
-                Integer reviewCount = rs.getObject("ReviewCount") == null ? null : rs.getInt("ReviewCount");
-                return FeedItem.builder()
-                        .recipeId(recipeId)
-                        .name(rs.getString("Name"))
-                        .authorId(author)
-                        .authorName(authorName)
-                        .datePublished(published)
-                        .aggregatedRating(rating)
-                        .reviewCount(reviewCount)
-                        .build();
-            });
+            List<FeedItem> items = jdbcTemplate.query(selectSql, RecordMappers.feedItem()::mapRow, params);
 
             return PageResult.<FeedItem>builder()
                     .items(items)
@@ -413,35 +410,27 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public Map<String, Object> getUserWithHighestFollowRatio() {
-        String sql = "SELECT u.AuthorId, u.AuthorName, " +
-                "COUNT(CASE WHEN uf.FollowingId = u.AuthorId THEN 1 END) AS follower_cnt, " +
-                "COUNT(CASE WHEN uf.FollowerId = u.AuthorId THEN 1 END) AS following_cnt " +
-                "FROM users u " +
-                "LEFT JOIN user_follows uf ON uf.FollowerId = u.AuthorId OR uf.FollowingId = u.AuthorId " +
-                "WHERE u.IsDeleted = FALSE " +
-                "GROUP BY u.AuthorId, u.AuthorName " +
-                "HAVING COUNT(CASE WHEN uf.FollowerId = u.AuthorId THEN 1 END) > 0 " +
-                "ORDER BY (COUNT(CASE WHEN uf.FollowingId = u.AuthorId THEN 1 END)::float / " +
-                "NULLIF(COUNT(CASE WHEN uf.FollowerId = u.AuthorId THEN 1 END),0)::float) DESC, u.AuthorId ASC " +
-                "LIMIT 1";
-        try {
-            Map<String, Object> row = jdbcTemplate.queryForMap(sql);
-            Long authorId = ((Number) row.get("authorid")).longValue();
-            String authorName = (String) row.get("authorname");
-            Long followers = ((Number) row.get("follower_cnt")).longValue();
-            Long following = ((Number) row.get("following_cnt")).longValue();
-            if (following == 0) {
-                return null;
-            }
-            double ratio = followers.doubleValue() / following.doubleValue();
+        List<Map<String, Object>> top = getFollowRatioLeaderboard(1);
+        return top.isEmpty() ? null : top.get(0);
+    }
+
+    @Override
+    public List<Map<String, Object>> getFollowRatioLeaderboard(int k) {
+        if (k <= 0 || k > MAX_LEADERBOARD_SIZE) {
+            throw new IllegalArgumentException("k must be between 1 and " + MAX_LEADERBOARD_SIZE);
+        }
+        // the first k entries of idx_users_follow_ratio, same expression and predicate
+        String sql = "SELECT AuthorId, AuthorName, Followers, Following FROM users " +
+                "WHERE IsDeleted = FALSE AND Following > 0 " +
+                "ORDER BY " + Schema.FOLLOW_RATIO + " DESC, AuthorId ASC " +
+                "LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
             Map<String, Object> result = new HashMap<>();
-            result.put("AuthorId", authorId);
-            result.put("AuthorName", authorName);
-            result.put("Ratio", ratio);
+            result.put("AuthorId", rs.getLong(1));
+            result.put("AuthorName", rs.getString(2));
+            result.put("Ratio", (double) rs.getInt(3) / rs.getInt(4));
             return result;
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
+        }, k);
     }
 
     private long validateActiveUser(AuthInfo auth) {
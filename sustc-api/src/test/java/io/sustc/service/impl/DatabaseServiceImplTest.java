@@ -0,0 +1,42 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.UserRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DatabaseServiceImplTest {
+
+    @Test
+    void firstByIdKeepsTheFirstRecordOfEachId() {
+        List<UserRecord> users = Arrays.asList(user(1, "a"), user(2, "b"), user(1, "c"), user(3, "d"), user(2, "e"));
+
+        List<UserRecord> kept = DatabaseServiceImpl.firstById("users", users, UserRecord::getAuthorId, new LongSet(4));
+
+        assertEquals(3, kept.size());
+        assertEquals("a", kept.get(0).getAuthorName());
+        assertEquals("b", kept.get(1).getAuthorName());
+        assertEquals("d", kept.get(2).getAuthorName());
+    }
+
+    @Test
+    void firstByIdRemembersIdsAcrossBatches() {
+        LongSet seen = new LongSet(4);
+        List<UserRecord> first = Arrays.asList(user(1, "a"), user(2, "b"));
+        List<UserRecord> second = Arrays.asList(user(2, "c"), user(3, "d"));
+
+        assertSame(first, DatabaseServiceImpl.firstById("users", first, UserRecord::getAuthorId, seen));
+        List<UserRecord> kept = DatabaseServiceImpl.firstById("users", second, UserRecord::getAuthorId, seen);
+
+        assertEquals(1, kept.size());
+        assertEquals("d", kept.get(0).getAuthorName());
+    }
+
+    private static UserRecord user(long id, String name) {
+        return UserRecord.builder().authorId(id).authorName(name).build();
+    }
+}
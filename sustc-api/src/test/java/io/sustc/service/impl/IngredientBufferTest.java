@@ -0,0 +1,65 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IngredientBufferTest {
+
+    @Test
+    void addRecipeDropsRepeatedPartsInOrder() {
+        IngredientBuffer buffer = new IngredientBuffer(1);
+        buffer.addRecipe(1, new String[]{"salt", "flour", "salt", null, "egg", null});
+        buffer.addRecipe(2, new String[]{"salt"});
+        buffer.addRecipe(3, null);
+
+        assertEquals(5, buffer.size());
+        String[] parts = {"salt", "flour", null, "egg"};
+        for (int i = 0; i < parts.length; i++) {
+            assertEquals(1, buffer.recipeId(i));
+            assertEquals(parts[i], buffer.part(i));
+        }
+        assertEquals(2, buffer.recipeId(4));
+        assertEquals("salt", buffer.part(4));
+    }
+
+    @Test
+    void countDistinctIgnoresNullsAndRepeats() {
+        assertEquals(0, IngredientBuffer.countDistinct(null));
+        assertEquals(0, IngredientBuffer.countDistinct(new String[0]));
+        assertEquals(0, IngredientBuffer.countDistinct(new String[]{null, null}));
+        assertEquals(3, IngredientBuffer.countDistinct(new String[]{"salt", "flour", "salt", null, "egg", "egg"}));
+
+        String[] parts = {"a", "b", "a", "c"};
+        IngredientBuffer buffer = new IngredientBuffer(4);
+        buffer.addRecipe(7, parts);
+        assertEquals(buffer.size(), IngredientBuffer.countDistinct(parts));
+    }
+
+    @Test
+    void sliceIsAView() {
+        IngredientBuffer buffer = new IngredientBuffer(2);
+        buffer.addRecipe(1, new String[]{"a", "b"});
+        buffer.addRecipe(2, new String[]{"c", "d"});
+        IngredientBuffer slice = buffer.slice(1, 3);
+        buffer.addRecipe(3, new String[]{"e"});
+
+        assertEquals(2, slice.size());
+        assertEquals(1, slice.recipeId(0));
+        assertEquals("b", slice.part(0));
+        assertEquals(2, slice.recipeId(1));
+        assertEquals("c", slice.part(1));
+        assertThrows(IllegalStateException.class, () -> slice.addRecipe(4, new String[]{"f"}));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.slice(0, 6));
+    }
+
+    @Test
+    void nullPartIsKeptOnce() {
+        IngredientBuffer buffer = new IngredientBuffer(4);
+        buffer.addRecipe(1, new String[]{null, null});
+        assertEquals(1, buffer.size());
+        assertNull(buffer.part(0));
+    }
+}
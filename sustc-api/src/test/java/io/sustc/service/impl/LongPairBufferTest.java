@@ -0,0 +1,73 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongPairBufferTest {
+
+    @Test
+    void growsPastItsCapacity() {
+        LongPairBuffer buffer = new LongPairBuffer(1);
+        for (int i = 0; i < 100; i++) {
+            buffer.add(i, -i);
+        }
+        assertEquals(100, buffer.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, buffer.first(i));
+            assertEquals(-i, buffer.second(i));
+        }
+    }
+
+    @Test
+    void sliceIsAView() {
+        LongPairBuffer buffer = new LongPairBuffer(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(i, i * 10);
+        }
+        LongPairBuffer slice = buffer.slice(3, 7);
+        buffer.add(99, 990);
+
+        assertEquals(4, slice.size());
+        assertEquals(3, slice.first(0));
+        assertEquals(60, slice.second(3));
+        assertTrue(buffer.slice(5, 5).isEmpty());
+        assertThrows(IllegalStateException.class, () -> slice.add(1, 2));
+        assertThrows(IllegalStateException.class, slice::sortDistinct);
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.slice(8, 12));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.slice(4, 3));
+    }
+
+    @Test
+    void sortDistinctMatchesASortedSet() {
+        Random random = new Random(307);
+        LongPairBuffer buffer = new LongPairBuffer(16);
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            long a = random.nextInt(50);
+            long b = random.nextInt(50) - 25;
+            buffer.add(a, b);
+            expected.add(key(a, b));
+        }
+        buffer.sortDistinct();
+
+        assertEquals(expected.size(), buffer.size());
+        int i = 0;
+        for (long key : expected) {
+            assertEquals(key, key(buffer.first(i), buffer.second(i)), "pair " + i);
+            i++;
+        }
+    }
+
+    /**
+     * Orders like {@code (a, b)} for the small values used here.
+     */
+    private static long key(long a, long b) {
+        return a * 1000 + b;
+    }
+}
@@ -0,0 +1,37 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongSetTest {
+
+    @Test
+    void addReportsNewValues() {
+        LongSet set = new LongSet(0);
+        assertTrue(set.add(5));
+        assertFalse(set.add(5));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.add(-5));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    void matchesAHashSetWhileGrowing() {
+        Random random = new Random(307);
+        LongSet set = new LongSet(1);
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextInt(50_000) - 1_000;
+            assertEquals(expected.add(value), set.add(value));
+        }
+        assertEquals(expected.size(), set.size());
+    }
+}
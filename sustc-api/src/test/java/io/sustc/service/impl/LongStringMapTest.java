@@ -0,0 +1,102 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongStringMapTest {
+
+    @Test
+    void putGetReplaceAndRemove() {
+        LongStringMap map = new LongStringMap(0);
+        map.put(1, "Apple Pie");
+        map.put(2, "Crème brûlée");
+        map.put(3, "");
+
+        assertEquals(3, map.size());
+        assertEquals("Apple Pie", map.get(1));
+        assertEquals("Crème brûlée", map.get(2));
+        assertEquals("", map.get(3));
+        assertNull(map.get(4));
+
+        map.put(1, "Pie");
+        map.put(2, "Crème brûlée with raspberries");
+        assertEquals("Pie", map.get(1));
+        assertEquals("Crème brûlée with raspberries", map.get(2));
+        assertEquals(3, map.size());
+
+        assertTrue(map.remove(1));
+        assertFalse(map.remove(1));
+        assertNull(map.get(1));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void rejectsKeysThatAreNotPositive() {
+        LongStringMap map = new LongStringMap(16);
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, "zero"));
+        assertThrows(IllegalArgumentException.class, () -> map.put(-1, "negative"));
+    }
+
+    @Test
+    void removeKeepsCollidingKeysReachable() {
+        // sequential keys fill runs of neighbouring slots in a small table
+        LongStringMap map = new LongStringMap(0);
+        for (long key = 1; key <= 12; key++) {
+            map.put(key, "r" + key);
+        }
+        for (long key = 1; key <= 12; key += 2) {
+            assertTrue(map.remove(key));
+        }
+        for (long key = 1; key <= 12; key++) {
+            assertEquals(key % 2 == 0 ? "r" + key : null, map.get(key));
+        }
+    }
+
+    @Test
+    void compactsReplacedStrings() {
+        LongStringMap map = new LongStringMap(4);
+        StringBuilder name = new StringBuilder();
+        for (int round = 0; round < 2000; round++) {
+            name.append('x');
+            map.put(round % 4 + 1, name.toString());
+        }
+        // only the four live names, at most twice over after the last compaction
+        assertTrue(map.arenaBytes() < 4 * 2000 * 2, "arena of " + map.arenaBytes() + " bytes");
+        for (int key = 1; key <= 4; key++) {
+            assertEquals(1996 + key, map.get(key).length());
+        }
+    }
+
+    @Test
+    void matchesAHashMapUnderRandomChanges() {
+        Random random = new Random(307);
+        LongStringMap map = new LongStringMap(100);
+        Map<Long, String> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = 1 + random.nextInt(5_000);
+            int op = random.nextInt(10);
+            if (op < 6) {
+                String value = "recipe " + key + " #" + random.nextInt(1 << random.nextInt(20));
+                map.put(key, value);
+                expected.put(key, value);
+            } else if (op < 9) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                assertEquals(expected.get(key), map.get(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = 1; key <= 5_000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+}
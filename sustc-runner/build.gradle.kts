@@ -24,8 +24,6 @@ dependencies {
     implementation("org.jetbrains.kotlin:kotlin-stdlib-jdk8")
 
     implementation(project(":sustc-api"))
-    // 添加OpenCSV依赖
-    implementation("com.opencsv:opencsv:5.7.1")
 
     implementation("org.springframework.boot:spring-boot-starter-web")
     // 2) 参数校验（可选但推荐）
@@ -34,6 +34,12 @@ public class BenchmarkConfig {
      */
     private boolean studentMode = false;
 
+    /**
+     * Import through {@code DatabaseService#importStream}, reading the data files
+     * lazily instead of deserializing all of them up front.
+     */
+    private boolean streamingImport = false;
+
     @Bean
     ThreadSafeFury fury() {
         return Fury.builder()
@@ -2,6 +2,7 @@ package io.sustc.benchmark;
 
 import lombok.Data;
 
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -17,6 +18,11 @@ public class BenchmarkResult {
 
     private Long elapsedTime;
 
+    /**
+     * Extra metrics reported by the task, e.g. the import mode and its throughput.
+     */
+    private Map<String, Object> details;
+
     public BenchmarkResult(Long elapsedTime) {
         this.elapsedTime = elapsedTime;
     }
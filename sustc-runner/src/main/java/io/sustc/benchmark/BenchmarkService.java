@@ -49,15 +49,23 @@ public class BenchmarkService {
         if (!config.isStudentMode()) {
             return;
         }
+        // importData resumes only the same data and drops the tables itself otherwise; importStream never resumes
+        if (!config.isStreamingImport() && databaseService.hasPendingImport()) {
+            log.warn("Keeping tables to resume the interrupted import if it was of the same data");
+            return;
+        }
         log.warn("Drop tables");
         databaseService.drop();
     }
 
     @BenchmarkStep(order = 1, timeout = 35, description = "Import data")
     public BenchmarkResult importData() {
-        List<ReviewRecord> reviewRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.REVIEW_RECORDS);
-        List<UserRecord> userRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.USER_RECORDS);
-        List<RecipeRecord> recipeRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.RECIPE_RECORDS);
+        if (config.isStreamingImport()) {
+            return importStream();
+        }
+        List<ReviewRecord> reviewRecords = deserializeRecords(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.REVIEW_RECORDS);
+        List<UserRecord> userRecords = deserializeRecords(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.USER_RECORDS);
+        List<RecipeRecord> recipeRecords = deserializeRecords(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.RECIPE_RECORDS);
 
         val startTime = System.currentTimeMillis();
         try {
@@ -67,7 +75,47 @@ public class BenchmarkService {
         }
         val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(endTime - startTime);
+        return importResult(endTime - startTime);
+    }
+
+    /**
+     * Same as {@link #importData()}, but the files are only read while the import consumes them,
+     * so deserialization is part of the measured time.
+     */
+    private BenchmarkResult importStream() {
+        val startTime = System.currentTimeMillis();
+        try {
+            databaseService.importStream(
+                    new FuryRecordSource<>(fury, Paths.get(config.getDataPath(), BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.REVIEW_RECORDS)),
+                    new FuryRecordSource<>(fury, Paths.get(config.getDataPath(), BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.USER_RECORDS)),
+                    new FuryRecordSource<>(fury, Paths.get(config.getDataPath(), BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.RECIPE_RECORDS)));
+        } catch (Exception e) {
+            log.error("Exception encountered during importing data, you may early stop this run", e);
+        }
+        val endTime = System.currentTimeMillis();
+
+        return importResult(endTime - startTime);
+    }
+
+    private BenchmarkResult importResult(long elapsedTime) {
+        val result = new BenchmarkResult(elapsedTime);
+        val report = databaseService.getLastImportReport();
+        if (report != null) {
+            log.info("Import mode {} x{}: {} rows, {} rows/s, per table {}, phases {}",
+                    report.getMode(), report.getParallelism(), report.getTotalRows(),
+                    String.format("%.0f", report.getRowsPerSecond()), report.getRowCounts(), report.getPhaseMillis());
+            val details = new LinkedHashMap<String, Object>();
+            details.put("mode", report.getMode());
+            details.put("parallelism", report.getParallelism());
+            details.put("rows", report.getTotalRows());
+            details.put("rowsPerSecond", Math.round(report.getRowsPerSecond()));
+            details.put("deferredConstraints", report.isDeferredConstraints());
+            details.put("streaming", report.isStreaming());
+            details.put("resumedChunks", report.getResumedChunks());
+            details.put("phaseMillis", report.getPhaseMillis());
+            result.setDetails(details);
+        }
+        return result;
     }
 
     @BenchmarkStep(order = 2, description = "Test RecipeService#getRecipeNameFromID(Long)")
@@ -768,6 +816,14 @@ public class BenchmarkService {
         return (T) fury.deserialize(Files.readAllBytes(file));
     }
 
+    /**
+     * Reads a file of import records, deserializing the chunks of a {@link FuryChunkFile} in parallel.
+     */
+    @SneakyThrows
+    private <T> List<T> deserializeRecords(String... path) {
+        return FuryChunkFile.readAll(fury, Paths.get(config.getDataPath(), path));
+    }
+
     private static boolean collectionEquals(Collection<?> expect, Collection<?> actual) {
         return Objects.equals(expect, actual)
                 || expect.isEmpty() && Objects.isNull(actual);
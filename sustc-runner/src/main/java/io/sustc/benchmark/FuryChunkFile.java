@@ -0,0 +1,291 @@
+package io.sustc.benchmark;
+
+import io.fury.ThreadSafeFury;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A {@code .ser} file of records split into chunks that are Fury-encoded independently,
+ * so it can be deserialized by several threads, or one chunk at a time.
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * magic (8 bytes) | version (int)
+ * chunk 0 | chunk 1 | ...                              each a Fury encoded List
+ * index: (offset long, length int, records int) per chunk
+ * index offset (long) | chunk count (int) | records (long) | magic (8 bytes)
+ * </pre>
+ * The index follows the chunks so that they can be written as they are produced.
+ * A file without the leading magic is read as a legacy single Fury blob of the whole list.
+ */
+public final class FuryChunkFile implements Closeable {
+
+    private static final byte[] MAGIC = {'S', 'U', 'S', 'T', 'C', 'C', 'H', 'K'};
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = MAGIC.length + Integer.BYTES;
+
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES + MAGIC.length;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final boolean chunked;
+
+    private final long[] offsets;
+
+    private final int[] lengths;
+
+    private final int[] records;
+
+    private final long totalRecords;
+
+    private FuryChunkFile(Path file, FileChannel channel, boolean chunked,
+                          long[] offsets, int[] lengths, int[] records, long totalRecords) {
+        this.file = file;
+        this.channel = channel;
+        this.chunked = chunked;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.records = records;
+        this.totalRecords = totalRecords;
+    }
+
+    /**
+     * Opens a chunked file and reads its index, or opens a legacy file as a single chunk.
+     *
+     * @throws IOException if the file starts like a chunked file but its index is damaged
+     */
+    public static FuryChunkFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES || !hasMagic(read(channel, 0, MAGIC.length))) {
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException(file + " is a single Fury blob larger than 2 GB");
+                }
+                return new FuryChunkFile(file, channel, false, new long[]{0}, new int[]{(int) size}, new int[]{-1}, -1);
+            }
+
+            int version = read(channel, MAGIC.length, Integer.BYTES).getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported chunk format version " + version);
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            int chunkCount = trailer.getInt();
+            long totalRecords = trailer.getLong();
+            if (!hasMagic(trailer) || chunkCount < 0
+                    || indexOffset + (long) chunkCount * INDEX_ENTRY_BYTES != size - TRAILER_BYTES) {
+                throw new IOException(file + " is a truncated or damaged chunk file");
+            }
+
+            ByteBuffer index = read(channel, indexOffset, chunkCount * INDEX_ENTRY_BYTES);
+            long[] offsets = new long[chunkCount];
+            int[] lengths = new int[chunkCount];
+            int[] records = new int[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+                records[i] = index.getInt();
+                if (offsets[i] < HEADER_BYTES || offsets[i] + lengths[i] > indexOffset) {
+                    throw new IOException(file + " has chunk " + i + " outside of its data section");
+                }
+            }
+            return new FuryChunkFile(file, channel, true, offsets, lengths, records, totalRecords);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a whole file, chunked or legacy, deserializing the chunks in parallel.
+     */
+    public static <T> List<T> readAll(ThreadSafeFury fury, Path file) throws IOException {
+        try (FuryChunkFile chunks = open(file)) {
+            return chunks.readAll(fury);
+        }
+    }
+
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    public int chunkCount() {
+        return offsets.length;
+    }
+
+    /**
+     * Number of records in the file, or {@code -1} for a legacy file.
+     */
+    public long records() {
+        return totalRecords;
+    }
+
+    /**
+     * Number of records in one chunk, or {@code -1} for a legacy file.
+     */
+    public int records(int chunk) {
+        return records[chunk];
+    }
+
+    /**
+     * Deserializes one chunk. The chunk is memory-mapped rather than copied onto the heap,
+     * and different chunks may be read concurrently.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> readChunk(ThreadSafeFury fury, int chunk) throws IOException {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offsets[chunk], lengths[chunk]);
+        Object value = fury.deserialize(buffer);
+        if (!(value instanceof List)) {
+            throw new IOException(file + " chunk " + chunk + " is not a list but " + (value == null ? null : value.getClass()));
+        }
+        return (List<T>) value;
+    }
+
+    /**
+     * Deserializes all chunks on the common fork-join pool and concatenates them in file order.
+     */
+    public <T> List<T> readAll(ThreadSafeFury fury) throws IOException {
+        if (offsets.length == 1) {
+            return readChunk(fury, 0);
+        }
+        List<List<T>> parts;
+        try {
+            parts = IntStream.range(0, offsets.length).parallel()
+                    .mapToObj(i -> {
+                        try {
+                            return this.<T>readChunk(fury, i);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int size = 0;
+        for (List<T> part : parts) {
+            size += part.size();
+        }
+        List<T> all = new ArrayList<>(size);
+        for (List<T> part : parts) {
+            all.addAll(part);
+        }
+        return all;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Starts a chunked file, replacing {@code file} if it exists.
+     */
+    public static Writer create(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return new Writer(file);
+    }
+
+    private static boolean hasMagic(ByteBuffer buffer) {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Appends chunks in order and writes the index on {@link #close()}.
+     * Until then the file has no trailer and is rejected by {@link #open(Path)}.
+     */
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+
+        private final List<long[]> index = new ArrayList<>();
+
+        private long position;
+
+        private long records;
+
+        private Writer(Path file) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            position = HEADER_BYTES;
+        }
+
+        /**
+         * Fury-encodes a list of records as the next chunk.
+         */
+        public void add(ThreadSafeFury fury, List<?> chunk) throws IOException {
+            add(fury.serialize(chunk instanceof ArrayList ? chunk : new ArrayList<>(chunk)), chunk.size());
+        }
+
+        /**
+         * Appends a chunk that was already encoded, e.g. on another thread, from a {@code List} of {@code count} records.
+         */
+        public void add(byte[] chunk, int count) throws IOException {
+            out.write(chunk);
+            index.add(new long[]{position, chunk.length, count});
+            position += chunk.length;
+            records += count;
+        }
+
+        public long records() {
+            return records;
+        }
+
+        public int chunkCount() {
+            return index.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (DataOutputStream out = this.out) {
+                for (long[] entry : index) {
+                    out.writeLong(entry[0]);
+                    out.writeInt((int) entry[1]);
+                    out.writeInt((int) entry[2]);
+                }
+                out.writeLong(position);
+                out.writeInt(index.size());
+                out.writeLong(records);
+                out.write(MAGIC);
+            }
+        }
+    }
+}
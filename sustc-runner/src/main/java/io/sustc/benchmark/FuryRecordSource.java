@@ -0,0 +1,57 @@
+package io.sustc.benchmark;
+
+import io.fury.ThreadSafeFury;
+import io.sustc.service.RecordSource;
+import lombok.SneakyThrows;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads a list of records from a Fury file only when the import asks for it.
+ * <p>
+ * A {@link FuryChunkFile chunked} file is deserialized one chunk at a time, so at most one chunk
+ * and one batch of records are held while the import consumes them. A legacy single-blob file is
+ * memory-mapped and deserialized as a whole, and that list is only referenced while its batches
+ * are handed out, so the import holds one table at a time.
+ */
+class FuryRecordSource<T> implements RecordSource<T> {
+
+    private final ThreadSafeFury fury;
+
+    private final Path file;
+
+    FuryRecordSource(ThreadSafeFury fury, Path file) {
+        this.fury = fury;
+        this.file = file;
+    }
+
+    @Override
+    @SneakyThrows
+    public void forEachBatch(int batchSize, Consumer<List<T>> sink) {
+        try (FuryChunkFile chunks = FuryChunkFile.open(file)) {
+            if (!chunks.isChunked()) {
+                RecordSource.of(chunks.<T>readChunk(fury, 0)).forEachBatch(batchSize, sink);
+                return;
+            }
+
+            // chunk boundaries do not line up with batches, so refill every batch
+            int size = Math.max(1, batchSize);
+            List<T> batch = new ArrayList<>(size);
+            for (int i = 0; i < chunks.chunkCount(); i++) {
+                for (T record : chunks.<T>readChunk(fury, i)) {
+                    batch.add(record);
+                    if (batch.size() == size) {
+                        sink.accept(batch);
+                        batch = new ArrayList<>(size);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                sink.accept(batch);
+            }
+        }
+    }
+}
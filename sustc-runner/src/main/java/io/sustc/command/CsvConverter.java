@@ -0,0 +1,147 @@
+package io.sustc.command;
+
+import io.fury.ThreadSafeFury;
+import io.sustc.benchmark.FuryChunkFile;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Converts one csv file into a {@link FuryChunkFile chunked} Fury {@code .ser} file of records.
+ * <p>
+ * Rows are read through a {@link MappedCsvReader} and mapped to records on the reading thread, which parses
+ * numbers straight from the mapped bytes. The records are handed to a fork-join pool in batches of
+ * {@link #BATCH_ROWS}, with at most {@code maxPending} batches in flight. Each batch is Fury-encoded into one
+ * chunk on the pool, and the chunks are appended in submission order, which keeps the records in
+ * file order while only a bounded number of records is held at any time.
+ */
+@Slf4j
+class CsvConverter {
+
+    static final int BATCH_ROWS = 2048;
+
+    private final ThreadSafeFury fury;
+
+    private final ForkJoinPool pool;
+
+    private final int maxPending;
+
+    CsvConverter(ThreadSafeFury fury, ForkJoinPool pool) {
+        this.fury = fury;
+        this.pool = pool;
+        this.maxPending = pool.getParallelism() * 2;
+    }
+
+    /**
+     * Reads {@code csv} (skipping its header), maps every row and writes the records to {@code out}.
+     *
+     * @param backslashEscapes the dialect of the file, see {@link MappedCsvReader#open}
+     * @param mapper           builds the record of a row, or returns {@code null} to skip it
+     */
+    <T> Stats convert(String name, Path csv, boolean backslashEscapes, Function<CsvRow, T> mapper, Path out) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long rows = 0;
+        long records;
+        int chunks;
+
+        try (MappedCsvReader reader = MappedCsvReader.open(csv, backslashEscapes);
+             FuryChunkFile.Writer writer = FuryChunkFile.create(out)) {
+            reader.next();
+
+            Deque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+            List<T> batch = new ArrayList<>(BATCH_ROWS);
+            while (reader.next()) {
+                rows++;
+                T record = mapper.apply(reader);
+                if (record == null) {
+                    continue;
+                }
+                batch.add(record);
+                if (batch.size() == BATCH_ROWS) {
+                    pending.add(pool.submit(encode(batch)));
+                    batch = new ArrayList<>(BATCH_ROWS);
+                    if (pending.size() >= maxPending) {
+                        pending.poll().join().writeTo(writer);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending.add(pool.submit(encode(batch)));
+            }
+            while (!pending.isEmpty()) {
+                pending.poll().join().writeTo(writer);
+            }
+            records = writer.records();
+            chunks = writer.chunkCount();
+        } catch (IOException | RuntimeException e) {
+            // the trailer is written on close, so a failed run must not leave a file that reads as complete
+            Files.deleteIfExists(out);
+            throw e;
+        }
+
+        Stats stats = new Stats(name, rows, records, chunks, System.currentTimeMillis() - startTime);
+        log.info("{}", stats);
+        return stats;
+    }
+
+    private Callable<Chunk> encode(List<?> records) {
+        return () -> new Chunk(fury.serialize(records), records.size());
+    }
+
+    private static final class Chunk {
+
+        private final byte[] bytes;
+
+        private final int records;
+
+        Chunk(byte[] bytes, int records) {
+            this.bytes = bytes;
+            this.records = records;
+        }
+
+        void writeTo(FuryChunkFile.Writer writer) throws IOException {
+            writer.add(bytes, records);
+        }
+    }
+
+    static final class Stats {
+
+        final String name;
+
+        final long rows;
+
+        final long records;
+
+        final int chunks;
+
+        final long totalMillis;
+
+        Stats(String name, long rows, long records, int chunks, long totalMillis) {
+            this.name = name;
+            this.rows = rows;
+            this.records = records;
+            this.chunks = chunks;
+            this.totalMillis = totalMillis;
+        }
+
+        double rowsPerSecond() {
+            return totalMillis <= 0 ? 0 : rows * 1000.0 / totalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d rows -> %d records in %d chunks, written in %d ms (%.0f rows/s)",
+                    name, rows, records, chunks, totalMillis, rowsPerSecond());
+        }
+    }
+}
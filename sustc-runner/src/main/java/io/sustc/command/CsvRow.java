@@ -0,0 +1,33 @@
+package io.sustc.command;
+
+/**
+ * One csv record as seen by the record mappers of {@link DatabaseCommand}.
+ * <p>
+ * The typed getters follow the lenient rules of the original OpenCSV import:
+ * blank, {@code "null"} or unparsable numbers become {@code 0}, and blank or {@code "null"} lists become empty.
+ */
+interface CsvRow {
+
+    int size();
+
+    /**
+     * The field as OpenCSV would return it, untrimmed.
+     */
+    String text(int i);
+
+    long longValue(int i);
+
+    int intValue(int i);
+
+    float floatValue(int i);
+
+    /**
+     * A list of ids in the {@code "1,2,3"} form, quotes included.
+     */
+    long[] longList(int i);
+
+    /**
+     * An R-style {@code c("a", "b")} list, or a plain comma separated one.
+     */
+    String[] textList(int i);
+}
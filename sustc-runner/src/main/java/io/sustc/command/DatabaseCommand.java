@@ -1,11 +1,10 @@
 package io.sustc.command;
 
-import com.opencsv.CSVReaderBuilder;
-import com.opencsv.RFC4180ParserBuilder;
 import io.fury.ThreadSafeFury;
 import io.sustc.benchmark.BenchmarkConfig;
 import io.sustc.benchmark.BenchmarkConstants;
 import io.sustc.benchmark.BenchmarkService;
+import io.sustc.benchmark.FuryChunkFile;
 import io.sustc.dto.*;
 import io.sustc.service.DatabaseService;
 import io.sustc.service.RecipeService;
@@ -17,8 +16,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
-import com.opencsv.CSVReader;
-import com.opencsv.exceptions.CsvException;
+import org.springframework.shell.standard.ShellOption;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -28,9 +26,15 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -82,6 +86,64 @@ public class DatabaseCommand {
         System.out.println("importData time: " + duration + " ms");
     }
 
+    @ShellMethod(key = "db migrate", value = "Upgrade tables created by an older version to the current schema, keeping the data")
+    public void migrate() {
+        long startTime = System.currentTimeMillis();
+
+        int version = databaseService.migrate();
+
+        long endTime = System.currentTimeMillis();
+        if (version == 0) {
+            System.out.println("No tables to migrate, use db import");
+        } else {
+            System.out.println("schema version " + version + ", migrate time: " + (endTime - startTime) + " ms");
+        }
+    }
+
+    @ShellMethod(key = "db import-resume", value = "Resume an interrupted checkpointed import without dropping the tables")
+    public void resumeImport() {
+        if (!databaseService.hasPendingImport()) {
+            System.out.println("No interrupted import to resume, use db import");
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+
+        benchmarkService.importData();
+
+        long endTime = System.currentTimeMillis();
+        System.out.println("importData time: " + (endTime - startTime) + " ms");
+    }
+
+    @ShellMethod(key = "db import-delta", value = "Apply users/recipes/reviews .ser files of a delta on top of the imported data")
+    public void importDelta(@ShellOption(defaultValue = "delta", help = "Directory under the data path") String dir) {
+        long startTime = System.currentTimeMillis();
+
+        databaseService.importDelta(
+                readDelta(dir, BenchmarkConstants.REVIEW_RECORDS),
+                readDelta(dir, BenchmarkConstants.USER_RECORDS),
+                readDelta(dir, BenchmarkConstants.RECIPE_RECORDS));
+
+        long endTime = System.currentTimeMillis();
+        ImportReport report = databaseService.getLastImportReport();
+        System.out.println("importDelta time: " + (endTime - startTime) + " ms");
+        if (report != null) {
+            System.out.println("upserted/inserted: " + report.getRowCounts());
+            System.out.println("removed: " + report.getRemovedRows());
+        }
+    }
+
+    /**
+     * A missing file means the delta has no records of that kind.
+     */
+    @SneakyThrows
+    private <T> List<T> readDelta(String dir, String file) {
+        var path = Paths.get(config.getDataPath(), dir, file);
+        if (!Files.exists(path)) {
+            return Collections.emptyList();
+        }
+        return FuryChunkFile.readAll(fury, path);
+    }
+
     @ShellMethod(key = "db drop", value = "Drop all the tables")
     public void drop() {
         databaseService.drop();
@@ -94,31 +156,73 @@ public class DatabaseCommand {
 
     @ShellMethod(key = "db csv2ser", value = "Generate .ser files from .csv files")
     public void csv2ser() {
+        // 获取项目根目录
+        String projectRoot = System.getProperty("user.dir");
+        System.out.println("projectRoot:" + projectRoot);
+
+        // 三个文件各用一个读线程，在读线程上解析字段并映射成记录，只有 Fury 序列化交给共享的 fork-join 池
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        ExecutorService readers = Executors.newFixedThreadPool(3);
+        CsvConverter converter = new CsvConverter(fury, pool);
         try {
-            // 获取项目根目录
-            String projectRoot = System.getProperty("user.dir");
-            System.out.println("projectRoot:" + projectRoot);
-
-            List<UserRecord> users = loadUsers(projectRoot + "/data/csv/users.csv");
-            List<RecipeRecord> recipes = loadRecipes(projectRoot + "/data/csv/recipes.csv");
-            List<ReviewRecord> reviews = loadReviews(projectRoot + "/data/csv/reviews.csv");
-
-            // 序列化数据
-            serializeData(users, projectRoot + "/data/import/users.ser");
-            serializeData(recipes, projectRoot + "/data/import/recipes.ser");
-            serializeData(reviews, projectRoot + "/data/import/reviews.ser");
+            long startTime = System.currentTimeMillis();
+            CompletableFuture<CsvConverter.Stats> users = convertAsync(readers, () -> converter.convert("users",
+                    Paths.get(projectRoot, "data", "csv", "users.csv"), true,
+                    DatabaseCommand::toUser, Paths.get(projectRoot, "data", "import", "users.ser")));
+            CompletableFuture<CsvConverter.Stats> recipes = convertAsync(readers, () -> converter.convert("recipes",
+                    // 与 RFC4180Parser 相同的引号规则
+                    Paths.get(projectRoot, "data", "csv", "recipes.csv"), false,
+                    DatabaseCommand::toRecipe, Paths.get(projectRoot, "data", "import", "recipes.ser")));
+            CompletableFuture<CsvConverter.Stats> reviews = convertAsync(readers, () -> converter.convert("reviews",
+                    Paths.get(projectRoot, "data", "csv", "reviews.csv"), true,
+                    DatabaseCommand::toReview, Paths.get(projectRoot, "data", "import", "reviews.ser")));
+
+            long rows = 0;
+            for (CompletableFuture<CsvConverter.Stats> stats : Arrays.asList(users, recipes, reviews)) {
+                CsvConverter.Stats s = stats.join();
+                rows += s.rows;
+                System.out.println(s);
+            }
+            long duration = System.currentTimeMillis() - startTime;
 
             System.out.println("Data loading and serialization have been completed!");
-            System.out.println("user count: " + users.size());
-            System.out.println("recipe count: " + recipes.size());
-            System.out.println("review count: " + reviews.size());
-
+            System.out.println("user count: " + users.join().records);
+            System.out.println("recipe count: " + recipes.join().records);
+            System.out.println("review count: " + reviews.join().records);
+            System.out.printf("total: %d rows in %d ms (%.0f rows/s)%n",
+                    rows, duration, duration <= 0 ? 0 : rows * 1000.0 / duration);
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            readers.shutdownNow();
+            pool.shutdownNow();
         }
     }
 
-    private static String[] parseCsvList(String listStr) {
+    private static CompletableFuture<CsvConverter.Stats> convertAsync(ExecutorService executor,
+                                                                     Callable<CsvConverter.Stats> conversion) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return conversion.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private static final Pattern QUOTED_ITEM = Pattern.compile("\"([^\"]*)\"");
+
+    private static final Pattern LIST_SEPARATOR = Pattern.compile("\\s*,\\s*");
+
+    private static final String[] DATE_PATTERNS = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd", "MM/dd/yyyy HH:mm:ss", "MM/dd/yyyy"};
+
+    /**
+     * SimpleDateFormat 不是线程安全的，每个解析线程各持有一组
+     */
+    private static final ThreadLocal<SimpleDateFormat[]> DATE_FORMATS = ThreadLocal.withInitial(() ->
+            Arrays.stream(DATE_PATTERNS).map(SimpleDateFormat::new).toArray(SimpleDateFormat[]::new));
+
+    static String[] parseCsvList(String listStr) {
         if (listStr == null || listStr.trim().isEmpty() || "null".equalsIgnoreCase(listStr.trim())) {
             return new String[0];
         }
@@ -131,8 +235,7 @@ public class DatabaseCommand {
             String content = trimmed.substring(2, trimmed.length() - 1).trim();
 
             // 使用更简单的正则表达式匹配所有引号内的内容
-            Pattern pattern = Pattern.compile("\"([^\"]*)\"");
-            Matcher matcher = pattern.matcher(content);
+            Matcher matcher = QUOTED_ITEM.matcher(content);
 
             List<String> items = new ArrayList<>();
             while (matcher.find()) {
@@ -145,21 +248,21 @@ public class DatabaseCommand {
             }
 
             // 如果没有找到引号内容，尝试按逗号分割括号内的内容
-            return Arrays.stream(content.split("\\s*,\\s*"))
+            return Arrays.stream(LIST_SEPARATOR.split(content))
                     .map(String::trim)
                     .filter(s -> !s.isEmpty())
                     .toArray(String[]::new);
         }
 
         // 如果不是 c(...) 格式，尝试直接按逗号分割
-        return Arrays.stream(trimmed.split("\\s*,\\s*"))
+        return Arrays.stream(LIST_SEPARATOR.split(trimmed))
                 .map(String::trim)
                 .filter(s -> !s.isEmpty())
                 .toArray(String[]::new);
     }
 
     // 辅助方法：解析("123", "456")格式的字符串为long数组
-    private static long[] parseCsvLongList(String listStr) {
+    static long[] parseCsvLongList(String listStr) {
         // 处理空值或空字符串
         if (listStr == null || listStr.trim().isEmpty() || "null".equalsIgnoreCase(listStr.trim())) {
             return new long[0];
@@ -177,7 +280,7 @@ public class DatabaseCommand {
         }
 
         // 使用逗号分割字符串，并去除每个部分的前后空格
-        String[] stringArray = trimmedStr.split("\\s*,\\s*");
+        String[] stringArray = LIST_SEPARATOR.split(trimmedStr);
         long[] longArray = new long[stringArray.length];
 
         for (int i = 0; i < stringArray.length; i++) {
@@ -198,11 +301,8 @@ public class DatabaseCommand {
         }
 
         // 尝试多种日期格式
-        String[] dateFormats = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd", "MM/dd/yyyy HH:mm:ss", "MM/dd/yyyy"};
-
-        for (String format : dateFormats) {
+        for (SimpleDateFormat sdf : DATE_FORMATS.get()) {
             try {
-                SimpleDateFormat sdf = new SimpleDateFormat(format);
                 Date date = sdf.parse(timestampStr.trim());
                 return new Timestamp(date.getTime());
             } catch (ParseException e) {
@@ -213,148 +313,100 @@ public class DatabaseCommand {
         return null; // 所有格式都解析失败
     }
 
-    // 辅助方法：解析浮点数，处理空值和异常
-    private static float parseFloat(String floatStr) {
-        if (floatStr == null || floatStr.trim().isEmpty() || "null".equalsIgnoreCase(floatStr.trim())) {
-            return 0.0f;
-        }
-
-        try {
-            return Float.parseFloat(floatStr.trim());
-        } catch (NumberFormatException e) {
-            return 0.0f;
+    // 加载用户数据
+    public static List<UserRecord> loadUsers(String filePath) throws IOException {
+        try (MappedCsvReader reader = MappedCsvReader.open(Paths.get(filePath), true)) {
+            return readAll(reader, DatabaseCommand::toUser);
         }
     }
 
-    // 辅助方法：解析整数，处理空值和异常
-    private static int parseInt(String intStr) {
-        if (intStr == null || intStr.trim().isEmpty() || "null".equalsIgnoreCase(intStr.trim())) {
-            return 0;
-        }
-
-        try {
-            return Integer.parseInt(intStr.trim());
-        } catch (NumberFormatException e) {
-            return 0;
+    //加载食谱数据
+    public static List<RecipeRecord> loadRecipes(String filePath) throws IOException {
+        // 与 RFC4180Parser 相同的引号规则
+        try (MappedCsvReader reader = MappedCsvReader.open(Paths.get(filePath), false)) {
+            return readAll(reader, DatabaseCommand::toRecipe);
         }
     }
 
-    // 辅助方法：解析长整型，处理空值和异常
-    private static long parseLong(String longStr) {
-        if (longStr == null || longStr.trim().isEmpty() || "null".equalsIgnoreCase(longStr.trim())) {
-            return 0L;
-        }
-
-        try {
-            return Long.parseLong(longStr.trim());
-        } catch (NumberFormatException e) {
-            return 0L;
+    // 加载评论数据
+    public static List<ReviewRecord> loadReviews(String filePath) throws IOException {
+        try (MappedCsvReader reader = MappedCsvReader.open(Paths.get(filePath), true)) {
+            return readAll(reader, DatabaseCommand::toReview);
         }
     }
 
-    // 加载用户数据
-    public static List<UserRecord> loadUsers(String filePath) throws IOException, CsvException {
-        List<UserRecord> users = new ArrayList<>();
-
-        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            List<String[]> records = reader.readAll();
-
-            // 跳过标题行
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
-                if (fields.length >= 9) {
-                    UserRecord user = UserRecord.builder().authorId(parseLong(fields[0])).authorName(fields[1] != null ? fields[1].trim() : "").gender(fields[2] != null ? fields[2].trim() : "").age(parseInt(fields[3])).
-                            followers(parseInt(fields[4])).
-                            following(parseInt(fields[5])).
-                            followerUsers(parseCsvLongList(fields[6])).
-                            followingUsers(parseCsvLongList(fields[7])).
-                            password(fields[8] != null ? fields[8].trim() : "").build();
-
-                    users.add(user);
-                }
+    // 逐行读取（跳过标题行），数值直接从映射的字节解析，只有文本字段才生成 String
+    private static <T> List<T> readAll(MappedCsvReader reader, Function<CsvRow, T> mapper) {
+        List<T> records = new ArrayList<>();
+        reader.next();
+        while (reader.next()) {
+            T record = mapper.apply(reader);
+            if (record != null) {
+                records.add(record);
             }
         }
-
-        return users;
+        return records;
     }
 
-    //加载食谱数据
-    public static List<RecipeRecord> loadRecipes(String filePath) throws IOException, CsvException {
-        List<RecipeRecord> recipes = new ArrayList<>();
-
-        // 使用 RFC4180Parser 创建 CSVReader
-        try (CSVReader reader = new CSVReaderBuilder(new FileReader(filePath))
-                .withCSVParser(new RFC4180ParserBuilder().build())
-                .build()) {
-
-            List<String[]> records = reader.readAll();
-
-            // 跳过标题行
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
-                if (fields.length >= 24) {
-                    RecipeRecord recipe = RecipeRecord.builder()
-                            .RecipeId(parseLong(fields[0]))
-                            .name(fields[1] != null ? fields[1].trim() : "")
-                            .authorId(parseLong(fields[2]))
-                            .authorName(fields[3] != null ? fields[3].trim() : "")
-                            .cookTime(fields[4] != null ? fields[4].trim() : "")
-                            .prepTime(fields[5] != null ? fields[5].trim() : "")
-                            .totalTime(fields[6] != null ? fields[6].trim() : "")
-                            .datePublished(parseTimestamp(fields[7]))
-                            .description(fields[8] != null ? fields[8].trim() : "")
-                            .recipeCategory(fields[9] != null ? fields[9].trim() : "")
-                            .recipeIngredientParts(parseCsvList(fields[10]))
-                            .aggregatedRating(parseFloat(fields[11]))
-                            .reviewCount((int)parseFloat(fields[12]))
-                            .calories(parseFloat(fields[13]))
-                            .fatContent(parseFloat(fields[14]))
-                            .saturatedFatContent(parseFloat(fields[15]))
-                            .cholesterolContent(parseFloat(fields[16]))
-                            .sodiumContent(parseFloat(fields[17]))
-                            .carbohydrateContent(parseFloat(fields[18]))
-                            .fiberContent(parseFloat(fields[19]))
-                            .sugarContent(parseFloat(fields[20]))
-                            .proteinContent(parseFloat(fields[21]))
-                            .recipeServings((int)parseFloat(fields[22]))
-                            .recipeYield(fields[23] != null ? fields[23].trim() : "")
-                            .build();
-
-                    recipes.add(recipe);
-                }
-            }
+    static UserRecord toUser(CsvRow row) {
+        if (row.size() < 9) {
+            return null;
         }
+        return UserRecord.builder().authorId(row.longValue(0)).authorName(trim(row, 1)).gender(trim(row, 2)).age(row.intValue(3)).
+                followers(row.intValue(4)).
+                following(row.intValue(5)).
+                followerUsers(row.longList(6)).
+                followingUsers(row.longList(7)).
+                password(trim(row, 8)).build();
+    }
 
-        return recipes;
+    static RecipeRecord toRecipe(CsvRow row) {
+        if (row.size() < 24) {
+            return null;
+        }
+        return RecipeRecord.builder()
+                .RecipeId(row.longValue(0))
+                .name(trim(row, 1))
+                .authorId(row.longValue(2))
+                .authorName(trim(row, 3))
+                .cookTime(trim(row, 4))
+                .prepTime(trim(row, 5))
+                .totalTime(trim(row, 6))
+                .datePublished(parseTimestamp(row.text(7)))
+                .description(trim(row, 8))
+                .recipeCategory(trim(row, 9))
+                .recipeIngredientParts(row.textList(10))
+                .aggregatedRating(row.floatValue(11))
+                .reviewCount((int) row.floatValue(12))
+                .calories(row.floatValue(13))
+                .fatContent(row.floatValue(14))
+                .saturatedFatContent(row.floatValue(15))
+                .cholesterolContent(row.floatValue(16))
+                .sodiumContent(row.floatValue(17))
+                .carbohydrateContent(row.floatValue(18))
+                .fiberContent(row.floatValue(19))
+                .sugarContent(row.floatValue(20))
+                .proteinContent(row.floatValue(21))
+                .recipeServings((int) row.floatValue(22))
+                .recipeYield(trim(row, 23))
+                .build();
     }
 
-    // 加载评论数据
-    public static List<ReviewRecord> loadReviews(String filePath) throws IOException, CsvException {
-        List<ReviewRecord> reviews = new ArrayList<>();
-
-        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            List<String[]> records = reader.readAll();
-
-            // 跳过标题行
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
-                if (fields.length >= 9) {
-                    ReviewRecord review = ReviewRecord.builder().reviewId(parseLong(fields[0])).
-                            recipeId(parseLong(fields[1])).authorId(parseLong(fields[2])).
-                            authorName(fields[3] != null ? fields[3].trim() : "").
-                            rating(parseFloat(fields[4])).review(fields[5] != null ? fields[5].trim() : "").
-                            dateSubmitted(parseTimestamp(fields[6])).dateModified(parseTimestamp(fields[7])).
-                            likes(parseCsvLongList(fields[8])).build();
-
-                    reviews.add(review);
-                }
-            }
+    static ReviewRecord toReview(CsvRow row) {
+        if (row.size() < 9) {
+            return null;
         }
+        return ReviewRecord.builder().reviewId(row.longValue(0)).
+                recipeId(row.longValue(1)).authorId(row.longValue(2)).
+                authorName(trim(row, 3)).
+                rating(row.floatValue(4)).review(trim(row, 5)).
+                dateSubmitted(parseTimestamp(row.text(6))).dateModified(parseTimestamp(row.text(7))).
+                likes(row.longList(8)).build();
+    }
 
-        return reviews;
+    private static String trim(CsvRow row, int i) {
+        String text = row.text(i);
+        return text != null ? text.trim() : "";
     }
 
     @SneakyThrows
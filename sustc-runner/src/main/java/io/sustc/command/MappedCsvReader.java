@@ -0,0 +1,585 @@
+package io.sustc.command;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * csv tokenizer over a memory-mapped file.
+ * <p>
+ * Field boundaries are located on the raw bytes. Numbers and id lists are parsed straight from the
+ * mapped bytes, and {@code String}s are only created for text fields and the items of text lists.
+ * A field only goes through a scratch buffer when quoting or escapes make its value differ from its bytes.
+ * <p>
+ * Quoting gives the same fields as OpenCSV, in one of two dialects:
+ * <ul>
+ *     <li>{@link #open(Path, boolean) backslash escapes} like the default {@code CSVParser}: a quote toggles
+ *     quoting anywhere in a field, {@code ""} is a quote, a backslash escapes a following quote, backslash
+ *     or comma and is dropped otherwise, and quotes in the middle of a field follow its rules;</li>
+ *     <li>RFC 4180 like {@code RFC4180Parser}: only a field starting with a quote is quoted, {@code ""} inside
+ *     it is a quote, and backslashes are literal.</li>
+ * </ul>
+ * Line breaks inside quotes are returned as {@code \n}. Files must be smaller than 2 GB.
+ */
+class MappedCsvReader implements CsvRow, Closeable {
+
+    private static final float[] FLOAT_POW10 = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buf;
+
+    private final int limit;
+
+    private final boolean backslashEscapes;
+
+    private int pos;
+
+    private int count;
+
+    private int[] starts = new int[32];
+
+    private int[] ends = new int[32];
+
+    /**
+     * Whether the value of a field is exactly its raw bytes.
+     */
+    private boolean[] plain = new boolean[32];
+
+    private byte[] scratch = new byte[1024];
+
+    private ByteBuffer scratchView = ByteBuffer.wrap(scratch);
+
+    private int scannedLength;
+
+    private boolean scannedPlain;
+
+    private MappedCsvReader(FileChannel channel, MappedByteBuffer buf, boolean backslashEscapes) {
+        this.channel = channel;
+        this.buf = buf;
+        this.limit = buf.limit();
+        this.backslashEscapes = backslashEscapes;
+    }
+
+    /**
+     * @param backslashEscapes {@code true} for the dialect of OpenCSV's default {@code CSVParser},
+     *                         {@code false} for {@code RFC4180Parser}
+     */
+    static MappedCsvReader open(Path file, boolean backslashEscapes) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be mapped at once");
+            }
+            return new MappedCsvReader(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), backslashEscapes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return {@code false} at the end of the file
+     * @throws IllegalStateException if a quoted field is not terminated properly
+     */
+    boolean next() {
+        if (pos >= limit) {
+            return false;
+        }
+        count = 0;
+        int i = pos;
+        while (true) {
+            int start = i;
+            boolean simple;
+            if (backslashEscapes) {
+                i = scanEscaped(i, null);
+                simple = scannedPlain;
+            } else {
+                i = scanRfc(i);
+                simple = i == start || buf.get(start) != '"';
+            }
+            addField(start, i, simple);
+            if (i >= limit) {
+                pos = i;
+                return true;
+            }
+            byte b = buf.get(i);
+            if (b == ',') {
+                i++;
+                continue;
+            }
+            pos = b == '\r' && i + 1 < limit && buf.get(i + 1) == '\n' ? i + 2 : i + 1;
+            return true;
+        }
+    }
+
+    /**
+     * Finds the end of an RFC 4180 field starting at {@code i}.
+     */
+    private int scanRfc(int i) {
+        if (i < limit && buf.get(i) == '"') {
+            int end = skipRfcQuoted(i);
+            if (end < limit) {
+                byte b = buf.get(end);
+                if (b != ',' && b != '\n' && b != '\r') {
+                    throw new IllegalStateException("Unexpected character after a quoted field at byte " + end);
+                }
+            }
+            return end;
+        }
+        while (i < limit) {
+            byte b = buf.get(i);
+            if (b == ',' || b == '\n' || b == '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Walks a field of the backslash dialect starting at {@code i} the way {@code CSVParser.parseLine} does,
+     * including its handling of quotes in the middle of a field, and returns the index after it.
+     * The value is written to {@code out} when it is not {@code null}; its length is left in {@link #scannedLength}.
+     */
+    private int scanEscaped(int i, byte[] out) {
+        int start = i;
+        boolean inQuotes = false;
+        boolean inField = false;
+        boolean blank = true;
+        boolean simple = true;
+        int n = 0;
+        while (i < limit) {
+            byte b = buf.get(i);
+            if (b == '\n' || b == '\r') {
+                if (!inQuotes) {
+                    break;
+                }
+                simple = false;
+                if (out != null) out[n] = '\n';
+                n++;
+                i += b == '\r' && i + 1 < limit && buf.get(i + 1) == '\n' ? 2 : 1;
+            } else if (b == '\\') {
+                simple = false;
+                inField = true;
+                if (escapable(i)) {
+                    if (out != null) out[n] = buf.get(i + 1);
+                    n++;
+                    blank = false;
+                    i += 2;
+                } else {
+                    i++;
+                }
+            } else if (b == '"') {
+                simple = false;
+                if ((inQuotes || inField) && i + 1 < limit && buf.get(i + 1) == '"') {
+                    if (out != null) out[n] = '"';
+                    n++;
+                    blank = false;
+                    i += 2;
+                } else {
+                    inQuotes = !inQuotes;
+                    if (quoteKept(i)) {
+                        // CSVParser keeps a quote in the middle of a field, unless only blanks precede it
+                        if (n > 0 && blank) {
+                            n = 0;
+                        } else {
+                            if (out != null) out[n] = '"';
+                            n++;
+                            blank = false;
+                        }
+                    }
+                    i++;
+                }
+                inField = !inField;
+            } else if (b == ',' && !inQuotes) {
+                break;
+            } else {
+                if (out != null) out[n] = b;
+                n++;
+                if (b < 0 || !Character.isWhitespace((char) b)) blank = false;
+                inField = true;
+                i++;
+            }
+        }
+        if (inQuotes) {
+            throw new IllegalStateException("Unterminated quoted field starting at byte " + start);
+        }
+        scannedLength = n;
+        scannedPlain = simple;
+        return i;
+    }
+
+    /**
+     * Whether {@code CSVParser} copies the unescaped quote at {@code q} into the value: it is at least
+     * the fourth character of its line and neither it nor its neighbours border a separator or line end.
+     */
+    private boolean quoteKept(int q) {
+        if (q == 0 || q + 1 >= limit) {
+            return false;
+        }
+        byte after = buf.get(q + 1);
+        if (after == ',' || after == '\n' || after == '\r' || buf.get(q - 1) == ',') {
+            return false;
+        }
+        int chars = 0;
+        for (int k = q - 1; k >= 0 && chars < 3; k--) {
+            byte c = buf.get(k);
+            if (c == '\n' || c == '\r') {
+                break;
+            }
+            if ((c & 0xC0) != 0x80) {
+                // four byte sequences are two UTF-16 chars
+                chars += (c & 0xF8) == 0xF0 ? 2 : 1;
+            }
+        }
+        return chars >= 3;
+    }
+
+    /**
+     * Skips an RFC 4180 quoted field starting at {@code i} and returns the index after its closing quote.
+     */
+    private int skipRfcQuoted(int i) {
+        int start = i;
+        i++;
+        while (i < limit) {
+            if (buf.get(i) == '"') {
+                if (i + 1 < limit && buf.get(i + 1) == '"') {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        throw new IllegalStateException("Unterminated quoted field starting at byte " + start);
+    }
+
+    private boolean escapable(int i) {
+        if (!backslashEscapes || i + 1 >= limit) {
+            return false;
+        }
+        byte next = buf.get(i + 1);
+        return next == '"' || next == '\\' || next == ',';
+    }
+
+    private void addField(int start, int end, boolean simple) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+            plain = Arrays.copyOf(plain, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        plain[count] = simple;
+        count++;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public String text(int i) {
+        if (plain[i]) {
+            int length = ends[i] - starts[i];
+            byte[] bytes = scratch(length);
+            for (int k = 0; k < length; k++) {
+                bytes[k] = buf.get(starts[i] + k);
+            }
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        int length = unescape(i);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long longValue(int i) {
+        if (plain[i]) {
+            return parseLong(buf, starts[i], ends[i]);
+        }
+        int length = unescape(i);
+        return parseLong(scratchView, 0, length);
+    }
+
+    @Override
+    public int intValue(int i) {
+        long value = longValue(i);
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? 0 : (int) value;
+    }
+
+    @Override
+    public float floatValue(int i) {
+        if (plain[i]) {
+            return parseFloat(buf, starts[i], ends[i]);
+        }
+        int length = unescape(i);
+        return parseFloat(scratchView, 0, length);
+    }
+
+    @Override
+    public long[] longList(int i) {
+        if (plain[i]) {
+            return parseLongList(buf, starts[i], ends[i]);
+        }
+        int length = unescape(i);
+        return parseLongList(scratchView, 0, length);
+    }
+
+    @Override
+    public String[] textList(int i) {
+        int to = plain[i] ? ends[i] : unescape(i);
+        int from = plain[i] ? starts[i] : 0;
+        ByteBuffer b = plain[i] ? buf : scratchView;
+        while (from < to && isTrimmed(b.get(from))) from++;
+        while (to > from && isTrimmed(b.get(to - 1))) to--;
+        if (from == to || isNull(b, from, to)) {
+            return new String[0];
+        }
+        if (to - from >= 3 && b.get(from) == 'c' && b.get(from + 1) == '(' && b.get(to - 1) == ')') {
+            List<String> items = new ArrayList<>();
+            int k = from + 2;
+            int end = to - 1;
+            while (true) {
+                int open = indexOf(b, '"', k, end);
+                if (open < 0) break;
+                int close = indexOf(b, '"', open + 1, end);
+                if (close < 0) break;
+                items.add(decode(b, open + 1, close));
+                k = close + 1;
+            }
+            if (!items.isEmpty()) {
+                return items.toArray(new String[0]);
+            }
+        }
+        // unquoted lists are rare, they take the String based path
+        return DatabaseCommand.parseCsvList(decode(b, from, to));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes the value of a quoted or escaped field into {@link #scratch}.
+     *
+     * @return its length in bytes
+     */
+    private int unescape(int field) {
+        int start = starts[field];
+        int end = ends[field];
+        byte[] out = scratch(end - start);
+        if (backslashEscapes) {
+            scanEscaped(start, out);
+            return scannedLength;
+        }
+        int n = 0;
+        if (buf.get(start) != '"') {
+            for (int i = start; i < end; i++) out[n++] = buf.get(i);
+            return n;
+        }
+        for (int i = start + 1; i < end - 1; i++) {
+            byte b = buf.get(i);
+            if (b == '"') {
+                i++;
+            } else if (b == '\r') {
+                b = '\n';
+                if (i + 1 < end - 1 && buf.get(i + 1) == '\n') i++;
+            }
+            out[n++] = b;
+        }
+        return n;
+    }
+
+    private byte[] scratch(int length) {
+        if (scratch.length < length) {
+            int size = scratch.length;
+            while (size < length) size *= 2;
+            scratch = new byte[size];
+            scratchView = ByteBuffer.wrap(scratch);
+        }
+        return scratch;
+    }
+
+    /**
+     * {@code 0} unless the trimmed bytes are a valid long, like {@link Long#parseLong} of the trimmed text.
+     */
+    static long parseLong(ByteBuffer b, int from, int to) {
+        while (from < to && isTrimmed(b.get(from))) from++;
+        while (to > from && isTrimmed(b.get(to - 1))) to--;
+        if (from == to) {
+            return 0;
+        }
+        boolean negative = false;
+        byte first = b.get(from);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++from == to) return 0;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = b.get(i) - '0';
+            if (digit < 0 || digit > 9) return 0;
+            if (value < (Long.MIN_VALUE + digit) / 10) return 0;
+            value = value * 10 - digit;
+        }
+        if (negative) {
+            return value;
+        }
+        return value == Long.MIN_VALUE ? 0 : -value;
+    }
+
+    /**
+     * {@link Float#parseFloat} of the trimmed text, or {@code 0} if it is blank, {@code null} or invalid.
+     * Plain decimals with up to 7 significant digits and 10 fraction digits are exact in float arithmetic;
+     * anything else goes through {@link Float#parseFloat}.
+     */
+    static float parseFloat(ByteBuffer b, int from, int to) {
+        while (from < to && isTrimmed(b.get(from))) from++;
+        while (to > from && isTrimmed(b.get(to - 1))) to--;
+        if (from == to) {
+            return 0f;
+        }
+        int i = from;
+        boolean negative = false;
+        byte first = b.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < to; i++) {
+            byte c = b.get(i);
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return parseFloatSlow(b, from, to);
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if (mantissa > 1 << 24) {
+                return parseFloatSlow(b, from, to);
+            }
+            digits++;
+            if (fraction >= 0) fraction++;
+        }
+        if (digits == 0 || fraction > 10) {
+            return parseFloatSlow(b, from, to);
+        }
+        float value = fraction > 0 ? (float) mantissa / FLOAT_POW10[fraction] : (float) mantissa;
+        return negative ? -value : value;
+    }
+
+    private static float parseFloatSlow(ByteBuffer b, int from, int to) {
+        String s = decode(b, from, to);
+        if ("null".equalsIgnoreCase(s)) {
+            return 0f;
+        }
+        try {
+            return Float.parseFloat(s);
+        } catch (NumberFormatException e) {
+            return 0f;
+        }
+    }
+
+    /**
+     * Same result as {@code DatabaseCommand.parseCsvLongList}: strips one character from both ends,
+     * splits on commas, and turns every item that is not a long into {@code 0}.
+     */
+    static long[] parseLongList(ByteBuffer b, int from, int to) {
+        while (from < to && isTrimmed(b.get(from))) from++;
+        while (to > from && isTrimmed(b.get(to - 1))) to--;
+        if (from == to || isNull(b, from, to)) {
+            return new long[0];
+        }
+        if (b.get(from) < 0 || b.get(to - 1) < 0) {
+            // the original strips characters, not bytes
+            return DatabaseCommand.parseCsvLongList(decode(b, from, to));
+        }
+        if (to - from >= 2) {
+            from++;
+            to--;
+        }
+        if (from == to) {
+            return new long[0];
+        }
+
+        long[] values = new long[8];
+        int n = 0;
+        int lastNonEmpty = -1;
+        boolean separated = false;
+        int itemStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i < to && b.get(i) != ',') {
+                continue;
+            }
+            int itemEnd = i;
+            if (i < to) separated = true;
+            boolean empty = true;
+            for (int k = itemStart; k < itemEnd; k++) {
+                if (!isWhitespace(b.get(k))) {
+                    empty = false;
+                    break;
+                }
+            }
+            if (n == values.length) values = Arrays.copyOf(values, n * 2);
+            values[n] = parseLong(b, itemStart, itemEnd);
+            if (!empty) lastNonEmpty = n;
+            n++;
+            itemStart = i + 1;
+        }
+        // String.split drops trailing empty items, but keeps a single unsplit item
+        int size = separated ? lastNonEmpty + 1 : n;
+        return Arrays.copyOf(values, size);
+    }
+
+    private static boolean isNull(ByteBuffer b, int from, int to) {
+        return to - from == 4
+                && (b.get(from) | 0x20) == 'n' && (b.get(from + 1) | 0x20) == 'u'
+                && (b.get(from + 2) | 0x20) == 'l' && (b.get(from + 3) | 0x20) == 'l';
+    }
+
+    /**
+     * Characters removed by {@link String#trim()}.
+     */
+    private static boolean isTrimmed(byte c) {
+        return (c & 0xFF) <= ' ';
+    }
+
+    /**
+     * {@code \s} of {@code java.util.regex}, which the original list parsing split and trimmed on.
+     */
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    private static int indexOf(ByteBuffer b, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b.get(i) == c) return i;
+        }
+        return -1;
+    }
+
+    private static String decode(ByteBuffer b, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = b.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
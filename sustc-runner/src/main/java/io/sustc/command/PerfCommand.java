@@ -0,0 +1,585 @@
+package io.sustc.command;
+
+import io.fury.ThreadSafeFury;
+import io.sustc.benchmark.BenchmarkConfig;
+import io.sustc.benchmark.BenchmarkConstants;
+import io.sustc.dto.FeedItem;
+import io.sustc.dto.PageResult;
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.dto.UserRecord;
+import io.sustc.jdbc.RecipeDetailSql;
+import io.sustc.jdbc.RecipeSearchSql;
+import io.sustc.jdbc.RecordMappers;
+import io.sustc.service.RecipeService;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+//延迟对比的微基准：同一批随机 id 上交替运行新旧两种实现
+@Slf4j
+@ShellComponent
+@ConditionalOnBean(RecipeService.class)
+public class PerfCommand {
+
+    @Autowired
+    private RecipeService recipeService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ThreadSafeFury fury;
+
+    @Autowired
+    private BenchmarkConfig config;
+
+    @ShellMethod(key = "perf recipe-by-id", value = "Compare the getRecipeById query, without its cache, with the former two-query implementation")
+    public void recipeById(@ShellOption(defaultValue = "2000") int samples,
+                           @ShellOption(defaultValue = "200") int warmup) throws SQLException {
+        long[] ids = sampleRecipeIds(samples);
+        if (ids.length == 0) {
+            System.out.println("No recipes, import the data first");
+            return;
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            for (int i = 0; i < warmup; i++) {
+                long id = ids[i % ids.length];
+                twoQueryRecipeById(connection, id);
+                singleQueryRecipeById(connection, id);
+            }
+
+            Latency twoQueries = new Latency("two queries");
+            Latency singleQuery = new Latency("single query");
+            int mismatches = 0;
+            for (int i = 0; i < ids.length; i++) {
+                long id = ids[i];
+                RecipeRecord expected;
+                RecipeRecord actual;
+                // 交替先后顺序，避免缓存预热只偏向其中一方
+                if ((i & 1) == 0) {
+                    long t0 = System.nanoTime();
+                    expected = twoQueryRecipeById(connection, id);
+                    long t1 = System.nanoTime();
+                    actual = singleQueryRecipeById(connection, id);
+                    long t2 = System.nanoTime();
+                    twoQueries.add(t1 - t0);
+                    singleQuery.add(t2 - t1);
+                } else {
+                    long t0 = System.nanoTime();
+                    actual = singleQueryRecipeById(connection, id);
+                    long t1 = System.nanoTime();
+                    expected = twoQueryRecipeById(connection, id);
+                    long t2 = System.nanoTime();
+                    singleQuery.add(t1 - t0);
+                    twoQueries.add(t2 - t1);
+                }
+                if (!Objects.equals(expected, actual)) {
+                    mismatches++;
+                    log.debug("Different result for {}: expected {}, got {}", id, expected, actual);
+                }
+            }
+
+            System.out.println(twoQueries);
+            System.out.println(singleQuery);
+            System.out.printf("p50 speedup: %.2fx, mismatches: %d%n",
+                    twoQueries.percentile(50) / Math.max(1.0, singleQuery.percentile(50)), mismatches);
+        }
+    }
+
+    @ShellMethod(key = "perf recipe-search", value = "Compare keyword searches of the recipe_search cases with and without the trigram indexes")
+    public void recipeSearch(@ShellOption(defaultValue = "3") int rounds) throws SQLException {
+        List<Map.Entry<Object[], PageResult<RecipeRecord>>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_SEARCH);
+        List<Object[]> keywordCases = new ArrayList<>();
+        for (Map.Entry<Object[], PageResult<RecipeRecord>> it : cases) {
+            Object[] args = it.getKey();
+            if (args[0] != null && !((String) args[0]).trim().isEmpty()
+                    && args[3] != null && (Integer) args[3] >= 1 && args[4] != null && (Integer) args[4] > 0) {
+                keywordCases.add(args);
+            }
+        }
+        if (keywordCases.isEmpty()) {
+            System.out.println("No keyword cases in " + BenchmarkConstants.RECIPE_SEARCH);
+            return;
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            System.out.println("trigram indexes: " + trigramIndexes(connection));
+
+            Latency seqScan = new Latency("ILIKE scan");
+            Latency trigram = new Latency("trigram index");
+            int mismatches = 0;
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < keywordCases.size(); i++) {
+                    Object[] args = keywordCases.get(i);
+                    // GIN indexes are only read through bitmap scans, so turning those off leaves the plain ILIKE scan
+                    boolean indexFirst = ((round + i) & 1) == 0;
+                    long t0 = System.nanoTime();
+                    List<Long> first = searchIds(connection, args, indexFirst);
+                    long t1 = System.nanoTime();
+                    List<Long> second = searchIds(connection, args, !indexFirst);
+                    long t2 = System.nanoTime();
+                    (indexFirst ? trigram : seqScan).add(t1 - t0);
+                    (indexFirst ? seqScan : trigram).add(t2 - t1);
+                    if (round == 0 && !first.equals(second)) {
+                        mismatches++;
+                        log.debug("Different result for {}: {} vs {}", Arrays.toString(args), first, second);
+                    }
+                }
+            }
+
+            System.out.println(seqScan);
+            System.out.println(trigram);
+            System.out.printf("p50 speedup: %.2fx over %d keyword cases, mismatches: %d%n",
+                    seqScan.percentile(50) / Math.max(1.0, trigram.percentile(50)), keywordCases.size(), mismatches);
+        }
+    }
+
+    @ShellMethod(key = "perf mappers", value = "Compare name-based row mapping with the index-based RecordMappers per 10k rows")
+    public void mappers(@ShellOption(defaultValue = "10000") int rows,
+                        @ShellOption(defaultValue = "20") int warmup,
+                        @ShellOption(defaultValue = "50") int rounds) throws SQLException {
+        String recipes = " FROM recipes r JOIN users u ON r.authorid = u.authorid LIMIT ?";
+        try (Connection connection = dataSource.getConnection()) {
+            compareMappers(connection, "recipe", "SELECT r.*, u.authorname" + recipes,
+                    rows, warmup, rounds, PerfCommand::recipeByName, () -> RecordMappers.recipe()::mapRow);
+            compareMappers(connection, "review",
+                    "SELECT rv.*, u.authorname FROM reviews rv JOIN users u ON rv.authorid = u.authorid LIMIT ?",
+                    rows, warmup, rounds, PerfCommand::reviewByMap, () -> RecordMappers.review()::mapRow);
+            compareMappers(connection, "user", "SELECT * FROM users LIMIT ?",
+                    rows, warmup, rounds, PerfCommand::userByName, () -> RecordMappers.user()::mapRow);
+            compareMappers(connection, "feed item",
+                    "SELECT r.recipeid, r.name, r.authorid, u.authorname, r.datepublished, r.aggregatedrating, r.reviewcount" + recipes,
+                    rows, warmup, rounds, PerfCommand::feedItemByName, () -> RecordMappers.feedItem()::mapRow);
+        }
+    }
+
+    @ShellMethod(key = "perf calorie-pair", value = "Compare getClosestCaloriePair with the window scan over all recipes it replaced")
+    public void caloriePair(@ShellOption(defaultValue = "20") int rounds,
+                            @ShellOption(defaultValue = "3") int warmup) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            Latency scan = new Latency("window scan");
+            Latency maintained = new Latency("maintained");
+            int mismatches = 0;
+            for (int round = -warmup; round < rounds; round++) {
+                long t0 = System.nanoTime();
+                Map<String, Object> expected = closestCaloriePairByScan(connection);
+                long t1 = System.nanoTime();
+                Map<String, Object> actual = recipeService.getClosestCaloriePair();
+                long t2 = System.nanoTime();
+                if (round < 0) {
+                    continue;
+                }
+                scan.add(t1 - t0);
+                maintained.add(t2 - t1);
+                if (!Objects.equals(expected, actual)) {
+                    mismatches++;
+                    log.debug("Different closest pair: expected {}, got {}", expected, actual);
+                }
+            }
+
+            System.out.println(scan);
+            System.out.println(maintained);
+            System.out.printf("p50 speedup: %.2fx, mismatches: %d%n",
+                    scan.percentile(50) / Math.max(1.0, maintained.percentile(50)), mismatches);
+        }
+    }
+
+    /**
+     * Times only the mapping loop: the driver has read the whole result before {@code executeQuery} returns,
+     * so the database is not part of it. Each round is scaled to 10k rows.
+     */
+    private static void compareMappers(Connection connection, String record, String sql, int rows, int warmup, int rounds,
+                                       RowReader byName, Supplier<RowReader> byIndex) throws SQLException {
+        Latency names = new Latency(record + " by name");
+        Latency indexes = new Latency(record + " by index");
+        int mismatches = 0;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, Math.max(1, rows));
+            for (int round = -warmup; round < rounds; round++) {
+                // 交替先后顺序，避免 GC 与 JIT 只偏向其中一方
+                boolean namesFirst = (round & 1) == 0;
+                List<Object> first = new ArrayList<>();
+                List<Object> second = new ArrayList<>();
+                long firstNanos = mapAll(stmt, namesFirst ? byName : byIndex.get(), first);
+                long secondNanos = mapAll(stmt, namesFirst ? byIndex.get() : byName, second);
+                if (first.isEmpty()) {
+                    System.out.println(record + ": no rows, import the data first");
+                    return;
+                }
+                if (round < 0) {
+                    continue;
+                }
+                (namesFirst ? names : indexes).add(firstNanos * 10_000 / first.size());
+                (namesFirst ? indexes : names).add(secondNanos * 10_000 / second.size());
+                if (round == 0) {
+                    for (int i = 0; i < first.size(); i++) {
+                        if (!Objects.equals(first.get(i), second.get(i))) {
+                            mismatches++;
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println(names);
+        System.out.println(indexes);
+        System.out.printf("%s: p50 speedup %.2fx per 10k rows, mismatches: %d%n",
+                record, names.percentile(50) / Math.max(1.0, indexes.percentile(50)), mismatches);
+    }
+
+    private static long mapAll(PreparedStatement stmt, RowReader reader, List<Object> into) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            long start = System.nanoTime();
+            int rowNum = 0;
+            while (rs.next()) {
+                into.add(reader.read(rs, rowNum++));
+            }
+            return System.nanoTime() - start;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+        Object read(ResultSet rs, int rowNum) throws SQLException;
+    }
+
+    private static String trigramIndexes(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT string_agg(indexname, ', ') FROM pg_indexes WHERE tablename = 'recipes' AND indexdef LIKE '%gin_trgm_ops%'");
+             ResultSet rs = stmt.executeQuery()) {
+            String names = rs.next() ? rs.getString(1) : null;
+            return names == null ? "none, run db import with pg_trgm available" : names;
+        }
+    }
+
+    /**
+     * The count and page queries of {@code searchRecipes}, returning the total followed by the ids of the page.
+     */
+    private static List<Long> searchIds(Connection connection, Object[] args, boolean useIndex) throws SQLException {
+        String keyword = (String) args[0];
+        String category = (String) args[1];
+        Double minRating = (Double) args[2];
+        int page = (Integer) args[3];
+        int size = (Integer) args[4];
+        String sort = (String) args[5];
+
+        List<Object> params = new ArrayList<>();
+        StringBuilder where = RecipeSearchSql.where(keyword, category, minRating, params);
+        String orderBy = RecipeSearchSql.orderBy(sort);
+        String from = RecipeSearchSql.FROM;
+
+        List<Long> result = new ArrayList<>();
+        try (Statement setting = connection.createStatement()) {
+            setting.execute(useIndex ? "RESET enable_bitmapscan" : "SET enable_bitmapscan = off");
+        }
+        try {
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT COUNT(*)" + from + where)) {
+                bind(stmt, params);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    result.add(rs.getLong(1));
+                }
+            }
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "SELECT r.recipeid" + from + where + orderBy + " LIMIT ? OFFSET ?")) {
+                List<Object> pageParams = new ArrayList<>(params);
+                pageParams.add(size);
+                pageParams.add((page - 1) * size);
+                bind(stmt, pageParams);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        result.add(rs.getLong(1));
+                    }
+                }
+            }
+        } finally {
+            try (Statement setting = connection.createStatement()) {
+                setting.execute("RESET enable_bitmapscan");
+            }
+        }
+        return result;
+    }
+
+    private static void bind(PreparedStatement stmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setObject(i + 1, params.get(i));
+        }
+    }
+
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    private <T> T deserialize(String... path) {
+        return (T) fury.deserialize(Files.readAllBytes(Paths.get(config.getDataPath(), path)));
+    }
+
+    private long[] sampleRecipeIds(int samples) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "SELECT recipeid FROM recipes ORDER BY random() LIMIT ?")) {
+            stmt.setInt(1, Math.max(1, samples));
+            List<Long> ids = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+            return ids.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    /**
+     * The implementation {@code getRecipeById} had before it was folded into one statement:
+     * the recipe joined with its author, then its ingredients, sorted in Java.
+     */
+    /**
+     * The query of {@code getRecipeById} without the recipe cache in front of it, on the same connection
+     * as {@link #twoQueryRecipeById}.
+     */
+    private static RecipeRecord singleQueryRecipeById(Connection connection, long recipeId) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(RecipeDetailSql.BY_ID)) {
+            stmt.setLong(1, recipeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? RecordMappers.recipe().mapRow(rs, 0) : null;
+            }
+        }
+    }
+
+    private static RecipeRecord twoQueryRecipeById(Connection connection, long recipeId) throws SQLException {
+        RecipeRecord record;
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT r.*, u.authorname " +
+                        "FROM recipes r " +
+                        "LEFT JOIN users u ON r.authorid = u.authorid " +
+                        "WHERE r.recipeid = ? AND u.isdeleted = FALSE")) {
+            stmt.setLong(1, recipeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                record = recipeByName(rs, 0);
+            }
+        }
+
+        List<String> ingredients = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT ingredientpart FROM recipe_ingredients WHERE recipeid = ?")) {
+            stmt.setLong(1, recipeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ingredients.add(rs.getString(1));
+                }
+            }
+        }
+        if (!ingredients.isEmpty()) {
+            String[] parts = ingredients.toArray(new String[0]);
+            Arrays.sort(parts, String.CASE_INSENSITIVE_ORDER);
+            record.setRecipeIngredientParts(parts);
+        }
+        return record;
+    }
+
+    /**
+     * The implementation {@code getClosestCaloriePair} had before the pairs were maintained: every recipe with
+     * calories sorted, next to the one before it, also the check that the maintained pairs are right.
+     */
+    private static Map<String, Object> closestCaloriePairByScan(Connection connection) throws SQLException {
+        String sql =
+                "WITH ordered AS (" +
+                        "    SELECT recipeid, calories, " +
+                        "           LAG(recipeid) OVER (ORDER BY calories ASC, recipeid ASC) AS prev_id, " +
+                        "           LAG(calories) OVER (ORDER BY calories ASC, recipeid ASC) AS prev_cal " +
+                        "    FROM recipes WHERE calories IS NOT NULL" +
+                        "), diffs AS (" +
+                        "    SELECT CASE WHEN recipeid < prev_id THEN recipeid ELSE prev_id END AS recipe_a, " +
+                        "           CASE WHEN recipeid < prev_id THEN prev_id ELSE recipeid END AS recipe_b, " +
+                        "           CASE WHEN recipeid < prev_id THEN calories ELSE prev_cal END AS calories_a, " +
+                        "           CASE WHEN recipeid < prev_id THEN prev_cal ELSE calories END AS calories_b, " +
+                        "           ABS(calories - prev_cal) AS diff " +
+                        "    FROM ordered WHERE prev_id IS NOT NULL" +
+                        ") " +
+                        "SELECT recipe_a, recipe_b, calories_a, calories_b, diff FROM diffs " +
+                        "ORDER BY diff ASC, recipe_a ASC, recipe_b ASC LIMIT 1";
+        try (PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                return null;
+            }
+            Map<String, Object> result = new HashMap<>();
+            result.put("RecipeA", rs.getLong("recipe_a"));
+            result.put("RecipeB", rs.getLong("recipe_b"));
+            result.put("CaloriesA", rs.getBigDecimal("calories_a").doubleValue());
+            result.put("CaloriesB", rs.getBigDecimal("calories_b").doubleValue());
+            result.put("Difference", rs.getBigDecimal("diff").doubleValue());
+            return result;
+        }
+    }
+
+    /**
+     * The row mapping {@code getRecipeById} and {@code searchRecipes} had before {@link RecordMappers}: by column name,
+     * through {@link BigDecimal}, with servings parsed from text.
+     */
+    private static RecipeRecord recipeByName(ResultSet rs, int rowNum) throws SQLException {
+        return RecipeRecord.builder()
+                .RecipeId(rs.getLong("recipeid"))
+                .name(rs.getString("name"))
+                .authorId(rs.getLong("authorid"))
+                .authorName(rs.getString("authorname"))
+                .cookTime(rs.getString("cooktime"))
+                .prepTime(rs.getString("preptime"))
+                .totalTime(rs.getString("totaltime"))
+                .datePublished(rs.getTimestamp("datepublished"))
+                .description(rs.getString("description"))
+                .recipeCategory(rs.getString("recipecategory"))
+                .aggregatedRating(decimalAsFloat(rs, "aggregatedrating"))
+                .reviewCount(rs.getInt("reviewcount"))
+                .calories(decimalAsFloat(rs, "calories"))
+                .fatContent(decimalAsFloat(rs, "fatcontent"))
+                .saturatedFatContent(decimalAsFloat(rs, "saturatedfatcontent"))
+                .cholesterolContent(decimalAsFloat(rs, "cholesterolcontent"))
+                .sodiumContent(decimalAsFloat(rs, "sodiumcontent"))
+                .carbohydrateContent(decimalAsFloat(rs, "carbohydratecontent"))
+                .fiberContent(decimalAsFloat(rs, "fibercontent"))
+                .sugarContent(decimalAsFloat(rs, "sugarcontent"))
+                .proteinContent(decimalAsFloat(rs, "proteincontent"))
+                .recipeServings(servings(rs.getString("recipeservings")))
+                .recipeYield(rs.getString("recipeyield"))
+                .build();
+    }
+
+    private static ReviewRecord reviewByMap(ResultSet rs, int rowNum) throws SQLException {
+        // 与 queryForList 相同：每行先转成以列名为键的 Map，再逐个拆箱
+        ResultSetMetaData meta = rs.getMetaData();
+        Map<String, Object> row = new LinkedCaseInsensitiveMap<>(meta.getColumnCount());
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            row.putIfAbsent(meta.getColumnLabel(i), rs.getObject(i));
+        }
+        String authorName = (String) row.get("authorname");
+        return ReviewRecord.builder()
+                .reviewId(((Number) row.get("reviewid")).longValue())
+                .recipeId(((Number) row.get("recipeid")).longValue())
+                .authorId(((Number) row.get("authorid")).longValue())
+                .authorName(authorName != null ? authorName : "")
+                .rating(((Number) row.get("rating")).floatValue())
+                .review((String) row.get("review"))
+                .dateSubmitted((Timestamp) row.get("datesubmitted"))
+                .dateModified((Timestamp) row.get("datemodified"))
+                .build();
+    }
+
+    private static UserRecord userByName(ResultSet rs, int rowNum) throws SQLException {
+        return UserRecord.builder()
+                .authorId(rs.getLong("authorid"))
+                .authorName(rs.getString("authorname"))
+                .gender(rs.getString("gender"))
+                .age(rs.getInt("age"))
+                .followers(rs.getInt("followers"))
+                .following(rs.getInt("following"))
+                .followerUsers(new long[0])
+                .followingUsers(new long[0])
+                .password(rs.getString("password"))
+                .isDeleted(rs.getBoolean("isdeleted"))
+                .build();
+    }
+
+    private static FeedItem feedItemByName(ResultSet rs, int rowNum) throws SQLException {
+        Timestamp ts = rs.getTimestamp("DatePublished");
+        return FeedItem.builder()
+                .recipeId(rs.getLong("RecipeId"))
+                .name(rs.getString("Name"))
+                .authorId(rs.getLong("AuthorId"))
+                .authorName(rs.getString("AuthorName"))
+                .datePublished(ts == null ? null : ts.toInstant().plus(Duration.ofHours(8)))
+                .aggregatedRating(rs.getObject("AggregatedRating") == null ? null : rs.getDouble("AggregatedRating"))
+                .reviewCount(rs.getObject("ReviewCount") == null ? null : rs.getInt("ReviewCount"))
+                .build();
+    }
+
+    private static float decimalAsFloat(ResultSet rs, String column) throws SQLException {
+        BigDecimal bd = rs.getBigDecimal(column);
+        return bd == null ? 0f : bd.floatValue();
+    }
+
+    private static int servings(String servings) {
+        if (servings == null) {
+            return 0;
+        }
+        try {
+            return (int) Double.parseDouble(servings.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Latencies of one implementation, in nanoseconds.
+     */
+    static final class Latency {
+
+        private final String name;
+
+        private long[] samples = new long[256];
+
+        private int count;
+
+        Latency(String name) {
+            this.name = name;
+        }
+
+        void add(long nanos) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+        }
+
+        double percentile(double p) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p / 100 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+
+        double mean() {
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += samples[i];
+            }
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-14s n=%d  mean %.1f us  p50 %.1f us  p95 %.1f us  p99 %.1f us",
+                    name, count, mean() / 1e3, percentile(50) / 1e3, percentile(95) / 1e3, percentile(99) / 1e3);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package io.sustc.web;
 
+import io.sustc.dto.CacheStats;
 import io.sustc.service.DatabaseService;
+import io.sustc.service.RecipeService;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -14,8 +17,11 @@ public class MetaController {
 
     private final DatabaseService databaseService;
 
-    public MetaController(DatabaseService databaseService) {
+    private final RecipeService recipeService;
+
+    public MetaController(DatabaseService databaseService, RecipeService recipeService) {
         this.databaseService = databaseService;
+        this.recipeService = recipeService;
     }
 
     @GetMapping("/group-members")
@@ -27,4 +33,11 @@ public class MetaController {
     public Map<String, Object> sum(@RequestParam int a, @RequestParam int b) {
         return Map.of("a", a, "b", b, "sum", databaseService.sum(a, b));
     }
+
+    @GetMapping("/recipe-cache")
+    public ResponseEntity<CacheStats> recipeCache() {
+        CacheStats stats = recipeService.getCacheStats();
+        if (stats == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(stats);
+    }
 }
@@ -1,10 +1,16 @@
 package io.sustc.web;
 
 import io.sustc.dto.AuthInfo;
+import io.sustc.dto.CountMode;
+import io.sustc.dto.CursorPage;
+import io.sustc.dto.IngredientMatch;
+import io.sustc.dto.IngredientMatchMode;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.SearchFacets;
 import io.sustc.service.RecipeService;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -29,6 +35,20 @@ public class RecipeController {
         return ResponseEntity.ok(r);
     }
 
+    public static class BatchReq {
+        public long[] ids;
+    }
+
+    @PostMapping("/batch")
+    public List<RecipeRecord> batch(@RequestBody BatchReq req) {
+        return recipeService.getRecipesByIds(req.ids);
+    }
+
+    @PostMapping("/names")
+    public List<String> names(@RequestBody BatchReq req) {
+        return recipeService.getNamesFromIDs(req.ids);
+    }
+
     @GetMapping("/search")
     public PageResult<RecipeRecord> search(
             @RequestParam(required = false) String keyword,
@@ -36,9 +56,53 @@ public class RecipeController {
             @RequestParam(required = false) Double minRating,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false, defaultValue = "datePublished:desc") String sort,
+            @RequestParam(defaultValue = "EXACT") CountMode countMode
+    ) {
+        return recipeService.searchRecipes(keyword, category, minRating, page, size, sort, countMode);
+    }
+
+    @GetMapping(value = "/search", params = "cursor")
+    public CursorPage<RecipeRecord> searchByCursor(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Double minRating,
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "20") int size,
             @RequestParam(required = false, defaultValue = "datePublished:desc") String sort
     ) {
-        return recipeService.searchRecipes(keyword, category, minRating, page, size, sort);
+        return recipeService.searchRecipesByCursor(keyword, category, minRating, cursor, size, sort);
+    }
+
+    @GetMapping("/search/facets")
+    public SearchFacets facets(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Double minRating
+    ) {
+        return recipeService.getSearchFacets(keyword, category, minRating);
+    }
+
+    @GetMapping("/quick-search")
+    public ResponseEntity<List<RecipeRecord>> quickSearch(
+            @RequestParam String q,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Double minRating,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        List<RecipeRecord> found = recipeService.searchRecipesByRelevance(q, category, minRating, limit);
+        if (found == null) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        return ResponseEntity.ok(found);
+    }
+
+    @GetMapping("/by-ingredients")
+    public PageResult<IngredientMatch> byIngredients(
+            @RequestParam List<String> ingredients,
+            @RequestParam(defaultValue = "ALL") IngredientMatchMode mode,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return recipeService.searchRecipesByIngredients(ingredients, mode, page, size);
     }
 
     public static class CreateRecipeReq {
@@ -83,4 +147,9 @@ public class RecipeController {
     public List<Map<String, Object>> top3Complex() {
         return recipeService.getTop3MostComplexRecipesByIngredients();
     }
+
+    @GetMapping("/analytics/top-complex-by-ingredients")
+    public List<Map<String, Object>> topComplex(@RequestParam(defaultValue = "3") int k) {
+        return recipeService.getTopRecipesByIngredientCount(k);
+    }
 }
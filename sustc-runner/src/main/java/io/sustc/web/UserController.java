@@ -5,6 +5,7 @@ import io.sustc.service.UserService;
 import org.springframework.context.annotation.Profile;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -79,4 +80,9 @@ public class UserController {
     public Map<String, Object> highestFollowRatio() {
         return userService.getUserWithHighestFollowRatio();
     }
+
+    @GetMapping("/analytics/follow-ratio-leaderboard")
+    public List<Map<String, Object>> followRatioLeaderboard(@RequestParam(defaultValue = "10") int k) {
+        return userService.getFollowRatioLeaderboard(k);
+    }
 }